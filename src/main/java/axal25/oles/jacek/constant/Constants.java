@@ -2,6 +2,7 @@ package axal25.oles.jacek.constant;
 
 public class Constants {
     public static final String CONTENT_TYPE = "Content-Type";
+    public static final String RETRY_AFTER = "Retry-After";
 
     public static class HttpMethods {
         public static final String POST = "POST";
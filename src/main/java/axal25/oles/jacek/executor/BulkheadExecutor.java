@@ -0,0 +1,88 @@
+package axal25.oles.jacek.executor;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// fixed size pool with a bounded queue, so one pipeline stage cannot take threads or memory of another
+public class BulkheadExecutor extends ThreadPoolExecutor {
+    private final String name;
+    private final int queueCapacity;
+    private final SaturationPolicy saturationPolicy;
+    private final AtomicLong rejections;
+
+    public BulkheadExecutor(String name, int size, int queueCapacity, SaturationPolicy saturationPolicy) {
+        this(name, size, queueCapacity, saturationPolicy, new AtomicLong());
+    }
+
+    private BulkheadExecutor(String name,
+                             int size,
+                             int queueCapacity,
+                             SaturationPolicy saturationPolicy,
+                             AtomicLong rejections) {
+        super(checkSize(name, size),
+                size,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(checkQueueCapacity(name, queueCapacity)),
+                PoolThreads.newThreadFactory(name + "-%d"),
+                newRejectedExecutionHandler(name, Preconditions.checkNotNull(saturationPolicy), rejections));
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.saturationPolicy = saturationPolicy;
+        this.rejections = rejections;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BulkheadExecutorStatistics getStatistics() {
+        return BulkheadExecutorStatistics.builder()
+                .name(name)
+                .poolSize(getPoolSize())
+                .maxPoolSize(getMaximumPoolSize())
+                .activeThreads(getActiveCount())
+                .queueDepth(getQueue().size())
+                .queueCapacity(queueCapacity)
+                .completedTasks(getCompletedTaskCount())
+                .rejections(rejections.get())
+                .saturationPolicy(saturationPolicy)
+                .build();
+    }
+
+    private static int checkSize(String name, int size) {
+        Preconditions.checkArgument(size > 0,
+                "%s pool size must be positive but was: %s.", name, size);
+        return size;
+    }
+
+    private static int checkQueueCapacity(String name, int queueCapacity) {
+        Preconditions.checkArgument(queueCapacity > 0,
+                "%s queue capacity must be positive but was: %s.", name, queueCapacity);
+        return queueCapacity;
+    }
+
+    private static RejectedExecutionHandler newRejectedExecutionHandler(String name,
+                                                                        SaturationPolicy saturationPolicy,
+                                                                        AtomicLong rejections) {
+        return (task, executor) -> {
+            rejections.incrementAndGet();
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException(String.format(
+                        "%s executor is shut down.", name));
+            }
+            switch (saturationPolicy) {
+                case ABORT -> throw new RejectedExecutionException(String.format(
+                        "%s executor is saturated, all of its %s threads are busy and its queue of %s is full.",
+                        name, executor.getMaximumPoolSize(), executor.getQueue().size()));
+                case CALLER_RUNS -> task.run();
+            }
+        };
+    }
+}
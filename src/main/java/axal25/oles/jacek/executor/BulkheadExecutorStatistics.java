@@ -0,0 +1,22 @@
+package axal25.oles.jacek.executor;
+
+import lombok.*;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class BulkheadExecutorStatistics {
+    private String name;
+    private int poolSize;
+    private int maxPoolSize;
+    private int activeThreads;
+    private int queueDepth;
+    private int queueCapacity;
+    private long completedTasks;
+    private long rejections;
+    private SaturationPolicy saturationPolicy;
+}
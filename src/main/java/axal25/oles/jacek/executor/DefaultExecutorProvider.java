@@ -1,15 +1,89 @@
 package axal25.oles.jacek.executor;
 
 import axal25.oles.jacek.util.CompletableFutureUtil;
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class DefaultExecutorProvider {
+    @VisibleForTesting
+    static final String PLATFORM_POOL_THREAD_NAME_FORMAT = "executor-%d";
+    @VisibleForTesting
+    static final String CPU_EXECUTOR_NAME = "cpu-executor";
+    @VisibleForTesting
+    static final String IO_EXECUTOR_NAME = "io-executor";
+    @VisibleForTesting
+    static final String CACHE_EXECUTOR_NAME = "cache-executor";
+
+    // scheduled work: retry backoffs, rate-limit dispatch, hedges and the streaming client's linger flushes;
+    // MAQ's HttpClient and the stages of MAQ calls run on the bulkheads below whatever the mode
     @Bean("executor")
-    public Executor provideDefaultExecutor() {
-        return CompletableFutureUtil.getDefaultExecutor();
+    public Executor provideDefaultExecutor(
+            @Value("${executor.mode}") ExecutorMode executorMode,
+            @Value("${executor.platform_pool.size}") int platformPoolSize) {
+        return switch (executorMode) {
+            case COMMON_POOL -> CompletableFutureUtil.getDefaultExecutor();
+            case PLATFORM_POOL -> newPlatformPool(platformPoolSize);
+            case VIRTUAL_THREAD_PER_TASK -> newVirtualThreadPerTaskExecutor();
+        };
+    }
+
+    // JSON serialization and deserialization
+    @Bean("cpuExecutor")
+    public BulkheadExecutor provideCpuExecutor(
+            @Value("${executor.cpu_pool.size}") int size,
+            @Value("${executor.cpu_pool.queue_capacity}") int queueCapacity,
+            @Value("${executor.cpu_pool.saturation_policy}") SaturationPolicy saturationPolicy) {
+        return new BulkheadExecutor(CPU_EXECUTOR_NAME, size, queueCapacity, saturationPolicy);
+    }
+
+    // HttpClient's own tasks and completion of exchanges, kept short so a burst of large bodies cannot starve them
+    @Bean("ioExecutor")
+    public BulkheadExecutor provideIoExecutor(
+            @Value("${executor.io_pool.size}") int size,
+            @Value("${executor.io_pool.queue_capacity}") int queueCapacity,
+            @Value("${executor.io_pool.saturation_policy}") SaturationPolicy saturationPolicy) {
+        return new BulkheadExecutor(IO_EXECUTOR_NAME, size, queueCapacity, saturationPolicy);
+    }
+
+    // cache lookups blocking on JDBC, kept apart so a slow H2 cannot hold the threads other stages complete on
+    @Bean("cacheExecutor")
+    public BulkheadExecutor provideCacheExecutor(
+            @Value("${executor.cache_pool.size}") int size,
+            @Value("${executor.cache_pool.queue_capacity}") int queueCapacity,
+            @Value("${executor.cache_pool.saturation_policy}") SaturationPolicy saturationPolicy) {
+        return new BulkheadExecutor(CACHE_EXECUTOR_NAME, size, queueCapacity, saturationPolicy);
+    }
+
+    @VisibleForTesting
+    static ExecutorService newPlatformPool(int size) {
+        Preconditions.checkArgument(size > 0,
+                "Platform pool size must be positive but was: %s.", size);
+        return Executors.newFixedThreadPool(size, PoolThreads.newThreadFactory(PLATFORM_POOL_THREAD_NAME_FORMAT));
+    }
+
+    // Executors::newVirtualThreadPerTaskExecutor is a preview API in Java 19, hence looked up reflectively
+    @VisibleForTesting
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException
+                 | UnsupportedOperationException e) {
+            throw new IllegalStateException(String.format(
+                    "%s %s requires Java 21+ or Java 19+ with --enable-preview.",
+                    ExecutorMode.class.getSimpleName(),
+                    ExecutorMode.VIRTUAL_THREAD_PER_TASK),
+                    e instanceof InvocationTargetException ? e.getCause() : e);
+        }
     }
 }
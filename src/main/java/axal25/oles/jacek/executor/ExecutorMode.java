@@ -0,0 +1,7 @@
+package axal25.oles.jacek.executor;
+
+public enum ExecutorMode {
+    COMMON_POOL,
+    PLATFORM_POOL,
+    VIRTUAL_THREAD_PER_TASK
+}
@@ -0,0 +1,34 @@
+package axal25.oles.jacek.executor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+
+// threads of the app's pools run the completions other calls wait for, so they must not be parked;
+// they are told apart from the callers' own threads by their class
+public final class PoolThreads {
+
+    private PoolThreads() {
+    }
+
+    public static ThreadFactory newThreadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder()
+                .setNameFormat(nameFormat)
+                .setDaemon(true)
+                .setThreadFactory(PoolThread::new)
+                .build();
+    }
+
+    // common pool workers run CompletableFuture's async stages which were not given an executor
+    public static boolean isPoolThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof PoolThread || thread instanceof ForkJoinWorkerThread;
+    }
+
+    private static class PoolThread extends Thread {
+        private PoolThread(Runnable runnable) {
+            super(runnable);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package axal25.oles.jacek.executor;
+
+public enum SaturationPolicy {
+    ABORT,
+    CALLER_RUNS
+}
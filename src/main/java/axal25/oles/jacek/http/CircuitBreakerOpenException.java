@@ -0,0 +1,19 @@
+package axal25.oles.jacek.http;
+
+import java.io.IOException;
+import java.time.Duration;
+
+public class CircuitBreakerOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final Duration remainingOpen;
+
+    public CircuitBreakerOpenException(String name, Duration remainingOpen) {
+        super(String.format("%s circuit breaker is open, calls are not permitted for another: %s.",
+                name, remainingOpen));
+        this.remainingOpen = remainingOpen;
+    }
+
+    public Duration getRemainingOpen() {
+        return remainingOpen;
+    }
+}
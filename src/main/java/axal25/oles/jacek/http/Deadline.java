@@ -0,0 +1,93 @@
+package axal25.oles.jacek.http;
+
+import com.google.common.base.Preconditions;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// the time a call may take plus its cancellation: once the deadline passes, the call is cancelled or it finishes,
+// everything registered with whenDone runs, so in-flight exchanges are aborted and pending stages can be skipped;
+// child deadlines share the parent's time and are done when the parent is, but can be cancelled on their own
+public class Deadline {
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private final long deadlineNanos;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+        if (deadlineNanos != NO_DEADLINE) {
+            done.orTimeout(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public static Deadline none() {
+        return new Deadline(NO_DEADLINE);
+    }
+
+    public static Deadline after(Duration timeout) {
+        Preconditions.checkNotNull(timeout, "%s argument cannot be null.", Duration.class.getSimpleName());
+        long now = System.nanoTime();
+        long timeoutNanos = timeout.isNegative() ? 0L : saturatedNanos(timeout);
+        return new Deadline(timeoutNanos >= NO_DEADLINE - now ? NO_DEADLINE - 1L : now + timeoutNanos);
+    }
+
+    public static Deadline at(Instant instant, Clock clock) {
+        Preconditions.checkNotNull(instant, "%s argument cannot be null.", Instant.class.getSimpleName());
+        return after(Duration.between(clock.instant(), instant));
+    }
+
+    public Deadline child() {
+        Deadline child = new Deadline(deadlineNanos);
+        whenDone(child::cancel);
+        return child;
+    }
+
+    // empty when there is no deadline
+    public Optional<Duration> getRemaining() {
+        if (deadlineNanos == NO_DEADLINE) {
+            return Optional.empty();
+        }
+        return Optional.of(Duration.ofNanos(Math.max(0L, deadlineNanos - System.nanoTime())));
+    }
+
+    public boolean isDone() {
+        return done.isDone() || isExpired();
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0L;
+    }
+
+    public void cancel() {
+        done.completeExceptionally(new CancellationException("Call was cancelled."));
+    }
+
+    // the call is over, whatever it left behind can be aborted
+    public void finish() {
+        done.complete(null);
+    }
+
+    public void whenDone(Runnable action) {
+        done.whenComplete((ignored, throwable) -> action.run());
+    }
+
+    // what a stage which found the deadline done fails with
+    public Exception getFailure() {
+        return isExpired()
+                ? new DeadlineExceededException("Deadline exceeded.")
+                : new CancellationException("Call was cancelled.");
+    }
+
+    private static long saturatedNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return NO_DEADLINE;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package axal25.oles.jacek.http;
+
+import java.net.http.HttpTimeoutException;
+
+public class DeadlineExceededException extends HttpTimeoutException {
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,84 @@
+package axal25.oles.jacek.http;
+
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// leases its HttpClients round robin, each holding its own connections and selector thread;
+// the JDK's keep-alive timeout and connection pool size are JVM-wide, see applyIdleLifetime
+public class HttpClientPool {
+    @VisibleForTesting
+    static final String KEEP_ALIVE_TIMEOUT_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    private final Executor executor;
+    private final HttpClient.Version version;
+    private final Duration connectTimeout;
+    private final int maxClients;
+    private final AtomicReferenceArray<HttpClient> clients;
+    private final Object lock = new Object();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+
+    public HttpClientPool(Executor executor,
+                          HttpClient.Version version,
+                          Duration connectTimeout,
+                          int maxClients) {
+        Preconditions.checkArgument(maxClients > 0,
+                "Max clients must be positive but was: %s.", maxClients);
+        this.executor = Preconditions.checkNotNull(executor);
+        this.version = Preconditions.checkNotNull(version);
+        this.connectTimeout = Preconditions.checkNotNull(connectTimeout);
+        this.maxClients = maxClients;
+        this.clients = new AtomicReferenceArray<>(maxClients);
+    }
+
+    // JVM-wide: the JDK reads the keep-alive timeout once, when the first HttpClient of the JVM gets built,
+    // so this has to run before that and a -D option given at start up takes precedence
+    public static synchronized void applyIdleLifetime(Duration idleLifetime) {
+        Preconditions.checkArgument(idleLifetime.toSeconds() > 0L,
+                "Idle lifetime must be at least 1 second but was: %s.", idleLifetime);
+        if (System.getProperty(KEEP_ALIVE_TIMEOUT_PROPERTY) == null) {
+            System.setProperty(KEEP_ALIVE_TIMEOUT_PROPERTY, String.valueOf(idleLifetime.toSeconds()));
+        }
+    }
+
+    public HttpClient getHttpClient() {
+        int index = (int) Math.floorMod(leases.getAndIncrement(), (long) maxClients);
+        HttpClient httpClient = clients.get(index);
+        if (httpClient != null) {
+            return httpClient;
+        }
+        // built under the lock, so no client is built only to be dropped with its selector thread still running
+        synchronized (lock) {
+            httpClient = clients.get(index);
+            if (httpClient == null) {
+                httpClient = newHttpClient();
+                clients.set(index, httpClient);
+                created.incrementAndGet();
+            }
+            return httpClient;
+        }
+    }
+
+    @VisibleForTesting
+    HttpClient newHttpClient() {
+        return HttpClient.newBuilder()
+                .executor(executor)
+                .version(version)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    public HttpClientPoolStatistics getStatistics() {
+        return HttpClientPoolStatistics.builder()
+                .maxClients(maxClients)
+                .clients(created.get())
+                .leases(leases.get())
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+}
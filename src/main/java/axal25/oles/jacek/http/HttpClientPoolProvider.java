@@ -0,0 +1,27 @@
+package axal25.oles.jacek.http;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+@Configuration
+public class HttpClientPoolProvider {
+    @Bean("httpClientPool")
+    public HttpClientPool provideHttpClientPool(
+            @Qualifier("ioExecutor") Executor ioExecutor,
+            @Value("${http_client_pool.connect_timeout_millis}") long connectTimeoutMillis,
+            @Value("${http_client_pool.idle_lifetime_millis}") long idleLifetimeMillis,
+            @Value("${http_client_pool.max_clients}") int maxClients) {
+        HttpClientPool.applyIdleLifetime(Duration.ofMillis(idleLifetimeMillis));
+        return new HttpClientPool(
+                ioExecutor,
+                HttpClient.Version.HTTP_2,
+                Duration.ofMillis(connectTimeoutMillis),
+                maxClients);
+    }
+}
@@ -0,0 +1,19 @@
+package axal25.oles.jacek.http;
+
+import lombok.*;
+
+import java.time.Duration;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class HttpClientPoolStatistics {
+    private int maxClients;
+    private long clients;
+    private long leases;
+    private Duration connectTimeout;
+}
@@ -19,6 +19,7 @@ public class HttpContainer<T> {
     private HttpResponse<T> response;
     private Throwable throwable;
     private String causeMessage;
+    private Deadline deadline;
 
     public static class HttpContainerBuilder<T> {
         @Getter
@@ -31,5 +32,7 @@ public class HttpContainer<T> {
         private Throwable throwable;
         @Getter
         private String causeMessage;
+        @Getter
+        private Deadline deadline;
     }
 }
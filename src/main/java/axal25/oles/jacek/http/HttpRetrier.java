@@ -0,0 +1,235 @@
+package axal25.oles.jacek.http;
+
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+public class HttpRetrier {
+    private final RetryPolicy retryPolicy;
+    private final RetryBudget retryBudget;
+    private final Executor executor;
+    private final Clock clock;
+
+    public HttpRetrier(RetryPolicy retryPolicy, RetryBudget retryBudget, Executor executor) {
+        this(retryPolicy, retryBudget, executor, Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    HttpRetrier(RetryPolicy retryPolicy, RetryBudget retryBudget, Executor executor, Clock clock) {
+        Preconditions.checkArgument(retryPolicy.getMaxAttempts() > 0,
+                "Max attempts must be positive but was: %s.", retryPolicy.getMaxAttempts());
+        Preconditions.checkArgument(retryPolicy.getMultiplier() >= 1.0,
+                "Multiplier must be at least 1 but was: %s.", retryPolicy.getMultiplier());
+        this.retryPolicy = retryPolicy;
+        this.retryBudget = retryBudget;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    public static HttpRetrier noRetries() {
+        return new HttpRetrier(RetryPolicy.noRetries(), new RetryBudget(1, 0.0), Runnable::run);
+    }
+
+    public <T> HttpResponse<T> send(HttpClient httpClient,
+                                    HttpRequest httpRequest,
+                                    HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        return send(() -> httpClient.send(httpRequest, bodyHandler));
+    }
+
+    public <T> HttpResponse<T> send(Attempt<T> attempt) throws IOException, InterruptedException {
+        return send(attempt, Deadline.none());
+    }
+
+    // a backoff which would outlast the deadline fails the call right away instead of sleeping through it,
+    // or gives back the response which asked for it
+    public <T> HttpResponse<T> send(Attempt<T> attempt, Deadline deadline) throws IOException, InterruptedException {
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            HttpResponse<T> httpResponse;
+            try {
+                httpResponse = attempt.send();
+            } catch (IOException e) {
+                if (!shouldRetry(attemptNumber, isRetryable(e))) {
+                    throw e;
+                }
+                TimeUnit.NANOSECONDS.sleep(toNanosSaturated(getBackoffWithin(attemptNumber, null, deadline)
+                        .orElseThrow()));
+                continue;
+            }
+            if (!shouldRetry(attemptNumber, isRetryable(httpResponse))) {
+                return httpResponse;
+            }
+            Optional<Duration> backoff = getBackoffWithin(attemptNumber, httpResponse, deadline);
+            if (backoff.isEmpty()) {
+                return httpResponse;
+            }
+            TimeUnit.NANOSECONDS.sleep(toNanosSaturated(backoff.get()));
+        }
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpClient httpClient,
+                                                            HttpRequest httpRequest,
+                                                            HttpResponse.BodyHandler<T> bodyHandler) {
+        return sendAsync(() -> httpClient.sendAsync(httpRequest, bodyHandler));
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(Supplier<CompletableFuture<HttpResponse<T>>> attempt) {
+        return sendAsync(attempt, Deadline.none());
+    }
+
+    // waits between attempts are scheduled, no thread is blocked;
+    // cancelling the returned future, or the deadline being done, stops the attempt in flight and further attempts
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(Supplier<CompletableFuture<HttpResponse<T>>> attempt,
+                                                            Deadline deadline) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<HttpResponse<T>>> currentAttempt = new AtomicReference<>();
+        result.whenComplete((httpResponse, throwable) -> {
+            CompletableFuture<HttpResponse<T>> inFlight = currentAttempt.get();
+            if (inFlight != null && !inFlight.isDone()) {
+                inFlight.cancel(true);
+            }
+        });
+        deadline.whenDone(() -> result.completeExceptionally(deadline.getFailure()));
+        sendAsync(attempt, 1, result, currentAttempt, deadline);
+        return result;
+    }
+
+    private <T> void sendAsync(Supplier<CompletableFuture<HttpResponse<T>>> attempt,
+                               int attemptNumber,
+                               CompletableFuture<HttpResponse<T>> result,
+                               AtomicReference<CompletableFuture<HttpResponse<T>>> currentAttempt,
+                               Deadline deadline) {
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<HttpResponse<T>> inFlight = attempt.get();
+        currentAttempt.set(inFlight);
+        if (result.isDone()) {
+            inFlight.cancel(true);
+            return;
+        }
+        inFlight.whenComplete((httpResponse, throwable) -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause()
+                    : throwable;
+            boolean retryable = cause != null ? isRetryable(cause) : isRetryable(httpResponse);
+            if (!shouldRetry(attemptNumber, retryable)) {
+                if (cause != null) {
+                    result.completeExceptionally(cause);
+                } else {
+                    result.complete(httpResponse);
+                }
+                return;
+            }
+            Optional<Duration> backoff;
+            try {
+                backoff = getBackoffWithin(attemptNumber, httpResponse, deadline);
+            } catch (DeadlineExceededException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (backoff.isEmpty()) {
+                result.complete(httpResponse);
+                return;
+            }
+            CompletableFuture.delayedExecutor(toNanosSaturated(backoff.get()), TimeUnit.NANOSECONDS, executor)
+                    .execute(() -> sendAsync(attempt, attemptNumber + 1, result, currentAttempt, deadline));
+        });
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    private boolean shouldRetry(int attemptNumber, boolean retryable) {
+        if (!retryable) {
+            retryBudget.onSuccess();
+            return false;
+        }
+        return retryBudget.onFailure() && attemptNumber < retryPolicy.getMaxAttempts();
+    }
+
+    private boolean isRetryable(HttpResponse<?> httpResponse) {
+        return retryPolicy.getRetryableStatusCodes().contains(httpResponse.statusCode());
+    }
+
+    // an open circuit breaker will still be open after any backoff worth waiting for,
+    // a passed deadline and a cancelled call will not come back either
+    private boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof CircuitBreakerOpenException
+                || throwable instanceof DeadlineExceededException
+                || throwable instanceof CancellationException) {
+            return false;
+        }
+        return retryPolicy.getRetryableExceptions().stream()
+                .anyMatch(retryableException -> retryableException.isInstance(throwable));
+    }
+
+    // empty when the response is to be given back instead of retried, which a failed attempt never is
+    private Optional<Duration> getBackoffWithin(int attemptNumber, HttpResponse<?> httpResponse, Deadline deadline)
+            throws DeadlineExceededException {
+        Optional<Duration> backoff = getBackoff(attemptNumber, httpResponse);
+        Optional<Duration> remaining = deadline.getRemaining();
+        if (backoff.isEmpty() || remaining.isEmpty() || remaining.get().compareTo(backoff.get()) > 0) {
+            return backoff;
+        }
+        if (httpResponse != null) {
+            return Optional.empty();
+        }
+        throw new DeadlineExceededException(String.format(
+                "Deadline would pass during the %s backoff before attempt %s.", backoff.get(), attemptNumber + 1));
+    }
+
+    // "full jitter", uniformly random between 0 and the exponential backoff, but never sooner than Retry-After;
+    // a Retry-After longer than the max backoff is not waited for, so the response asking for it is given back
+    @VisibleForTesting
+    Optional<Duration> getBackoff(int attemptNumber, HttpResponse<?> httpResponse) {
+        double exponentialNanos = toNanosSaturated(retryPolicy.getInitialBackoff())
+                * Math.pow(retryPolicy.getMultiplier(), attemptNumber - 1);
+        long capNanos = (long) Math.min(toNanosSaturated(retryPolicy.getMaxBackoff()), exponentialNanos);
+        Duration jittered = Duration.ofNanos(ThreadLocalRandom.current().nextLong(capNanos + 1L));
+        if (httpResponse == null) {
+            return Optional.of(jittered);
+        }
+        Optional<Duration> retryAfter = RetryAfter.parse(httpResponse.headers(), clock);
+        if (retryAfter.isEmpty() || retryAfter.get().compareTo(jittered) <= 0) {
+            return Optional.of(jittered);
+        }
+        if (retryAfter.get().compareTo(retryPolicy.getMaxBackoff()) > 0) {
+            return Optional.empty();
+        }
+        return retryAfter;
+    }
+
+    private static long toNanosSaturated(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Attempt<T> {
+        HttpResponse<T> send() throws IOException, InterruptedException;
+    }
+}
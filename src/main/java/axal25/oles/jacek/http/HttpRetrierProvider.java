@@ -0,0 +1,54 @@
+package axal25.oles.jacek.http;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static java.util.stream.Collectors.toUnmodifiableSet;
+
+@Configuration
+public class HttpRetrierProvider {
+    @Bean("httpRetrier")
+    public HttpRetrier provideHttpRetrier(
+            @Qualifier("executor") Executor executor,
+            @Value("${http_retry.max_attempts}") int maxAttempts,
+            @Value("${http_retry.initial_backoff_millis}") long initialBackoffMillis,
+            @Value("${http_retry.max_backoff_millis}") long maxBackoffMillis,
+            @Value("${http_retry.multiplier}") double multiplier,
+            @Value("${http_retry.retryable_status_codes}") int[] retryableStatusCodes,
+            @Value("${http_retry.retryable_exceptions}") String[] retryableExceptions,
+            @Value("${http_retry.budget.max_tokens}") int budgetMaxTokens,
+            @Value("${http_retry.budget.token_ratio}") double budgetTokenRatio) {
+        return new HttpRetrier(
+                RetryPolicy.builder()
+                        .maxAttempts(maxAttempts)
+                        .initialBackoff(Duration.ofMillis(initialBackoffMillis))
+                        .maxBackoff(Duration.ofMillis(maxBackoffMillis))
+                        .multiplier(multiplier)
+                        .retryableStatusCodes(Arrays.stream(retryableStatusCodes)
+                                .boxed()
+                                .collect(toUnmodifiableSet()))
+                        .retryableExceptions(Arrays.stream(retryableExceptions)
+                                .map(HttpRetrierProvider::toThrowableClass)
+                                .collect(toUnmodifiableSet()))
+                        .build(),
+                new RetryBudget(budgetMaxTokens, budgetTokenRatio),
+                executor);
+    }
+
+    private static Class<? extends Throwable> toThrowableClass(String className) {
+        try {
+            return Class.forName(className.strip()).asSubclass(Throwable.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IllegalArgumentException(
+                    "Retryable exception must be a " + Throwable.class.getSimpleName()
+                            + " class name but was: " + className + ".", e);
+        }
+    }
+}
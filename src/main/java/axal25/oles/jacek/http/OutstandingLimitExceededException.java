@@ -0,0 +1,12 @@
+package axal25.oles.jacek.http;
+
+import java.io.IOException;
+
+public class OutstandingLimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public OutstandingLimitExceededException(String name, int inFlightRequests, long inFlightBytes) {
+        super(String.format("%s outstanding request limit is reached, in flight are: %s requests of %s bytes.",
+                name, inFlightRequests, inFlightBytes));
+    }
+}
@@ -0,0 +1,48 @@
+package axal25.oles.jacek.http;
+
+import java.net.http.HttpHeaders;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+import static axal25.oles.jacek.constant.Constants.RETRY_AFTER;
+
+public class RetryAfter {
+    // longer pauses are not honoured as asked, nothing waits for hours on a single header
+    private static final Duration MAX = Duration.ofMinutes(5L);
+
+    private RetryAfter() {
+    }
+
+    // Retry-After is either delay-seconds or an HTTP-date, clamped to between zero and MAX
+    public static Optional<Duration> parse(HttpHeaders httpHeaders, Clock clock) {
+        if (httpHeaders == null) {
+            return Optional.empty();
+        }
+        return httpHeaders.firstValue(RETRY_AFTER)
+                .map(String::strip)
+                .flatMap(value -> {
+                    try {
+                        return Optional.of(clamp(Duration.ofSeconds(Long.parseLong(value))));
+                    } catch (NumberFormatException ignored) {
+                    }
+                    try {
+                        return Optional.of(clamp(Duration.between(
+                                clock.instant(),
+                                ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant())));
+                    } catch (DateTimeParseException ignored) {
+                        return Optional.empty();
+                    }
+                });
+    }
+
+    private static Duration clamp(Duration retryAfter) {
+        if (retryAfter.isNegative()) {
+            return Duration.ZERO;
+        }
+        return retryAfter.compareTo(MAX) > 0 ? MAX : retryAfter;
+    }
+}
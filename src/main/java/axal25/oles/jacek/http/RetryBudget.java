@@ -0,0 +1,39 @@
+package axal25.oles.jacek.http;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// token bucket shared by all calls: every retryable failure takes a token, every other outcome returns tokenRatio
+// of one, and retries are only allowed while more than half of maxTokens is left, so during an outage
+// the retry rate drops to tokenRatio retries per successful call
+public class RetryBudget {
+    private static final long MILLI_TOKENS_PER_TOKEN = 1_000L;
+    private final long maxMilliTokens;
+    private final long milliTokensPerSuccess;
+    private final AtomicLong milliTokens;
+
+    public RetryBudget(int maxTokens, double tokenRatio) {
+        Preconditions.checkArgument(maxTokens > 0,
+                "Max tokens must be positive but was: %s.", maxTokens);
+        Preconditions.checkArgument(tokenRatio >= 0.0,
+                "Token ratio cannot be negative but was: %s.", tokenRatio);
+        this.maxMilliTokens = maxTokens * MILLI_TOKENS_PER_TOKEN;
+        this.milliTokensPerSuccess = Math.round(tokenRatio * MILLI_TOKENS_PER_TOKEN);
+        this.milliTokens = new AtomicLong(maxMilliTokens);
+    }
+
+    public void onSuccess() {
+        milliTokens.getAndUpdate(current -> Math.min(maxMilliTokens, current + milliTokensPerSuccess));
+    }
+
+    // returns whether a retry is allowed
+    public boolean onFailure() {
+        long remaining = milliTokens.updateAndGet(current -> Math.max(0L, current - MILLI_TOKENS_PER_TOKEN));
+        return remaining > maxMilliTokens / 2;
+    }
+
+    public double getTokens() {
+        return (double) milliTokens.get() / MILLI_TOKENS_PER_TOKEN;
+    }
+}
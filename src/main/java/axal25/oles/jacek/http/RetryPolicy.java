@@ -0,0 +1,33 @@
+package axal25.oles.jacek.http;
+
+import lombok.*;
+
+import java.time.Duration;
+import java.util.Set;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class RetryPolicy {
+    private int maxAttempts;
+    private Duration initialBackoff;
+    private Duration maxBackoff;
+    private double multiplier;
+    private Set<Integer> retryableStatusCodes;
+    private Set<Class<? extends Throwable>> retryableExceptions;
+
+    public static RetryPolicy noRetries() {
+        return RetryPolicy.builder()
+                .maxAttempts(1)
+                .initialBackoff(Duration.ZERO)
+                .maxBackoff(Duration.ZERO)
+                .multiplier(1.0)
+                .retryableStatusCodes(Set.of())
+                .retryableExceptions(Set.of())
+                .build();
+    }
+}
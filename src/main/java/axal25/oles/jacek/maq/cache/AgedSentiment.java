@@ -0,0 +1,7 @@
+package axal25.oles.jacek.maq.cache;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+public record AgedSentiment(BigDecimal sentiment, Duration age) {
+}
@@ -0,0 +1,22 @@
+package axal25.oles.jacek.maq.cache;
+
+import lombok.*;
+
+import java.time.Duration;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqSentimentCacheStatistics {
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private int size;
+    private int maxEntries;
+    private Duration ttl;
+}
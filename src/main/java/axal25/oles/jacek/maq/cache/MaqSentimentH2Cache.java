@@ -0,0 +1,257 @@
+package axal25.oles.jacek.maq.cache;
+
+import axal25.oles.jacek.executor.PoolThreads;
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.slf4j.MarkerFactory.getMarker;
+
+// durable second level of MaqSentimentMemoryCache, writes are buffered and flushed in JDBC batches
+// by a single writer thread, so the request path only ever reads;
+// rows older than the TTL are not read and get purged by the writer, written_at is wall clock time as it outlives restarts
+@Component
+public class MaqSentimentH2Cache implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MaqSentimentH2Cache.class);
+    @VisibleForTesting
+    static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS maq_sentiment_cache ("
+            + "text_hash_high BIGINT NOT NULL, "
+            + "text_hash_low BIGINT NOT NULL, "
+            + "sentiment DECFLOAT NOT NULL, "
+            + "written_at BIGINT DEFAULT 0 NOT NULL, "
+            + "PRIMARY KEY (text_hash_high, text_hash_low))";
+    // tables created before written_at was stored get it with their rows already expired
+    @VisibleForTesting
+    static final String ADD_WRITTEN_AT_SQL = "ALTER TABLE maq_sentiment_cache "
+            + "ADD COLUMN IF NOT EXISTS written_at BIGINT DEFAULT 0 NOT NULL";
+    @VisibleForTesting
+    static final String CREATE_WRITTEN_AT_INDEX_SQL = "CREATE INDEX IF NOT EXISTS maq_sentiment_cache_written_at "
+            + "ON maq_sentiment_cache (written_at)";
+    @VisibleForTesting
+    static final String MERGE_SQL = "MERGE INTO maq_sentiment_cache (text_hash_high, text_hash_low, sentiment, written_at) "
+            + "KEY (text_hash_high, text_hash_low) VALUES (?, ?, ?, ?)";
+    @VisibleForTesting
+    static final String PURGE_SQL = "DELETE FROM maq_sentiment_cache WHERE written_at <= ?";
+    private static final String SELECT_SQL_PREFIX = "SELECT text_hash_high, text_hash_low, sentiment, written_at "
+            + "FROM maq_sentiment_cache WHERE written_at > ? AND (text_hash_high, text_hash_low) IN (";
+    private static final int SELECT_MAX_KEYS = 500;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final int maxPendingWrites;
+    private final Duration ttl;
+    private final Clock clock;
+    private final ScheduledExecutorService writer;
+    private final Map<TextHash, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+
+    @Autowired
+    MaqSentimentH2Cache(JdbcTemplate jdbcTemplate,
+                        @Value("${maq.h2_cache.batch_size}") int batchSize,
+                        @Value("${maq.h2_cache.max_pending_writes}") int maxPendingWrites,
+                        @Value("${maq.h2_cache.flush_interval_millis}") long flushIntervalMillis,
+                        @Value("${maq.cache.ttl_millis}") long ttlMillis,
+                        @Value("${maq.h2_cache.purge_interval_millis}") long purgeIntervalMillis) {
+        this(jdbcTemplate,
+                batchSize,
+                maxPendingWrites,
+                flushIntervalMillis,
+                Duration.ofMillis(ttlMillis),
+                purgeIntervalMillis,
+                Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    MaqSentimentH2Cache(JdbcTemplate jdbcTemplate,
+                        int batchSize,
+                        int maxPendingWrites,
+                        long flushIntervalMillis,
+                        Duration ttl,
+                        long purgeIntervalMillis,
+                        Clock clock) {
+        Preconditions.checkArgument(batchSize > 0,
+                "Batch size must be positive but was: %s.", batchSize);
+        Preconditions.checkArgument(maxPendingWrites >= batchSize,
+                "Max pending writes must be at least batch size (%s) but was: %s.", batchSize, maxPendingWrites);
+        Preconditions.checkArgument(flushIntervalMillis > 0,
+                "Flush interval must be positive but was: %s.", flushIntervalMillis);
+        Preconditions.checkArgument(ttl.compareTo(Duration.ZERO) > 0,
+                "TTL must be positive but was: %s.", ttl);
+        Preconditions.checkArgument(purgeIntervalMillis > 0,
+                "Purge interval must be positive but was: %s.", purgeIntervalMillis);
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.maxPendingWrites = maxPendingWrites;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.writer = Executors.newSingleThreadScheduledExecutor(
+                PoolThreads.newThreadFactory(MaqSentimentH2Cache.class.getSimpleName() + "-%d"));
+        jdbcTemplate.execute(CREATE_TABLE_SQL);
+        jdbcTemplate.execute(ADD_WRITTEN_AT_SQL);
+        jdbcTemplate.execute(CREATE_WRITTEN_AT_INDEX_SQL);
+        writer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        writer.scheduleWithFixedDelay(this::purge, 0L, purgeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // each sentiment comes with how old it is, so the memory cache it is promoted to expires it when H2 would
+    public Map<TextHash, AgedSentiment> getAll(Collection<TextHash> textHashes) {
+        long nowMillis = clock.millis();
+        long expiredAtOrBeforeMillis = nowMillis - ttl.toMillis();
+        Map<TextHash, AgedSentiment> found = new HashMap<>();
+        List<TextHash> toSelect = new ArrayList<>();
+        for (TextHash textHash : textHashes) {
+            PendingWrite pending = pendingWrites.get(textHash);
+            if (pending != null) {
+                found.put(textHash, pending.toAgedSentiment(nowMillis));
+            } else {
+                toSelect.add(textHash);
+            }
+        }
+        for (List<TextHash> keys : Lists.partition(toSelect, SELECT_MAX_KEYS)) {
+            try {
+                jdbcTemplate.query(
+                        SELECT_SQL_PREFIX + String.join(", ", Collections.nCopies(keys.size(), "(?, ?)")) + ")",
+                        (RowCallbackHandler) resultSet -> found.put(
+                                new TextHash(resultSet.getLong(1), resultSet.getLong(2)),
+                                new AgedSentiment(
+                                        resultSet.getBigDecimal(3),
+                                        Duration.ofMillis(Math.max(0L, nowMillis - resultSet.getLong(4))))),
+                        Stream.concat(
+                                        Stream.of(expiredAtOrBeforeMillis),
+                                        keys.stream().flatMap(key -> Stream.of(key.high(), key.low())))
+                                .toArray());
+            } catch (DataAccessException e) {
+                logger.error(getMarker("unchecked exception"),
+                        "{} during reading of {} keys from H2 sentiment cache.",
+                        e.getClass().getSimpleName(),
+                        keys.size(),
+                        e);
+            }
+        }
+        return found;
+    }
+
+    public void put(TextHash textHash, BigDecimal sentiment) {
+        Preconditions.checkNotNull(sentiment, "Sentiment argument cannot be null.");
+        if (pendingWrites.size() >= maxPendingWrites) {
+            dropped.incrementAndGet();
+            return;
+        }
+        pendingWrites.put(textHash, new PendingWrite(sentiment, clock.millis()));
+        if (pendingWrites.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // closed, close() flushed what it could
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    // an explicit flush and the writer's own could otherwise both write the same pending entries
+    public void flush() {
+        synchronized (flushLock) {
+            flushScheduled.set(false);
+            List<Map.Entry<TextHash, PendingWrite>> batch = new ArrayList<>(batchSize);
+            for (Map.Entry<TextHash, PendingWrite> entry : pendingWrites.entrySet()) {
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                if (batch.size() == batchSize) {
+                    write(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+    }
+
+    public void purge() {
+        try {
+            purged.addAndGet(jdbcTemplate.update(PURGE_SQL, clock.millis() - ttl.toMillis()));
+        } catch (DataAccessException e) {
+            logger.error(getMarker("unchecked exception"),
+                    "{} during purging of expired entries from H2 sentiment cache.",
+                    e.getClass().getSimpleName(),
+                    e);
+        }
+    }
+
+    public long getPendingWrites() {
+        return pendingWrites.size();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getPurged() {
+        return purged.get();
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        flush();
+    }
+
+    private void write(List<Map.Entry<TextHash, PendingWrite>> batch) {
+        try {
+            jdbcTemplate.batchUpdate(MERGE_SQL, batch, batch.size(), (preparedStatement, entry) -> {
+                preparedStatement.setLong(1, entry.getKey().high());
+                preparedStatement.setLong(2, entry.getKey().low());
+                preparedStatement.setBigDecimal(3, entry.getValue().sentiment());
+                preparedStatement.setLong(4, entry.getValue().writtenAtMillis());
+            });
+            written.addAndGet(batch.size());
+        } catch (DataAccessException e) {
+            logger.error(getMarker("unchecked exception"),
+                    "{} during writing of {} entries to H2 sentiment cache.",
+                    e.getClass().getSimpleName(),
+                    batch.size(),
+                    e);
+            dropped.addAndGet(batch.size());
+        }
+        // a newer value put while writing stays pending
+        batch.forEach(entry -> pendingWrites.remove(entry.getKey(), entry.getValue()));
+    }
+
+    private record PendingWrite(BigDecimal sentiment, long writtenAtMillis) {
+        private AgedSentiment toAgedSentiment(long nowMillis) {
+            return new AgedSentiment(sentiment, Duration.ofMillis(Math.max(0L, nowMillis - writtenAtMillis)));
+        }
+    }
+}
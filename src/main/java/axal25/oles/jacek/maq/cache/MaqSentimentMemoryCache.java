@@ -0,0 +1,136 @@
+package axal25.oles.jacek.maq.cache;
+
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// segmented LRU: new entries are on probation, a second hit promotes them to the protected segment,
+// so one-off texts are evicted before texts that are scored repeatedly
+@Component
+public class MaqSentimentMemoryCache {
+    @VisibleForTesting
+    static final double PROTECTED_SHARE = 0.8;
+    private final int maxEntries;
+    private final int maxProtectedEntries;
+    private final Duration ttl;
+    private final Ticker ticker;
+    private final Object lock = new Object();
+    private final LinkedHashMap<TextHash, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<TextHash, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    @Autowired
+    MaqSentimentMemoryCache(@Value("${maq.cache.max_entries}") int maxEntries,
+                            @Value("${maq.cache.ttl_millis}") long ttlMillis) {
+        this(maxEntries, Duration.ofMillis(ttlMillis), Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    MaqSentimentMemoryCache(int maxEntries, Duration ttl, Ticker ticker) {
+        Preconditions.checkArgument(maxEntries > 0,
+                "Max entries must be positive but was: %s.", maxEntries);
+        Preconditions.checkArgument(ttl.compareTo(Duration.ZERO) > 0,
+                "TTL must be positive but was: %s.", ttl);
+        this.maxEntries = maxEntries;
+        this.maxProtectedEntries = (int) (maxEntries * PROTECTED_SHARE);
+        this.ttl = ttl;
+        this.ticker = ticker;
+    }
+
+    public Optional<BigDecimal> get(TextHash textHash) {
+        long now = ticker.read();
+        synchronized (lock) {
+            Entry entry = protectedSegment.get(textHash);
+            if (entry == null) {
+                entry = probation.remove(textHash);
+                if (entry != null && !isExpired(entry, now)) {
+                    promote(textHash, entry);
+                }
+            }
+            if (entry == null) {
+                misses++;
+                return Optional.empty();
+            }
+            if (isExpired(entry, now)) {
+                protectedSegment.remove(textHash);
+                expirations++;
+                misses++;
+                return Optional.empty();
+            }
+            hits++;
+            return Optional.of(entry.sentiment());
+        }
+    }
+
+    public void put(TextHash textHash, BigDecimal sentiment) {
+        put(textHash, sentiment, Duration.ZERO);
+    }
+
+    // a sentiment read from a lower level keeps its age, so it expires when it would have there
+    public void put(TextHash textHash, BigDecimal sentiment, Duration age) {
+        Preconditions.checkNotNull(sentiment, "Sentiment argument cannot be null.");
+        Preconditions.checkArgument(!age.isNegative(), "Age cannot be negative but was: %s.", age);
+        Entry entry = new Entry(sentiment, ticker.read() - age.toNanos());
+        synchronized (lock) {
+            if (protectedSegment.containsKey(textHash)) {
+                protectedSegment.put(textHash, entry);
+                return;
+            }
+            probation.put(textHash, entry);
+            while (probation.size() + protectedSegment.size() > maxEntries) {
+                evictEldest(probation.isEmpty() ? protectedSegment : probation);
+                evictions++;
+            }
+        }
+    }
+
+    public MaqSentimentCacheStatistics getStatistics() {
+        synchronized (lock) {
+            return MaqSentimentCacheStatistics.builder()
+                    .hits(hits)
+                    .misses(misses)
+                    .evictions(evictions)
+                    .expirations(expirations)
+                    .size(probation.size() + protectedSegment.size())
+                    .maxEntries(maxEntries)
+                    .ttl(ttl)
+                    .build();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.writeNanos() >= ttl.toNanos();
+    }
+
+    private void promote(TextHash textHash, Entry entry) {
+        protectedSegment.put(textHash, entry);
+        if (protectedSegment.size() > maxProtectedEntries) {
+            Map.Entry<TextHash, Entry> demoted = evictEldest(protectedSegment);
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    private static Map.Entry<TextHash, Entry> evictEldest(LinkedHashMap<TextHash, Entry> segment) {
+        Iterator<Map.Entry<TextHash, Entry>> iterator = segment.entrySet().iterator();
+        Map.Entry<TextHash, Entry> eldest = iterator.next();
+        Map.Entry<TextHash, Entry> evicted = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return evicted;
+    }
+
+    private record Entry(BigDecimal sentiment, long writeNanos) {
+    }
+}
@@ -0,0 +1,111 @@
+package axal25.oles.jacek.maq.cache;
+
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// texts MAQ rejected with a validator error, so they are answered locally instead of being resent
+@Component
+public class MaqSentimentNegativeCache {
+    @VisibleForTesting
+    static final String TEXT_PROPERTY = "text";
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Ticker ticker;
+    private final Object lock = new Object();
+    private final LinkedHashMap<TextHash, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    @Autowired
+    MaqSentimentNegativeCache(@Value("${maq.negative_cache.max_entries}") int maxEntries,
+                              @Value("${maq.negative_cache.ttl_millis}") long ttlMillis) {
+        this(maxEntries, Duration.ofMillis(ttlMillis), Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    MaqSentimentNegativeCache(int maxEntries, Duration ttl, Ticker ticker) {
+        Preconditions.checkArgument(maxEntries > 0,
+                "Max entries must be positive but was: %s.", maxEntries);
+        Preconditions.checkArgument(ttl.compareTo(Duration.ZERO) > 0,
+                "TTL must be positive but was: %s.", ttl);
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.ticker = ticker;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TextHash, Entry> eldest) {
+                if (size() > MaqSentimentNegativeCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static boolean isCacheable(MaqSentimentResponseErrorBodyElement error) {
+        return TEXT_PROPERTY.equals(error.getProperty()) && error.getValidator() != null;
+    }
+
+    // the returned error has no recordNumber, it is up to the caller to set it
+    public Optional<MaqSentimentResponseErrorBodyElement> get(TextHash textHash) {
+        long now = ticker.read();
+        synchronized (lock) {
+            Entry entry = entries.get(textHash);
+            if (entry == null) {
+                misses++;
+                return Optional.empty();
+            }
+            if (now - entry.writeNanos() >= ttl.toNanos()) {
+                entries.remove(textHash);
+                expirations++;
+                misses++;
+                return Optional.empty();
+            }
+            hits++;
+            return Optional.of(entry.error().toBuilder().build());
+        }
+    }
+
+    public void put(TextHash textHash, MaqSentimentResponseErrorBodyElement error) {
+        Preconditions.checkArgument(isCacheable(error),
+                "Only errors of %s property with a validator are cached but was: %s.", TEXT_PROPERTY, error);
+        Entry entry = new Entry(
+                error.toBuilder()
+                        .recordNumber(null)
+                        .build(),
+                ticker.read());
+        synchronized (lock) {
+            entries.put(textHash, entry);
+        }
+    }
+
+    public MaqSentimentCacheStatistics getStatistics() {
+        synchronized (lock) {
+            return MaqSentimentCacheStatistics.builder()
+                    .hits(hits)
+                    .misses(misses)
+                    .evictions(evictions)
+                    .expirations(expirations)
+                    .size(entries.size())
+                    .maxEntries(maxEntries)
+                    .ttl(ttl)
+                    .build();
+        }
+    }
+
+    private record Entry(MaqSentimentResponseErrorBodyElement error, long writeNanos) {
+    }
+}
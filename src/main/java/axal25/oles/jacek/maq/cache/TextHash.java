@@ -0,0 +1,30 @@
+package axal25.oles.jacek.maq.cache;
+
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+// first 128 bits of SHA-256 of the normalized text, the text itself is not retained
+public record TextHash(long high, long low) {
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    public static TextHash of(String text) {
+        Preconditions.checkNotNull(text, "Text argument cannot be null.");
+        byte[] bytes = Hashing.sha256()
+                .hashString(normalize(text), StandardCharsets.UTF_8)
+                .asBytes();
+        return new TextHash(
+                Longs.fromBytes(bytes[0], bytes[1], bytes[2], bytes[3], bytes[4], bytes[5], bytes[6], bytes[7]),
+                Longs.fromBytes(bytes[8], bytes[9], bytes[10], bytes[11], bytes[12], bytes[13], bytes[14], bytes[15]));
+    }
+
+    @VisibleForTesting
+    static String normalize(String text) {
+        return WHITESPACES.matcher(Normalizer.normalize(text, Normalizer.Form.NFC).strip()).replaceAll(" ");
+    }
+}
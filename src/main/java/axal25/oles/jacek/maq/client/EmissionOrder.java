@@ -0,0 +1,6 @@
+package axal25.oles.jacek.maq.client;
+
+public enum EmissionOrder {
+    IN_ORDER,
+    AS_COMPLETED
+}
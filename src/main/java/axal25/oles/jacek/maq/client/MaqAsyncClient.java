@@ -1,78 +1,268 @@
 package axal25.oles.jacek.maq.client;
 
+import axal25.oles.jacek.http.Deadline;
 import axal25.oles.jacek.http.HttpContainer;
 import axal25.oles.jacek.maq.model.MaqOmniSerializer;
+import axal25.oles.jacek.maq.model.MaqSentimentRequestBodyPublisher;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentLeanResponse;
 import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import axal25.oles.jacek.util.CompletableFutureUtil;
+import axal25.oles.jacek.util.VisibleForTesting;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.base.Utf8;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Component
 public class MaqAsyncClient {
     private final MaqClientCommons maqClientCommons;
     private final MaqOmniSerializer maqOmniSerializer;
-    private final Executor executor;
+    private final Executor cpuExecutor;
+    private final Executor ioExecutor;
+    private final MaqRequestHedger maqRequestHedger;
+    private final MaqOutstandingRequestLimiter maqOutstandingRequestLimiter;
 
     @Autowired
     MaqAsyncClient(
             MaqClientCommons maqClientCommons,
             MaqOmniSerializer maqOmniSerializer,
-            Executor executor) {
+            @Qualifier("cpuExecutor") Executor cpuExecutor,
+            @Qualifier("ioExecutor") Executor ioExecutor,
+            MaqRequestHedger maqRequestHedger,
+            MaqOutstandingRequestLimiter maqOutstandingRequestLimiter) {
         this.maqClientCommons = maqClientCommons;
         this.maqOmniSerializer = maqOmniSerializer;
-        this.executor = executor;
+        this.cpuExecutor = cpuExecutor;
+        this.ioExecutor = ioExecutor;
+        this.maqRequestHedger = maqRequestHedger;
+        this.maqOutstandingRequestLimiter = maqOutstandingRequestLimiter;
+    }
+
+    @VisibleForTesting
+    MaqAsyncClient(
+            MaqClientCommons maqClientCommons,
+            MaqOmniSerializer maqOmniSerializer,
+            Executor executor) {
+        this(maqClientCommons, maqOmniSerializer, executor, executor,
+                MaqRequestHedger.disabled(), MaqOutstandingRequestLimiter.unlimited());
     }
 
     public CompletableFuture<MaqSentimentResponse> postSentiment(MaqSentimentRequestBody maqSentimentRequestBody) {
-        return CompletableFuture.completedFuture(maqSentimentRequestBody)
-                .thenApplyAsync(
-                        body -> {
-                            try {
-                                return maqOmniSerializer.serializeToJson(body);
-                            } catch (JsonProcessingException e) {
-                                return CompletableFuture.<String>failedFuture(e).join();
-                            }
-                        },
-                        executor)
-                .thenApplyAsync(
-                        bodyJson -> postSentiment(bodyJson)
-                                .thenApplyAsync(
-                                        maqOmniSerializer::deserializeFromJson,
-                                        executor)
-                                .join(),
-                        executor)
-                .handleAsync(
-                        (maqSentimentResponse, throwable) -> {
-                            if (throwable != null) {
-                                Throwable underlyingCause =
-                                        throwable instanceof CompletionException
-                                                && throwable.getCause() != null
-                                                ? throwable.getCause()
-                                                : throwable;
-                                return maqOmniSerializer.deserializeFromJson(
-                                        maqClientCommons.getHttpContainerFailedSerialization(
-                                                maqSentimentRequestBody,
-                                                underlyingCause));
-                            }
-                            return maqSentimentResponse;
-                        },
-                        executor);
+        return postSentiment(maqSentimentRequestBody, Deadline.none());
+    }
+
+    // cancelling the returned future, or the deadline passing, aborts the exchange with MAQ
+    public CompletableFuture<MaqSentimentResponse> postSentiment(MaqSentimentRequestBody maqSentimentRequestBody,
+                                                                 Deadline deadline) {
+        Deadline callDeadline = deadline.child();
+        return bindToDeadline(limitOutstanding(
+                        MaqOutstandingRequestLimiter.getBytes(maqSentimentRequestBody),
+                        callDeadline,
+                        () -> CompletableFuture.supplyAsync(
+                                        () -> serializeToJson(maqSentimentRequestBody),
+                                        cpuExecutor)
+                                .thenCompose(bodyJson -> postSentiment(
+                                        bodyJson,
+                                        MaqClientCommons.getRecords(maqSentimentRequestBody),
+                                        callDeadline))
+                                .thenCompose(this::deserializeFromJsonAsync)
+                                .handle((maqSentimentResponse, throwable) -> getResponseOrFailedSerialization(
+                                        maqSentimentRequestBody, maqSentimentResponse, throwable)),
+                        throwable -> maqOmniSerializer.deserializeFromJson(getHttpContainerNotSent(throwable))),
+                callDeadline);
+    }
+
+    public CompletableFuture<MaqSentimentLeanResponse> postSentimentLean(
+            MaqSentimentRequestBody maqSentimentRequestBody,
+            boolean withHeaders) {
+        CompletableFuture<MaqSentimentResponse> maqSentimentResponseFuture = postSentiment(maqSentimentRequestBody);
+        return CompletableFutureUtil.propagateCancellation(
+                maqSentimentResponseFuture.thenApply(maqSentimentResponse ->
+                        maqOmniSerializer.toLeanResponse(maqSentimentResponse, withHeaders)),
+                maqSentimentResponseFuture);
+    }
+
+    public CompletableFuture<MaqSentimentResponse> postSentiment(
+            MaqSentimentRequestBody maqSentimentRequestBody,
+            Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer) {
+        Deadline callDeadline = Deadline.none();
+        return bindToDeadline(limitOutstanding(
+                        MaqOutstandingRequestLimiter.getBytes(maqSentimentRequestBody),
+                        callDeadline,
+                        () -> CompletableFuture.supplyAsync(
+                                        () -> serializeToJson(maqSentimentRequestBody),
+                                        cpuExecutor)
+                                .thenCompose(bodyJson -> postSentiment(
+                                        bodyJson,
+                                        MaqClientCommons.getRecords(maqSentimentRequestBody),
+                                        successConsumer,
+                                        callDeadline))
+                                .handle((maqSentimentResponse, throwable) -> getResponseOrFailedSerialization(
+                                        maqSentimentRequestBody, maqSentimentResponse, throwable)),
+                        throwable -> maqOmniSerializer.deserializeFromJson(getHttpContainerNotSent(throwable))),
+                callDeadline);
+    }
+
+    // the permit is held from before the body gets serialized until the call completes;
+    // a call which could not get one completes with what the overflow policy or its deadline failed it with
+    private <T> CompletableFuture<T> limitOutstanding(long bytes,
+                                                      Deadline callDeadline,
+                                                      Supplier<CompletableFuture<T>> call,
+                                                      Function<Throwable, T> onNotPermitted) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        maqOutstandingRequestLimiter.acquire(bytes, callDeadline).whenComplete((permit, throwable) -> {
+            if (throwable != null) {
+                result.complete(onNotPermitted.apply(
+                        throwable instanceof CompletionException && throwable.getCause() != null
+                                ? throwable.getCause()
+                                : throwable));
+                return;
+            }
+            if (result.isDone()) {
+                permit.release();
+                return;
+            }
+            CompletableFuture<T> callFuture;
+            try {
+                callFuture = call.get();
+            } catch (RejectedExecutionException e) {
+                // a saturated executor sheds the call like the limiter would
+                permit.release();
+                result.complete(onNotPermitted.apply(e));
+                return;
+            } catch (RuntimeException e) {
+                permit.release();
+                result.completeExceptionally(e);
+                return;
+            }
+            callFuture.whenComplete((value, callThrowable) -> {
+                permit.release();
+                if (callThrowable != null) {
+                    result.completeExceptionally(callThrowable);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        return result;
+    }
+
+    private static HttpContainer<String> getHttpContainerNotSent(Throwable throwable) {
+        return HttpContainer.<String>builder()
+                .throwable(throwable)
+                .causeMessage(throwable.getMessage())
+                .build();
+    }
+
+    // nobody waits for what a cancelled call's later stages would produce, so they are skipped
+    private static void checkNotCancelled(Deadline deadline) {
+        if (deadline.isDone() && !deadline.isExpired()) {
+            throw new CompletionException(deadline.getFailure());
+        }
+    }
+
+    private static <T> CompletableFuture<T> bindToDeadline(CompletableFuture<T> call, Deadline callDeadline) {
+        call.whenComplete((result, throwable) -> {
+            if (call.isCancelled()) {
+                callDeadline.cancel();
+            } else {
+                callDeadline.finish();
+            }
+        });
+        return call;
+    }
+
+    private MaqSentimentResponse getResponseOrFailedSerialization(
+            MaqSentimentRequestBody maqSentimentRequestBody,
+            MaqSentimentResponse maqSentimentResponse,
+            Throwable throwable) {
+        if (throwable != null) {
+            Throwable underlyingCause =
+                    throwable instanceof CompletionException
+                            && throwable.getCause() != null
+                            ? throwable.getCause()
+                            : throwable;
+            if (underlyingCause instanceof CancellationException) {
+                throw (CancellationException) underlyingCause;
+            }
+            // a saturated executor sheds the call like the limiter would, it is not a serialization failure
+            if (underlyingCause instanceof RejectedExecutionException) {
+                return maqOmniSerializer.deserializeFromJson(getHttpContainerNotSent(underlyingCause));
+            }
+            return maqOmniSerializer.deserializeFromJson(
+                    maqClientCommons.getHttpContainerFailedSerialization(
+                            maqSentimentRequestBody,
+                            underlyingCause));
+        }
+        return maqSentimentResponse;
+    }
+
+    // a saturated CPU pool does not throw away the response MAQ already returned,
+    // it is deserialized on the completing thread instead
+    private CompletableFuture<MaqSentimentResponse> deserializeFromJsonAsync(HttpContainer<String> httpContainer) {
+        try {
+            return CompletableFuture.supplyAsync(() -> maqOmniSerializer.deserializeFromJson(httpContainer), cpuExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(maqOmniSerializer.deserializeFromJson(httpContainer));
+        }
+    }
+
+    private String serializeToJson(MaqSentimentRequestBody maqSentimentRequestBody) {
+        try {
+            return maqOmniSerializer.serializeToJson(maqSentimentRequestBody);
+        } catch (JsonProcessingException e) {
+            throw new CompletionException(e);
+        }
     }
 
     public CompletableFuture<HttpContainer<String>> postSentiment(String maqSentimentRequestBodyJson) {
+        return postSentiment(maqSentimentRequestBodyJson, Deadline.none());
+    }
+
+    public CompletableFuture<HttpContainer<String>> postSentiment(String maqSentimentRequestBodyJson,
+                                                                  Deadline deadline) {
+        Deadline callDeadline = deadline.child();
+        return bindToDeadline(limitOutstanding(
+                        maqSentimentRequestBodyJson == null ? 0L : Utf8.encodedLength(maqSentimentRequestBodyJson),
+                        callDeadline,
+                        () -> postSentiment(
+                                maqSentimentRequestBodyJson,
+                                maqOmniSerializer.countRecords(maqSentimentRequestBodyJson),
+                                callDeadline),
+                        MaqAsyncClient::getHttpContainerNotSent),
+                callDeadline);
+    }
+
+    private CompletableFuture<HttpContainer<String>> postSentiment(String maqSentimentRequestBodyJson,
+                                                                   int records,
+                                                                   Deadline deadline) {
         HttpContainer.HttpContainerBuilder<String> containerBuilder =
-                maqClientCommons.getContainerBuilder(maqSentimentRequestBodyJson);
-        return containerBuilder.getClient().sendAsync(
-                        containerBuilder.getRequest(),
-                        HttpResponse.BodyHandlers.ofString())
+                maqClientCommons.getContainerBuilder(maqSentimentRequestBodyJson, deadline);
+        // only string bodies are hedged, streamed ones could not be sent twice
+        return maqRequestHedger.hedge(
+                        () -> maqClientCommons.sendAsync(
+                                containerBuilder,
+                                HttpResponse.BodyHandlers.ofString(),
+                                records),
+                        httpResponse -> httpResponse.statusCode() / 100 == 2)
                 .handleAsync(
                         (httpResponse, throwable) -> {
+                            checkNotCancelled(deadline);
                             if (throwable != null) {
                                 return maqClientCommons.getHttpContainerFailedRequest(
                                         maqSentimentRequestBodyJson,
@@ -83,6 +273,71 @@ public class MaqAsyncClient {
                                     .response(httpResponse)
                                     .build();
                         },
-                        executor);
+                        ioExecutor);
+    }
+
+    private CompletableFuture<MaqSentimentResponse> postSentiment(
+            String maqSentimentRequestBodyJson,
+            int records,
+            Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer,
+            Deadline deadline) {
+        HttpContainer.HttpContainerBuilder<String> containerBuilder =
+                maqClientCommons.getContainerBuilder(maqSentimentRequestBodyJson, deadline);
+        return maqClientCommons.sendOnceAsync(
+                        containerBuilder,
+                        maqOmniSerializer.getStreamingBodyHandler(successConsumer, cpuExecutor),
+                        records)
+                .handleAsync(
+                        (httpResponse, throwable) -> {
+                            checkNotCancelled(deadline);
+                            if (throwable != null) {
+                                return maqOmniSerializer.deserializeFromJson(
+                                        maqClientCommons.getHttpContainerFailedRequest(
+                                                maqSentimentRequestBodyJson,
+                                                containerBuilder,
+                                                throwable));
+                            }
+                            return httpResponse.body();
+                        },
+                        ioExecutor);
+    }
+
+    public CompletableFuture<MaqSentimentResponse> postSentiment(
+            Iterator<MaqSentimentRequestBodyDataElement> maqSentimentRequestBodyDataElements,
+            Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer) {
+        Deadline callDeadline = Deadline.none();
+        MaqSentimentRequestBodyPublisher bodyPublisher = maqOmniSerializer.getStreamingBodyPublisher(
+                maqSentimentRequestBodyDataElements,
+                maqClientCommons::recordStreamedRecords);
+        HttpContainer.HttpContainerBuilder<String> containerBuilder =
+                maqClientCommons.getContainerBuilder(bodyPublisher, callDeadline);
+        // streamed elements are not held in memory, so the call only counts against max requests
+        return bindToDeadline(limitOutstanding(
+                        0L,
+                        callDeadline,
+                        () -> maqClientCommons.sendOnceAsync(
+                                        containerBuilder,
+                                        maqOmniSerializer.getStreamingBodyHandler(successConsumer, cpuExecutor),
+                                        0)
+                                .whenComplete((httpResponse, throwable) -> {
+                                    if (httpResponse != null) {
+                                        bodyPublisher.recycle();
+                                    }
+                                })
+                                .handleAsync(
+                                        (httpResponse, throwable) -> {
+                                            checkNotCancelled(callDeadline);
+                                            if (throwable != null) {
+                                                return maqOmniSerializer.deserializeFromJson(
+                                                        maqClientCommons.getHttpContainerFailedRequest(
+                                                                MaqClientCommons.STREAMED_REQUEST_BODY,
+                                                                containerBuilder,
+                                                                throwable));
+                                            }
+                                            return httpResponse.body();
+                                        },
+                                        ioExecutor),
+                        throwable -> maqOmniSerializer.deserializeFromJson(getHttpContainerNotSent(throwable))),
+                callDeadline);
     }
 }
@@ -0,0 +1,140 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+@Component
+public class MaqBulkAsyncClient {
+    private final MaqAsyncClient maqAsyncClient;
+    private final int chunkSize;
+    private final int maxInFlight;
+
+    @Autowired
+    MaqBulkAsyncClient(MaqAsyncClient maqAsyncClient,
+                       @Value("${maq.bulk.chunk_size}") int chunkSize,
+                       @Value("${maq.bulk.max_in_flight}") int maxInFlight) {
+        Preconditions.checkArgument(chunkSize > 0,
+                "Chunk size must be positive but was: %s.", chunkSize);
+        Preconditions.checkArgument(maxInFlight > 0,
+                "Max in flight must be positive but was: %s.", maxInFlight);
+        this.maqAsyncClient = maqAsyncClient;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public CompletableFuture<MaqSentimentResponse> postSentiment(MaqSentimentRequestBody maqSentimentRequestBody) {
+        if (maqSentimentRequestBody == null
+                || maqSentimentRequestBody.getData() == null
+                || maqSentimentRequestBody.getData().size() <= chunkSize) {
+            return maqAsyncClient.postSentiment(maqSentimentRequestBody);
+        }
+        return new ChunkedPost(Lists.partition(maqSentimentRequestBody.getData(), chunkSize)).start();
+    }
+
+    // cancelling the merged future, or a chunk failing, cancels the chunks in flight and sends no further ones
+    private class ChunkedPost {
+        private final List<List<MaqSentimentRequestBodyDataElement>> chunks;
+        private final AtomicReferenceArray<MaqSentimentResponse> responses;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicInteger remainingChunks;
+        private final Set<CompletableFuture<MaqSentimentResponse>> inFlight = ConcurrentHashMap.newKeySet();
+        private final CompletableFuture<MaqSentimentResponse> merged = new CompletableFuture<>();
+
+        private ChunkedPost(List<List<MaqSentimentRequestBodyDataElement>> chunks) {
+            this.chunks = chunks;
+            this.responses = new AtomicReferenceArray<>(chunks.size());
+            this.remainingChunks = new AtomicInteger(chunks.size());
+        }
+
+        private CompletableFuture<MaqSentimentResponse> start() {
+            merged.whenComplete((maqSentimentResponse, throwable) ->
+                    inFlight.forEach(chunk -> chunk.cancel(true)));
+            for (int i = 0; i < Math.min(maxInFlight, chunks.size()); i++) {
+                sendNextChunk();
+            }
+            return merged;
+        }
+
+        private void sendNextChunk() {
+            if (merged.isDone()) {
+                return;
+            }
+            int chunkIndex = nextChunk.getAndIncrement();
+            if (chunkIndex >= chunks.size()) {
+                return;
+            }
+            CompletableFuture<MaqSentimentResponse> chunk = maqAsyncClient.postSentiment(
+                    MaqSentimentRequestBody.builder()
+                            .data(chunks.get(chunkIndex))
+                            .build());
+            inFlight.add(chunk);
+            if (merged.isDone()) {
+                chunk.cancel(true);
+                return;
+            }
+            chunk.whenComplete((maqSentimentResponse, throwable) -> {
+                inFlight.remove(chunk);
+                if (throwable != null) {
+                    merged.completeExceptionally(throwable);
+                    return;
+                }
+                responses.set(chunkIndex, maqSentimentResponse);
+                if (remainingChunks.decrementAndGet() == 0) {
+                    merged.complete(merge());
+                } else {
+                    sendNextChunk();
+                }
+            });
+        }
+
+        private MaqSentimentResponse merge() {
+            Integer statusCode = 200;
+            String message = null;
+            List<MaqSentimentResponseSuccessBodyElement> successes = new ArrayList<>();
+            List<MaqSentimentResponseErrorBodyElement> errors = new ArrayList<>();
+            long recordNumberOffset = 0L;
+            for (int i = 0; i < chunks.size(); i++) {
+                MaqSentimentResponse response = responses.get(i);
+                if (statusCode == 200 && !Integer.valueOf(200).equals(response.getStatusCode())) {
+                    statusCode = response.getStatusCode();
+                    message = response.getMessage();
+                }
+                if (response.getSuccesses() != null) {
+                    successes.addAll(response.getSuccesses());
+                }
+                if (response.getErrors() != null) {
+                    long chunkRecordNumberOffset = recordNumberOffset;
+                    response.getErrors().forEach(error -> errors.add(error.getRecordNumber() == null
+                            ? error
+                            : error.toBuilder()
+                            .recordNumber(error.getRecordNumber() + chunkRecordNumberOffset)
+                            .build()));
+                }
+                recordNumberOffset += chunks.get(i).size();
+            }
+            return MaqSentimentResponse.builder()
+                    .statusCode(statusCode)
+                    .message(message)
+                    .underlyingResponse(null)
+                    .successes(successes.isEmpty() ? null : successes)
+                    .errors(errors.isEmpty() ? null : errors)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.cache.MaqSentimentH2Cache;
+import axal25.oles.jacek.maq.cache.MaqSentimentMemoryCache;
+import axal25.oles.jacek.maq.cache.MaqSentimentNegativeCache;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+@Component
+public class MaqCachingAsyncClient {
+    private final MaqCoalescingAsyncClient maqCoalescingAsyncClient;
+    private final MaqSentimentMemoryCache memoryCache;
+    private final MaqSentimentH2Cache h2Cache;
+    private final MaqSentimentNegativeCache negativeCache;
+    private final Executor cacheExecutor;
+
+    @Autowired
+    MaqCachingAsyncClient(MaqCoalescingAsyncClient maqCoalescingAsyncClient,
+                          MaqSentimentMemoryCache memoryCache,
+                          MaqSentimentH2Cache h2Cache,
+                          MaqSentimentNegativeCache negativeCache,
+                          @Qualifier("cacheExecutor") Executor cacheExecutor) {
+        this.maqCoalescingAsyncClient = maqCoalescingAsyncClient;
+        this.memoryCache = memoryCache;
+        this.h2Cache = h2Cache;
+        this.negativeCache = negativeCache;
+        this.cacheExecutor = cacheExecutor;
+    }
+
+    public CompletableFuture<MaqSentimentResponse> postSentiment(MaqSentimentRequestBody maqSentimentRequestBody) {
+        if (maqSentimentRequestBody == null || maqSentimentRequestBody.getData() == null) {
+            return maqCoalescingAsyncClient.postSentiment(maqSentimentRequestBody);
+        }
+        CompletableFuture<MaqSentimentCacheLookup> cacheLookupFuture;
+        try {
+            cacheLookupFuture = CompletableFuture.supplyAsync(
+                    () -> new MaqSentimentCacheLookup(
+                            memoryCache,
+                            h2Cache,
+                            negativeCache,
+                            maqSentimentRequestBody),
+                    cacheExecutor);
+        } catch (RejectedExecutionException e) {
+            // a saturated cache pool sheds the call as a saturated CPU pool does
+            return CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                    .statusCode(503)
+                    .message(e.getMessage())
+                    .build());
+        }
+        return cacheLookupFuture
+                .thenCompose(cacheLookup -> cacheLookup.hasMisses()
+                        ? maqCoalescingAsyncClient.postSentiment(cacheLookup.getMissesRequestBody())
+                        .thenApply(cacheLookup::merge)
+                        : CompletableFuture.completedFuture(cacheLookup.merge(null)));
+    }
+}
@@ -0,0 +1,40 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.cache.MaqSentimentH2Cache;
+import axal25.oles.jacek.maq.cache.MaqSentimentMemoryCache;
+import axal25.oles.jacek.maq.cache.MaqSentimentNegativeCache;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class MaqCachingClient {
+    private final MaqClient maqClient;
+    private final MaqSentimentMemoryCache memoryCache;
+    private final MaqSentimentH2Cache h2Cache;
+    private final MaqSentimentNegativeCache negativeCache;
+
+    @Autowired
+    MaqCachingClient(MaqClient maqClient,
+                     MaqSentimentMemoryCache memoryCache,
+                     MaqSentimentH2Cache h2Cache,
+                     MaqSentimentNegativeCache negativeCache) {
+        this.maqClient = maqClient;
+        this.memoryCache = memoryCache;
+        this.h2Cache = h2Cache;
+        this.negativeCache = negativeCache;
+    }
+
+    public MaqSentimentResponse postSentiment(MaqSentimentRequestBody maqSentimentRequestBody) {
+        if (maqSentimentRequestBody == null || maqSentimentRequestBody.getData() == null) {
+            return maqClient.postSentiment(maqSentimentRequestBody);
+        }
+        MaqSentimentCacheLookup cacheLookup =
+                new MaqSentimentCacheLookup(memoryCache, h2Cache, negativeCache, maqSentimentRequestBody);
+        if (!cacheLookup.hasMisses()) {
+            return cacheLookup.merge(null);
+        }
+        return cacheLookup.merge(maqClient.postSentiment(cacheLookup.getMissesRequestBody()));
+    }
+}
@@ -0,0 +1,280 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.http.CircuitBreakerOpenException;
+import axal25.oles.jacek.http.DeadlineExceededException;
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
+// CLOSED: outcomes of the last windowSize calls are kept, once at least minimumCalls of them are in and
+// either the failure rate or the slow call rate reaches its threshold the breaker OPENs;
+// OPEN: calls fail fast until openDuration passes;
+// HALF_OPEN: only permittedTrialCalls go through, their outcomes decide between OPEN and CLOSED
+@Component
+public class MaqCircuitBreaker {
+    public static final String NAME = "MAQ";
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int permittedTrialCalls;
+    private final Ticker ticker;
+    private final Object lock = new Object();
+    private final byte[] window;
+    private State state = State.CLOSED;
+    // bumped on every transition, outcomes of calls permitted in an earlier state are not recorded
+    private long epoch;
+    private int windowNext;
+    private int bufferedCalls;
+    private int failures;
+    private int slowCalls;
+    private int trialCallsPermitted;
+    private long openedAtNanos;
+    private long notPermittedCalls;
+    private long transitions;
+
+    @Autowired
+    MaqCircuitBreaker(@Value("${maq.circuit_breaker.window_size}") int windowSize,
+                      @Value("${maq.circuit_breaker.minimum_calls}") int minimumCalls,
+                      @Value("${maq.circuit_breaker.failure_rate_threshold}") double failureRateThreshold,
+                      @Value("${maq.circuit_breaker.slow_call_millis}") long slowCallMillis,
+                      @Value("${maq.circuit_breaker.slow_call_rate_threshold}") double slowCallRateThreshold,
+                      @Value("${maq.circuit_breaker.open_millis}") long openMillis,
+                      @Value("${maq.circuit_breaker.permitted_trial_calls}") int permittedTrialCalls) {
+        this(windowSize,
+                minimumCalls,
+                failureRateThreshold,
+                Duration.ofMillis(slowCallMillis),
+                slowCallRateThreshold,
+                Duration.ofMillis(openMillis),
+                permittedTrialCalls,
+                Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    MaqCircuitBreaker(int windowSize,
+                      int minimumCalls,
+                      double failureRateThreshold,
+                      Duration slowCall,
+                      double slowCallRateThreshold,
+                      Duration open,
+                      int permittedTrialCalls,
+                      Ticker ticker) {
+        Preconditions.checkArgument(windowSize > 0,
+                "Window size must be positive but was: %s.", windowSize);
+        Preconditions.checkArgument(minimumCalls > 0 && minimumCalls <= windowSize,
+                "Minimum calls must be between 1 and window size: %s but was: %s.", windowSize, minimumCalls);
+        Preconditions.checkArgument(failureRateThreshold > 0.0 && failureRateThreshold <= 1.0,
+                "Failure rate threshold must be in (0, 1] but was: %s.", failureRateThreshold);
+        Preconditions.checkArgument(slowCallRateThreshold > 0.0 && slowCallRateThreshold <= 1.0,
+                "Slow call rate threshold must be in (0, 1] but was: %s.", slowCallRateThreshold);
+        Preconditions.checkArgument(slowCall.compareTo(Duration.ZERO) > 0,
+                "Slow call duration must be positive but was: %s.", slowCall);
+        Preconditions.checkArgument(open.compareTo(Duration.ZERO) > 0,
+                "Open duration must be positive but was: %s.", open);
+        Preconditions.checkArgument(permittedTrialCalls > 0,
+                "Permitted trial calls must be positive but was: %s.", permittedTrialCalls);
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCall.toNanos();
+        this.openNanos = open.toNanos();
+        this.permittedTrialCalls = permittedTrialCalls;
+        this.ticker = ticker;
+        this.window = new byte[windowSize];
+    }
+
+    public static MaqCircuitBreaker neverOpen() {
+        return new MaqCircuitBreaker(1, 1, 1.0, Duration.ofNanos(Long.MAX_VALUE), 1.0, Duration.ofNanos(1L), 1,
+                Ticker.systemTicker()) {
+            @Override
+            public Permission acquire() {
+                return new Permission(-1L);
+            }
+        };
+    }
+
+    public Permission acquire() throws CircuitBreakerOpenException {
+        synchronized (lock) {
+            if (state == State.OPEN) {
+                long remainingNanos = openedAtNanos + openNanos - ticker.read();
+                if (remainingNanos > 0L) {
+                    notPermittedCalls++;
+                    throw new CircuitBreakerOpenException(NAME, Duration.ofNanos(remainingNanos));
+                }
+                transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialCallsPermitted >= permittedTrialCalls) {
+                    notPermittedCalls++;
+                    throw new CircuitBreakerOpenException(NAME, Duration.ZERO);
+                }
+                trialCallsPermitted++;
+            }
+            return new Permission(epoch);
+        }
+    }
+
+    public State getState() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    public MaqCircuitBreakerStatistics getStatistics() {
+        synchronized (lock) {
+            return MaqCircuitBreakerStatistics.builder()
+                    .state(state)
+                    .bufferedCalls(bufferedCalls)
+                    .failureRate(bufferedCalls == 0 ? 0.0 : (double) failures / bufferedCalls)
+                    .slowCallRate(bufferedCalls == 0 ? 0.0 : (double) slowCalls / bufferedCalls)
+                    .notPermittedCalls(notPermittedCalls)
+                    .transitions(transitions)
+                    .remainingOpen(state == State.OPEN
+                            ? Duration.ofNanos(Math.max(0L, openedAtNanos + openNanos - ticker.read()))
+                            : Duration.ZERO)
+                    .build();
+        }
+    }
+
+    @VisibleForTesting
+    static boolean isFailure(HttpResponse<?> httpResponse, Throwable throwable) {
+        if (throwable != null) {
+            return true;
+        }
+        return httpResponse != null && httpResponse.statusCode() >= 500;
+    }
+
+    private void record(long permissionEpoch, byte outcome) {
+        synchronized (lock) {
+            if (permissionEpoch != epoch) {
+                return;
+            }
+            if (bufferedCalls == windowSize) {
+                forget(window[windowNext]);
+            } else {
+                bufferedCalls++;
+            }
+            window[windowNext] = outcome;
+            windowNext = (windowNext + 1) % windowSize;
+            if ((outcome & FAILURE) != 0) {
+                failures++;
+            }
+            if ((outcome & SLOW) != 0) {
+                slowCalls++;
+            }
+            if (state == State.HALF_OPEN) {
+                if (bufferedCalls == permittedTrialCalls) {
+                    transitionTo(isOverThreshold() ? State.OPEN : State.CLOSED);
+                }
+            } else if (bufferedCalls >= minimumCalls && isOverThreshold()) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    // a permitted call which tells nothing about MAQ, e.g. it never reached it, frees its trial slot without an outcome
+    private void abandon(long permissionEpoch) {
+        synchronized (lock) {
+            if (permissionEpoch == epoch && state == State.HALF_OPEN) {
+                trialCallsPermitted--;
+            }
+        }
+    }
+
+    private void forget(byte outcome) {
+        if ((outcome & FAILURE) != 0) {
+            failures--;
+        }
+        if ((outcome & SLOW) != 0) {
+            slowCalls--;
+        }
+    }
+
+    private boolean isOverThreshold() {
+        return (double) failures / bufferedCalls >= failureRateThreshold
+                || (double) slowCalls / bufferedCalls >= slowCallRateThreshold;
+    }
+
+    private void transitionTo(State newState) {
+        state = newState;
+        epoch++;
+        transitions++;
+        windowNext = 0;
+        bufferedCalls = 0;
+        failures = 0;
+        slowCalls = 0;
+        trialCallsPermitted = 0;
+        if (newState == State.OPEN) {
+            openedAtNanos = ticker.read();
+        }
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public class Permission {
+        private final long permissionEpoch;
+        private long startNanos;
+        private boolean started;
+        private boolean released;
+
+        private Permission(long permissionEpoch) {
+            this.permissionEpoch = permissionEpoch;
+        }
+
+        // the call's duration, compared against the slow call threshold, is measured from here
+        public synchronized void start() {
+            startNanos = ticker.read();
+            started = true;
+        }
+
+        public synchronized void release(HttpResponse<?> httpResponse, Throwable throwable) {
+            if (released || permissionEpoch < 0L) {
+                return;
+            }
+            released = true;
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause()
+                    : throwable;
+            if (!started || cause instanceof CancellationException || cause instanceof InterruptedException) {
+                abandon(permissionEpoch);
+                return;
+            }
+            boolean slow = ticker.read() - startNanos >= slowCallNanos;
+            // the caller's own deadline passing says nothing about MAQ unless MAQ had been slow until then
+            if (cause instanceof DeadlineExceededException) {
+                if (slow) {
+                    record(permissionEpoch, SLOW);
+                } else {
+                    abandon(permissionEpoch);
+                }
+                return;
+            }
+            byte outcome = 0;
+            if (isFailure(httpResponse, cause)) {
+                outcome |= FAILURE;
+            }
+            if (slow) {
+                outcome |= SLOW;
+            }
+            record(permissionEpoch, outcome);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package axal25.oles.jacek.maq.client;
+
+import lombok.*;
+
+import java.time.Duration;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqCircuitBreakerStatistics {
+    private MaqCircuitBreaker.State state;
+    private int bufferedCalls;
+    private double failureRate;
+    private double slowCallRate;
+    private long notPermittedCalls;
+    private long transitions;
+    private Duration remainingOpen;
+}
@@ -1,15 +1,22 @@
 package axal25.oles.jacek.maq.client;
 
+import axal25.oles.jacek.http.Deadline;
 import axal25.oles.jacek.http.HttpContainer;
 import axal25.oles.jacek.maq.model.MaqOmniSerializer;
+import axal25.oles.jacek.maq.model.MaqSentimentRequestBodyPublisher;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentLeanResponse;
 import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.function.Consumer;
 
 @Component
 public class MaqClient {
@@ -25,6 +32,10 @@ public class MaqClient {
     }
 
     public MaqSentimentResponse postSentiment(MaqSentimentRequestBody maqSentimentRequestBody) {
+        return postSentiment(maqSentimentRequestBody, Deadline.none());
+    }
+
+    public MaqSentimentResponse postSentiment(MaqSentimentRequestBody maqSentimentRequestBody, Deadline deadline) {
         String maqSentimentRequestBodyJson = null;
 
         try {
@@ -36,19 +47,92 @@ public class MaqClient {
                             e));
         }
 
-        return maqOmniSerializer.deserializeFromJson(
-                postSentiment(maqSentimentRequestBodyJson));
+        return maqOmniSerializer.deserializeFromJson(postSentiment(
+                maqSentimentRequestBodyJson,
+                MaqClientCommons.getRecords(maqSentimentRequestBody),
+                deadline));
     }
 
-    public HttpContainer<String> postSentiment(String maqSentimentRequestBodyJson) {
+    public MaqSentimentLeanResponse postSentimentLean(
+            MaqSentimentRequestBody maqSentimentRequestBody,
+            boolean withHeaders) {
+        return maqOmniSerializer.toLeanResponse(postSentiment(maqSentimentRequestBody), withHeaders);
+    }
+
+    public MaqSentimentResponse postSentiment(
+            MaqSentimentRequestBody maqSentimentRequestBody,
+            Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer) {
+        String maqSentimentRequestBodyJson = null;
+
+        try {
+            maqSentimentRequestBodyJson = maqOmniSerializer.serializeToJson(maqSentimentRequestBody);
+        } catch (JsonProcessingException e) {
+            return maqOmniSerializer.deserializeFromJson(
+                    maqClientCommons.getHttpContainerFailedSerialization(
+                            maqSentimentRequestBody,
+                            e));
+        }
+
         HttpContainer.HttpContainerBuilder<String> containerBuilder =
                 maqClientCommons.getContainerBuilder(maqSentimentRequestBodyJson);
 
+        try {
+            return maqClientCommons.sendOnce(
+                            containerBuilder,
+                            maqOmniSerializer.getStreamingBodyHandler(successConsumer),
+                            MaqClientCommons.getRecords(maqSentimentRequestBody))
+                    .body();
+        } catch (IOException | InterruptedException e) {
+            return maqOmniSerializer.deserializeFromJson(
+                    maqClientCommons.getHttpContainerFailedRequest(
+                            maqSentimentRequestBodyJson,
+                            containerBuilder,
+                            e));
+        }
+    }
+
+    public MaqSentimentResponse postSentiment(
+            Iterator<MaqSentimentRequestBodyDataElement> maqSentimentRequestBodyDataElements,
+            Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer) {
+        MaqSentimentRequestBodyPublisher bodyPublisher = maqOmniSerializer.getStreamingBodyPublisher(
+                maqSentimentRequestBodyDataElements,
+                maqClientCommons::recordStreamedRecords);
+        HttpContainer.HttpContainerBuilder<String> containerBuilder =
+                maqClientCommons.getContainerBuilder(bodyPublisher);
+
+        try {
+            HttpResponse<MaqSentimentResponse> httpResponse = maqClientCommons.sendOnce(
+                    containerBuilder,
+                    maqOmniSerializer.getStreamingBodyHandler(successConsumer),
+                    0);
+            bodyPublisher.recycle();
+            return httpResponse.body();
+        } catch (IOException | InterruptedException e) {
+            return maqOmniSerializer.deserializeFromJson(
+                    maqClientCommons.getHttpContainerFailedRequest(
+                            MaqClientCommons.STREAMED_REQUEST_BODY,
+                            containerBuilder,
+                            e));
+        }
+    }
+
+    public HttpContainer<String> postSentiment(String maqSentimentRequestBodyJson) {
+        return postSentiment(
+                maqSentimentRequestBodyJson,
+                maqOmniSerializer.countRecords(maqSentimentRequestBodyJson),
+                Deadline.none());
+    }
+
+    private HttpContainer<String> postSentiment(String maqSentimentRequestBodyJson, int records, Deadline deadline) {
+        HttpContainer.HttpContainerBuilder<String> containerBuilder =
+                maqClientCommons.getContainerBuilder(maqSentimentRequestBodyJson, deadline);
+
         HttpResponse<String> httpResponse;
         try {
-            httpResponse = containerBuilder.getClient().send(
-                    containerBuilder.getRequest(),
-                    HttpResponse.BodyHandlers.ofString());
+            httpResponse = maqClientCommons.send(
+                    containerBuilder,
+                    HttpResponse.BodyHandlers.ofString(),
+                    records);
         } catch (IOException | InterruptedException e) {
             return maqClientCommons.getHttpContainerFailedRequest(
                     maqSentimentRequestBodyJson,
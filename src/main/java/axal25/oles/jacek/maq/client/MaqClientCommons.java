@@ -1,18 +1,32 @@
 package axal25.oles.jacek.maq.client;
 
+import axal25.oles.jacek.http.CircuitBreakerOpenException;
+import axal25.oles.jacek.http.Deadline;
+import axal25.oles.jacek.http.DeadlineExceededException;
+import axal25.oles.jacek.http.HttpClientPool;
 import axal25.oles.jacek.http.HttpContainer;
+import axal25.oles.jacek.http.HttpRetrier;
+import axal25.oles.jacek.maq.metrics.MaqCallCounters;
+import axal25.oles.jacek.maq.metrics.MaqCallPhase;
+import axal25.oles.jacek.maq.metrics.MaqLatencyRecorder;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
 import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.util.concurrent.Executor;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static axal25.oles.jacek.constant.Constants.CONTENT_TYPE;
 import static axal25.oles.jacek.maq.MaqConstants.Endpoints.SENTIMENT;
@@ -26,35 +40,267 @@ public class MaqClientCommons {
     static final HttpClient.Version httpClientVersion = HttpClient.Version.HTTP_2;
     @VisibleForTesting
     static final URI URI_SENTIMENT = URI.create(SENTIMENT);
+    public static final String STREAMED_REQUEST_BODY = "(streamed)";
+    @VisibleForTesting
+    static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30L);
     private static final Logger logger = LoggerFactory.getLogger(MaqClientCommons.class);
     private final String maqKeyValue;
-    private final Executor executor;
+    private final HttpClientPool httpClientPool;
+    private final HttpRetrier httpRetrier;
+    private final MaqRateLimiter maqRateLimiter;
+    private final MaqConcurrencyLimiter maqConcurrencyLimiter;
+    private final MaqCircuitBreaker maqCircuitBreaker;
+    private final MaqLatencyRecorder maqLatencyRecorder;
+    private final MaqCallCounters maqCallCounters;
+    private final Duration requestTimeout;
 
     @Autowired
     MaqClientCommons(@Value("${secrets.maq_api_key_value}") String maqKeyValue,
-                     Executor executor) {
+                     @Value("${maq.request_timeout_millis}") long requestTimeoutMillis,
+                     HttpClientPool httpClientPool,
+                     HttpRetrier httpRetrier,
+                     MaqRateLimiter maqRateLimiter,
+                     MaqConcurrencyLimiter maqConcurrencyLimiter,
+                     MaqCircuitBreaker maqCircuitBreaker,
+                     MaqLatencyRecorder maqLatencyRecorder,
+                     MaqCallCounters maqCallCounters) {
         this.maqKeyValue = maqKeyValue;
-        this.executor = executor;
+        this.httpClientPool = httpClientPool;
+        this.httpRetrier = httpRetrier;
+        this.maqRateLimiter = maqRateLimiter;
+        this.maqConcurrencyLimiter = maqConcurrencyLimiter;
+        this.maqCircuitBreaker = maqCircuitBreaker;
+        this.maqLatencyRecorder = maqLatencyRecorder;
+        this.maqCallCounters = maqCallCounters;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+    }
+
+    @VisibleForTesting
+    MaqClientCommons(String maqKeyValue, HttpClientPool httpClientPool) {
+        this(maqKeyValue,
+                DEFAULT_REQUEST_TIMEOUT.toMillis(),
+                httpClientPool,
+                HttpRetrier.noRetries(),
+                MaqRateLimiter.unlimited(),
+                MaqConcurrencyLimiter.unlimited(),
+                MaqCircuitBreaker.neverOpen(),
+                new MaqLatencyRecorder(),
+                new MaqCallCounters());
     }
 
     public HttpContainer.HttpContainerBuilder<String> getContainerBuilder(
             String maqSentimentRequestBodyJson) {
-        return HttpContainer.<String>builder()
+        return getContainerBuilder(maqSentimentRequestBodyJson, Deadline.none());
+    }
+
+    public HttpContainer.HttpContainerBuilder<String> getContainerBuilder(
+            String maqSentimentRequestBodyJson,
+            Deadline deadline) {
+        return getContainerBuilder(HttpRequest.BodyPublishers.ofString(maqSentimentRequestBodyJson), deadline);
+    }
+
+    public HttpContainer.HttpContainerBuilder<String> getContainerBuilder(
+            HttpRequest.BodyPublisher maqSentimentRequestBodyPublisher) {
+        return getContainerBuilder(maqSentimentRequestBodyPublisher, Deadline.none());
+    }
+
+    public HttpContainer.HttpContainerBuilder<String> getContainerBuilder(
+            HttpRequest.BodyPublisher maqSentimentRequestBodyPublisher,
+            Deadline deadline) {
+        Preconditions.checkNotNull(deadline, "%s argument cannot be null.", Deadline.class.getSimpleName());
+        long startNanos = maqLatencyRecorder.start();
+        HttpContainer.HttpContainerBuilder<String> containerBuilder = HttpContainer.<String>builder()
                 .client(getHttpClient())
                 .request(HttpRequest.newBuilder()
                         .uri(URI_SENTIMENT)
                         .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
                         .header(MAQ_API_KEY_NAME, maqKeyValue)
                         .version(httpClientVersion)
-                        .POST(HttpRequest.BodyPublishers.ofString(maqSentimentRequestBodyJson))
-                        .build());
+                        .timeout(getTimeout(deadline))
+                        .POST(maqSentimentRequestBodyPublisher)
+                        .build())
+                .deadline(deadline);
+        maqLatencyRecorder.recordSince(MaqCallPhase.REQUEST_BUILD, startNanos);
+        return containerBuilder;
+    }
+
+    // the request timeout is a ceiling, a closer deadline shortens it
+    private Duration getTimeout(Deadline deadline) {
+        return deadline.getRemaining()
+                .filter(remaining -> remaining.compareTo(requestTimeout) < 0)
+                .map(remaining -> remaining.isZero() ? Duration.ofNanos(1L) : remaining)
+                .orElse(requestTimeout);
     }
 
     @VisibleForTesting
     HttpClient getHttpClient() {
-        return HttpClient.newBuilder()
-                .executor(executor)
-                .build();
+        return httpClientPool.getHttpClient();
+    }
+
+    public static int getRecords(MaqSentimentRequestBody maqSentimentRequestBody) {
+        return maqSentimentRequestBody == null || maqSentimentRequestBody.getData() == null
+                ? 0
+                : maqSentimentRequestBody.getData().size();
+    }
+
+    // a streamed body's records are charged to the rate limit and counted as they are written
+    public void recordStreamedRecords(int records) {
+        maqRateLimiter.charge(records);
+        maqCallCounters.recordRecords(records);
+    }
+
+    // every attempt, retries included, waits for the rate limiter; records is 0 when not known up front;
+    // neither the rate limiter nor the backoff between attempts is waited for past the call's deadline
+    public <T> HttpResponse<T> send(
+            HttpContainer.HttpContainerBuilder<String> containerBuilder,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            int records) throws IOException, InterruptedException {
+        return httpRetrier.send(() -> sendOnce(containerBuilder, bodyHandler, records), getDeadline(containerBuilder));
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+            HttpContainer.HttpContainerBuilder<String> containerBuilder,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            int records) {
+        return httpRetrier.sendAsync(
+                () -> sendOnceAsync(containerBuilder, bodyHandler, records),
+                getDeadline(containerBuilder));
+    }
+
+    // streamed bodies and responses cannot be replayed, so they are not retried;
+    // an open circuit breaker fails the attempt before it waits for the rate or concurrency limit
+    public <T> HttpResponse<T> sendOnce(
+            HttpContainer.HttpContainerBuilder<String> containerBuilder,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            int records) throws IOException, InterruptedException {
+        long admissionStartNanos = maqLatencyRecorder.start();
+        Deadline deadline = getDeadline(containerBuilder);
+        checkNotDone(deadline);
+        MaqCircuitBreaker.Permission permission = maqCircuitBreaker.acquire();
+        HttpResponse<T> httpResponse = null;
+        Throwable throwable = null;
+        try {
+            maqRateLimiter.acquire(records, deadline);
+            checkNotDone(deadline);
+            permission.start();
+            maqLatencyRecorder.recordSince(MaqCallPhase.ADMISSION, admissionStartNanos);
+            maqLatencyRecorder.recordRecords(records);
+            maqCallCounters.recordRequest(records);
+            httpResponse = containerBuilder.getClient().send(
+                    containerBuilder.getRequest(),
+                    maqLatencyRecorder.timed(bodyHandler, maqLatencyRecorder.start()));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            throwable = e;
+            throw e;
+        } finally {
+            permission.release(httpResponse, throwable);
+            maqCallCounters.recordOutcome(httpResponse, throwable);
+        }
+        maqRateLimiter.onResponse(httpResponse);
+        return httpResponse;
+    }
+
+    // cancelling the returned future, or the call's deadline being done, aborts the exchange
+    // and skips whatever stages of the attempt have not started yet
+    public <T> CompletableFuture<HttpResponse<T>> sendOnceAsync(
+            HttpContainer.HttpContainerBuilder<String> containerBuilder,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            int records) {
+        long admissionStartNanos = maqLatencyRecorder.start();
+        Deadline deadline = getDeadline(containerBuilder).child();
+        MaqCircuitBreaker.Permission permission;
+        try {
+            checkNotDone(deadline);
+            permission = maqCircuitBreaker.acquire();
+        } catch (IOException | CancellationException e) {
+            deadline.finish();
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<HttpResponse<T>> attempt = maqRateLimiter.acquireAsync(records, deadline)
+                .thenCompose(ignored -> {
+                    checkNotDoneUnchecked(deadline);
+                    CompletableFuture<MaqConcurrencyLimiter.Permit> permit = maqConcurrencyLimiter.acquire();
+                    deadline.whenDone(() -> permit.completeExceptionally(deadline.getFailure()));
+                    return permit;
+                })
+                .thenCompose(permit -> {
+                    if (deadline.isDone()) {
+                        permit.abandon();
+                        checkNotDoneUnchecked(deadline);
+                    }
+                    permission.start();
+                    maqLatencyRecorder.recordSince(MaqCallPhase.ADMISSION, admissionStartNanos);
+                    maqLatencyRecorder.recordRecords(records);
+                    maqCallCounters.recordRequest(records);
+                    return sendAsync(containerBuilder, bodyHandler, permit, deadline);
+                })
+                .whenComplete((httpResponse, throwable) -> {
+                    permission.release(httpResponse, throwable);
+                    if (httpResponse != null) {
+                        maqRateLimiter.onResponse(httpResponse);
+                    }
+                });
+        attempt.whenComplete((httpResponse, throwable) -> {
+            if (attempt.isCancelled()) {
+                deadline.cancel();
+            } else {
+                deadline.finish();
+            }
+        });
+        return attempt;
+    }
+
+    // the permit's round trip time is what the concurrency limit adapts to
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(
+            HttpContainer.HttpContainerBuilder<String> containerBuilder,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            MaqConcurrencyLimiter.Permit permit,
+            Deadline deadline) {
+        CompletableFuture<HttpResponse<T>> httpResponseFuture;
+        try {
+            httpResponseFuture = containerBuilder.getClient().sendAsync(
+                    containerBuilder.getRequest(),
+                    maqLatencyRecorder.timed(bodyHandler, maqLatencyRecorder.start()));
+        } catch (RuntimeException e) {
+            permit.release(null, e);
+            maqCallCounters.recordOutcome(null, e);
+            throw e;
+        }
+        deadline.whenDone(() -> httpResponseFuture.cancel(true));
+        return httpResponseFuture
+                .whenComplete(permit::release)
+                .handle((httpResponse, throwable) -> {
+                    if (throwable == null) {
+                        return httpResponse;
+                    }
+                    // an exchange aborted because the deadline passed failed with that, not with a cancellation
+                    throw new CompletionException(httpResponseFuture.isCancelled() && deadline.isExpired()
+                            ? deadline.getFailure()
+                            : throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause()
+                            : throwable);
+                })
+                .whenComplete(maqCallCounters::recordOutcome);
+    }
+
+    private static Deadline getDeadline(HttpContainer.HttpContainerBuilder<String> containerBuilder) {
+        return containerBuilder.getDeadline() == null ? Deadline.none() : containerBuilder.getDeadline();
+    }
+
+    private static void checkNotDone(Deadline deadline) throws IOException {
+        if (deadline.isDone()) {
+            Exception failure = deadline.getFailure();
+            if (failure instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw (RuntimeException) failure;
+        }
+    }
+
+    private static void checkNotDoneUnchecked(Deadline deadline) {
+        if (deadline.isDone()) {
+            throw new CompletionException(deadline.getFailure());
+        }
     }
 
     public HttpContainer<String> getHttpContainerFailedSerialization(
@@ -80,6 +326,19 @@ public class MaqClientCommons {
             String maqSentimentRequestBodyJson,
             HttpContainer.HttpContainerBuilder<String> containerBuilder,
             Throwable throwable) {
+        // failing fast is the expected outcome while the breaker is open or once the caller's deadline is done,
+        // not worth a stack trace per call
+        Throwable underlyingCause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        if (underlyingCause instanceof CircuitBreakerOpenException
+                || underlyingCause instanceof DeadlineExceededException
+                || underlyingCause instanceof CancellationException) {
+            return containerBuilder
+                    .throwable(underlyingCause)
+                    .causeMessage(underlyingCause.getMessage())
+                    .build();
+        }
         containerBuilder.throwable(throwable);
         String msgFormat = "%s during "
                 + HttpClient.class.getSimpleName()
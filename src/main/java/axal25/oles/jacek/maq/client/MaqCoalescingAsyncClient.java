@@ -0,0 +1,271 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.cache.TextHash;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import axal25.oles.jacek.util.VisibleForTesting;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// every text is sent once at a time: duplicates within a body and texts already in flight for other callers
+// wait for that one outcome, which is fanned out to all their ids;
+// an outcome is only what the response said about the text itself, its success or its errors,
+// a text the owner's response said nothing about, because the call failed or MAQ rejected the body for other records,
+// is sent again by every caller which waited for it, so none of them gets another caller's status
+@Component
+public class MaqCoalescingAsyncClient {
+    private final MaqAsyncClient maqAsyncClient;
+    // completed with null when the owner's response did not settle the text
+    private final Map<TextHash, CompletableFuture<TextOutcome>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    MaqCoalescingAsyncClient(MaqAsyncClient maqAsyncClient) {
+        this.maqAsyncClient = maqAsyncClient;
+    }
+
+    public CompletableFuture<MaqSentimentResponse> postSentiment(MaqSentimentRequestBody maqSentimentRequestBody) {
+        if (maqSentimentRequestBody == null || maqSentimentRequestBody.getData() == null) {
+            return maqAsyncClient.postSentiment(maqSentimentRequestBody);
+        }
+        return new CoalescedPost(maqSentimentRequestBody.getData()).start();
+    }
+
+    @VisibleForTesting
+    int getInFlight() {
+        return inFlight.size();
+    }
+
+    private class CoalescedPost {
+        private final List<MaqSentimentRequestBodyDataElement> data;
+        private final TextHash[] textHashes;
+        // 0-based position within the sent body of the element answering this one, -1 when not sent by this post
+        private final int[] sentPositions;
+        // the same within the body of texts sent again, -1 when not sent again
+        private final int[] resentPositions;
+        private final List<MaqSentimentRequestBodyDataElement> sent = new ArrayList<>();
+        private final Map<TextHash, CompletableFuture<TextOutcome>> outcomes = new HashMap<>();
+        // texts this post sends on behalf of everyone, by index of their first element
+        private final Map<TextHash, Integer> ownedIndexes = new LinkedHashMap<>();
+
+        private CoalescedPost(List<MaqSentimentRequestBodyDataElement> data) {
+            this.data = data;
+            this.textHashes = new TextHash[data.size()];
+            this.sentPositions = new int[data.size()];
+            this.resentPositions = new int[data.size()];
+            Arrays.fill(sentPositions, -1);
+            Arrays.fill(resentPositions, -1);
+        }
+
+        private CompletableFuture<MaqSentimentResponse> start() {
+            for (int i = 0; i < data.size(); i++) {
+                String text = data.get(i).getText();
+                if (text == null) {
+                    send(i);
+                    continue;
+                }
+                textHashes[i] = TextHash.of(text);
+                if (outcomes.containsKey(textHashes[i])) {
+                    Integer ownedIndex = ownedIndexes.get(textHashes[i]);
+                    if (ownedIndex != null) {
+                        sentPositions[i] = sentPositions[ownedIndex];
+                    }
+                    continue;
+                }
+                CompletableFuture<TextOutcome> outcome = new CompletableFuture<>();
+                CompletableFuture<TextOutcome> pending = inFlight.putIfAbsent(textHashes[i], outcome);
+                if (pending != null) {
+                    outcomes.put(textHashes[i], pending);
+                } else {
+                    outcomes.put(textHashes[i], outcome);
+                    ownedIndexes.put(textHashes[i], i);
+                    send(i);
+                }
+            }
+
+            CompletableFuture<Answer> ownAnswer = sent.isEmpty()
+                    ? CompletableFuture.completedFuture(null)
+                    : maqAsyncClient.postSentiment(toRequestBody(sent))
+                    .whenComplete(this::settle)
+                    .thenApply(maqSentimentResponse -> Answer.of(sent, maqSentimentResponse));
+            return ownAnswer.thenCompose(own -> CompletableFuture
+                    .allOf(outcomes.values().toArray(CompletableFuture[]::new))
+                    .thenCompose(ignored -> resendUnsettled())
+                    .thenApply(resent -> merge(own, resent)));
+        }
+
+        private void send(int index) {
+            sentPositions[index] = sent.size();
+            sent.add(data.get(index));
+        }
+
+        private void settle(MaqSentimentResponse maqSentimentResponse, Throwable throwable) {
+            Answer answer = throwable == null ? Answer.of(sent, maqSentimentResponse) : null;
+            ownedIndexes.forEach((textHash, index) -> {
+                CompletableFuture<TextOutcome> outcome = outcomes.get(textHash);
+                inFlight.remove(textHash, outcome);
+                outcome.complete(answer == null ? null : answer.getOutcome(sentPositions[index]));
+            });
+        }
+
+        // sent once and not coalesced, so a text which keeps failing does not keep being passed around
+        private CompletableFuture<Answer> resendUnsettled() {
+            List<MaqSentimentRequestBodyDataElement> resent = new ArrayList<>();
+            Map<TextHash, Integer> resentPositionsByTextHash = new HashMap<>();
+            for (int i = 0; i < data.size(); i++) {
+                if (textHashes[i] == null || sentPositions[i] >= 0 || outcomes.get(textHashes[i]).join() != null) {
+                    continue;
+                }
+                Integer position = resentPositionsByTextHash.get(textHashes[i]);
+                if (position == null) {
+                    position = resent.size();
+                    resentPositionsByTextHash.put(textHashes[i], position);
+                    resent.add(data.get(i));
+                }
+                resentPositions[i] = position;
+            }
+            if (resent.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return maqAsyncClient.postSentiment(toRequestBody(resent))
+                    .thenApply(maqSentimentResponse -> Answer.of(resent, maqSentimentResponse));
+        }
+
+        private MaqSentimentResponse merge(Answer own, Answer resent) {
+            List<MaqSentimentResponseSuccessBodyElement> successes = new ArrayList<>();
+            List<MaqSentimentResponseErrorBodyElement> errors = new ArrayList<>();
+            for (int i = 0; i < data.size(); i++) {
+                TextOutcome outcome;
+                if (sentPositions[i] >= 0) {
+                    outcome = own.getOutcome(sentPositions[i]);
+                } else if (resentPositions[i] >= 0) {
+                    outcome = resent.getOutcome(resentPositions[i]);
+                } else {
+                    outcome = outcomes.get(textHashes[i]).join();
+                }
+                if (outcome == null) {
+                    continue;
+                }
+                if (outcome.sentiment() != null) {
+                    successes.add(MaqSentimentResponseSuccessBodyElement.builder()
+                            .id(data.get(i).getId())
+                            .sentiment(outcome.sentiment())
+                            .build());
+                }
+                long recordNumber = i + 1L;
+                outcome.errors().forEach(error -> errors.add(error.toBuilder()
+                        .recordNumber(recordNumber)
+                        .build()));
+            }
+            // errors not about a single record, e.g. of the data property
+            Stream.of(own, resent)
+                    .filter(Objects::nonNull)
+                    .forEach(answer -> errors.addAll(answer.getErrors(null)));
+
+            MaqSentimentResponse.MaqSentimentResponseBuilder merged = own == null || own.response() == null
+                    ? MaqSentimentResponse.builder()
+                    : own.response().toBuilder();
+            Integer statusCode = 200;
+            String message = null;
+            // a failure of this caller's own requests keeps its status, like MAQ any rejected record makes a 400
+            Optional<MaqSentimentResponse> failed = Stream.of(own, resent)
+                    .filter(Objects::nonNull)
+                    .map(Answer::response)
+                    .filter(response -> response != null && !Integer.valueOf(200).equals(response.getStatusCode()))
+                    .findFirst();
+            if (failed.isPresent()) {
+                statusCode = failed.get().getStatusCode();
+                message = failed.get().getMessage();
+            } else if (!errors.isEmpty()) {
+                statusCode = 400;
+            } else if (own != null && own.response() != null) {
+                message = own.response().getMessage();
+            }
+            return merged
+                    .statusCode(statusCode)
+                    .message(message)
+                    .successes(successes.isEmpty() ? null : successes)
+                    .errors(errors.isEmpty() ? null : errors)
+                    .build();
+        }
+    }
+
+    private static MaqSentimentRequestBody toRequestBody(List<MaqSentimentRequestBodyDataElement> elements) {
+        return MaqSentimentRequestBody.builder()
+                .data(elements)
+                .build();
+    }
+
+    // MAQ's response to the sent elements
+    private record Answer(
+            List<MaqSentimentRequestBodyDataElement> sent,
+            MaqSentimentResponse response,
+            Map<String, BigDecimal> sentimentsById,
+            Map<Long, List<MaqSentimentResponseErrorBodyElement>> errorsByRecordNumber) {
+
+        private static Answer of(List<MaqSentimentRequestBodyDataElement> sent, MaqSentimentResponse response) {
+            return new Answer(sent, response, getSentimentsById(response), getErrorsByRecordNumber(response, sent.size()));
+        }
+
+        // null when the response said nothing about the element at the 0-based position
+        private TextOutcome getOutcome(int position) {
+            BigDecimal sentiment = sentimentsById.get(sent.get(position).getId());
+            List<MaqSentimentResponseErrorBodyElement> errors = getErrors(position + 1L);
+            if (sentiment == null && errors.isEmpty()) {
+                return null;
+            }
+            return new TextOutcome(sentiment, errors);
+        }
+
+        private List<MaqSentimentResponseErrorBodyElement> getErrors(Long recordNumber) {
+            return errorsByRecordNumber.getOrDefault(recordNumber, List.of());
+        }
+
+        private static Map<String, BigDecimal> getSentimentsById(MaqSentimentResponse maqSentimentResponse) {
+            Map<String, BigDecimal> sentimentsById = new HashMap<>();
+            if (maqSentimentResponse != null && maqSentimentResponse.getSuccesses() != null) {
+                maqSentimentResponse.getSuccesses().forEach(success -> {
+                    if (success.getSentiment() != null) {
+                        sentimentsById.putIfAbsent(success.getId(), success.getSentiment());
+                    }
+                });
+            }
+            return sentimentsById;
+        }
+
+        // recordNumber is the 1-based position within the sent body, unknown ones are kept under null
+        private static Map<Long, List<MaqSentimentResponseErrorBodyElement>> getErrorsByRecordNumber(
+                MaqSentimentResponse maqSentimentResponse,
+                int size) {
+            Map<Long, List<MaqSentimentResponseErrorBodyElement>> errorsByRecordNumber = new HashMap<>();
+            if (maqSentimentResponse != null && maqSentimentResponse.getErrors() != null) {
+                maqSentimentResponse.getErrors().forEach(error -> {
+                    Long recordNumber = error.getRecordNumber();
+                    Long key = recordNumber != null && recordNumber >= 1 && recordNumber <= size
+                            ? recordNumber
+                            : null;
+                    errorsByRecordNumber.computeIfAbsent(key, ignored -> new ArrayList<>()).add(error);
+                });
+            }
+            return errorsByRecordNumber;
+        }
+    }
+
+    private record TextOutcome(BigDecimal sentiment, List<MaqSentimentResponseErrorBodyElement> errors) {
+    }
+}
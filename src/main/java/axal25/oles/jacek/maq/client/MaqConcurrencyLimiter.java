@@ -0,0 +1,197 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// gradient limit: while the latest RTT stays close to the long-term average RTT the limit grows by a queue
+// allowance of sqrt(limit), once MAQ starts queueing the RTT rises and the limit shrinks proportionally;
+// 429/503/504 responses and exceptions cut the limit multiplicatively
+@Component
+public class MaqConcurrencyLimiter {
+    @VisibleForTesting
+    static final double RTT_TOLERANCE = 1.5;
+    @VisibleForTesting
+    static final double SMOOTHING = 0.2;
+    @VisibleForTesting
+    static final double DROP_RATIO = 0.9;
+    private static final int LONG_RTT_WINDOW = 600;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Ticker ticker;
+    private final Object lock = new Object();
+    private final Queue<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long samples;
+    private long drops;
+    private long shortRttNanos;
+    private double longRttNanos;
+
+    @Autowired
+    MaqConcurrencyLimiter(@Value("${maq.concurrency_limit.initial}") int initialLimit,
+                          @Value("${maq.concurrency_limit.min}") int minLimit,
+                          @Value("${maq.concurrency_limit.max}") int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    MaqConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Ticker ticker) {
+        Preconditions.checkArgument(minLimit > 0,
+                "Min limit must be positive but was: %s.", minLimit);
+        Preconditions.checkArgument(maxLimit >= minLimit,
+                "Max limit must be at least min limit: %s but was: %s.", minLimit, maxLimit);
+        Preconditions.checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit,
+                "Initial limit must be between %s and %s but was: %s.", minLimit, maxLimit, initialLimit);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.ticker = ticker;
+    }
+
+    public static MaqConcurrencyLimiter unlimited() {
+        return new MaqConcurrencyLimiter(
+                Integer.MAX_VALUE,
+                Integer.MAX_VALUE,
+                Integer.MAX_VALUE,
+                Ticker.systemTicker());
+    }
+
+    // callers over the limit wait in arrival order for a released permit
+    public CompletableFuture<Permit> acquire() {
+        synchronized (lock) {
+            if (waiting.isEmpty() && inFlight < getLimit()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit());
+            }
+            CompletableFuture<Permit> permit = new CompletableFuture<>();
+            waiting.add(permit);
+            return permit;
+        }
+    }
+
+    public int getLimit() {
+        synchronized (lock) {
+            return (int) limit;
+        }
+    }
+
+    public MaqConcurrencyLimiterStatistics getStatistics() {
+        synchronized (lock) {
+            return MaqConcurrencyLimiterStatistics.builder()
+                    .limit((int) limit)
+                    .minLimit(minLimit)
+                    .maxLimit(maxLimit)
+                    .inFlight(inFlight)
+                    .queueDepth(waiting.size())
+                    .samples(samples)
+                    .drops(drops)
+                    .shortRtt(Duration.ofNanos(shortRttNanos))
+                    .longRtt(Duration.ofNanos((long) longRttNanos))
+                    .build();
+        }
+    }
+
+    @VisibleForTesting
+    static boolean isDropped(HttpResponse<?> httpResponse, Throwable throwable) {
+        if (throwable != null) {
+            return true;
+        }
+        if (httpResponse == null) {
+            return false;
+        }
+        int statusCode = httpResponse.statusCode();
+        return statusCode == 429 || statusCode == 503 || statusCode == 504;
+    }
+
+    private void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        samples++;
+        if (dropped) {
+            drops++;
+            limit = Math.max(minLimit, limit * DROP_RATIO);
+            return;
+        }
+        shortRttNanos = rttNanos;
+        if (longRttNanos == 0.0) {
+            longRttNanos = rttNanos;
+        } else {
+            double alpha = 2.0 / (Math.min(samples, LONG_RTT_WINDOW) + 1);
+            longRttNanos += alpha * (rttNanos - longRttNanos);
+        }
+        // a sustained drop in RTT would keep the limit pinned down, so the long-term average catches up quickly
+        if (longRttNanos / rttNanos > 2.0) {
+            longRttNanos *= 0.95;
+        }
+        // too little traffic to say whether a higher limit would be sustained
+        if (inFlightAtStart < limit / 2.0) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRttNanos / Math.max(1L, rttNanos)));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, (1.0 - SMOOTHING) * limit + SMOOTHING * newLimit));
+    }
+
+    private void grantWaiting() {
+        while (true) {
+            CompletableFuture<Permit> next;
+            Permit permit;
+            synchronized (lock) {
+                if (inFlight >= getLimit() || (next = waiting.poll()) == null) {
+                    return;
+                }
+                inFlight++;
+                permit = new Permit();
+            }
+            // a caller which gave up waiting hands its permit straight back
+            if (!next.complete(permit) && permit.released.compareAndSet(false, true)) {
+                synchronized (lock) {
+                    inFlight--;
+                }
+            }
+        }
+    }
+
+    public class Permit {
+        private final long startNanos = ticker.read();
+        private final int inFlightAtStart = inFlight;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        public void release(HttpResponse<?> httpResponse, Throwable throwable) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause()
+                    : throwable;
+            long rttNanos = ticker.read() - startNanos;
+            synchronized (lock) {
+                inFlight--;
+                // a cancelled exchange says nothing about how MAQ copes with the load
+                if (!(cause instanceof CancellationException)) {
+                    onSample(rttNanos, inFlightAtStart, isDropped(httpResponse, cause));
+                }
+            }
+            grantWaiting();
+        }
+
+        // for a permit whose request was never sent
+        public void abandon() {
+            release(null, new CancellationException());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package axal25.oles.jacek.maq.client;
+
+import lombok.*;
+
+import java.time.Duration;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqConcurrencyLimiterStatistics {
+    private int limit;
+    private int minLimit;
+    private int maxLimit;
+    private int inFlight;
+    private int queueDepth;
+    private long samples;
+    private long drops;
+    private Duration shortRtt;
+    private Duration longRtt;
+}
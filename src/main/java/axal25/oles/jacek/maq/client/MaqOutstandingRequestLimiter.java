@@ -0,0 +1,182 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.executor.PoolThreads;
+import axal25.oles.jacek.http.Deadline;
+import axal25.oles.jacek.http.OutstandingLimitExceededException;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import com.google.common.base.Preconditions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// caps the calls a caller can have outstanding, from before their bodies get serialized until they complete,
+// so a fast producer cannot pile up bodies and exchanges in memory
+@Component
+public class MaqOutstandingRequestLimiter {
+    public static final String NAME = "MAQ";
+    private final int maxRequests;
+    private final long maxBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final Object lock = new Object();
+    private final Queue<Waiter> waiting = new ArrayDeque<>();
+    private int inFlightRequests;
+    private long inFlightBytes;
+    private long acquisitions;
+    private long delayedAcquisitions;
+    private long rejections;
+
+    @Autowired
+    MaqOutstandingRequestLimiter(@Value("${maq.outstanding_limit.max_requests}") int maxRequests,
+                                 @Value("${maq.outstanding_limit.max_bytes}") long maxBytes,
+                                 @Value("${maq.outstanding_limit.overflow_policy}") OverflowPolicy overflowPolicy) {
+        Preconditions.checkArgument(maxRequests > 0,
+                "Max requests must be positive but was: %s.", maxRequests);
+        Preconditions.checkArgument(maxBytes > 0L,
+                "Max bytes must be positive but was: %s.", maxBytes);
+        this.maxRequests = maxRequests;
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy);
+    }
+
+    public static MaqOutstandingRequestLimiter unlimited() {
+        return new MaqOutstandingRequestLimiter(Integer.MAX_VALUE, Long.MAX_VALUE, OverflowPolicy.FAIL_FAST);
+    }
+
+    // estimated from the texts, the body is not serialized yet when its permit is acquired
+    public static long getBytes(MaqSentimentRequestBody maqSentimentRequestBody) {
+        if (maqSentimentRequestBody == null || maqSentimentRequestBody.getData() == null) {
+            return 0L;
+        }
+        long bytes = 0L;
+        for (MaqSentimentRequestBodyDataElement element : maqSentimentRequestBody.getData()) {
+            bytes += element == null ? 0L : MaqSentimentBatcher.estimateBytes(element);
+        }
+        return bytes;
+    }
+
+    // callers over the limit wait in arrival order, or fail fast, depending on the overflow policy;
+    // a call larger than max bytes on its own is let through once nothing else is in flight;
+    // BLOCK parks only a caller's own thread, a call chained from another's completion on a pool thread waits
+    // asynchronously, as parking the threads which complete the calls in flight could leave none to release permits
+    public CompletableFuture<Permit> acquire(long bytes, Deadline deadline) {
+        Preconditions.checkArgument(bytes >= 0L,
+                "Bytes cannot be negative but was: %s.", bytes);
+        Preconditions.checkNotNull(deadline, "%s argument cannot be null.", Deadline.class.getSimpleName());
+        Waiter waiter = new Waiter(bytes, new CompletableFuture<>());
+        synchronized (lock) {
+            if (waiting.isEmpty() && fits(bytes)) {
+                return CompletableFuture.completedFuture(newPermit(bytes));
+            }
+            if (overflowPolicy == OverflowPolicy.FAIL_FAST) {
+                rejections++;
+                return CompletableFuture.failedFuture(
+                        new OutstandingLimitExceededException(NAME, inFlightRequests, inFlightBytes));
+            }
+            delayedAcquisitions++;
+            waiting.add(waiter);
+        }
+        waiter.permit().whenComplete((permit, throwable) -> {
+            if (throwable != null) {
+                synchronized (lock) {
+                    waiting.remove(waiter);
+                }
+                // a large call giving up at the head of the queue may unblock smaller ones behind it
+                grantWaiting();
+            }
+        });
+        deadline.whenDone(() -> waiter.permit().completeExceptionally(deadline.getFailure()));
+        if (overflowPolicy == OverflowPolicy.BLOCK && !PoolThreads.isPoolThread()) {
+            await(waiter.permit());
+        }
+        return waiter.permit();
+    }
+
+    public MaqOutstandingRequestLimiterStatistics getStatistics() {
+        synchronized (lock) {
+            return MaqOutstandingRequestLimiterStatistics.builder()
+                    .maxRequests(maxRequests)
+                    .maxBytes(maxBytes)
+                    .overflowPolicy(overflowPolicy)
+                    .inFlightRequests(inFlightRequests)
+                    .inFlightBytes(inFlightBytes)
+                    .queueDepth(waiting.size())
+                    .acquisitions(acquisitions)
+                    .delayedAcquisitions(delayedAcquisitions)
+                    .rejections(rejections)
+                    .build();
+        }
+    }
+
+    private static void await(CompletableFuture<Permit> permit) {
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permit.completeExceptionally(new CancellationException(
+                    "Interrupted while waiting for " + NAME + " outstanding request limit."));
+        } catch (ExecutionException | CancellationException ignored) {
+        }
+    }
+
+    private boolean fits(long bytes) {
+        return inFlightRequests < maxRequests
+                && (inFlightBytes == 0L || bytes <= maxBytes - inFlightBytes);
+    }
+
+    private Permit newPermit(long bytes) {
+        inFlightRequests++;
+        inFlightBytes += bytes;
+        acquisitions++;
+        return new Permit(bytes);
+    }
+
+    private void grantWaiting() {
+        while (true) {
+            Waiter next;
+            Permit permit;
+            synchronized (lock) {
+                next = waiting.peek();
+                if (next == null || !fits(next.bytes())) {
+                    return;
+                }
+                waiting.poll();
+                permit = newPermit(next.bytes());
+            }
+            // a caller which gave up waiting hands its permit straight back
+            if (!next.permit().complete(permit)) {
+                permit.release();
+            }
+        }
+    }
+
+    private record Waiter(long bytes, CompletableFuture<Permit> permit) {
+    }
+
+    public class Permit {
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (lock) {
+                inFlightRequests--;
+                inFlightBytes -= bytes;
+            }
+            grantWaiting();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package axal25.oles.jacek.maq.client;
+
+import lombok.*;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqOutstandingRequestLimiterStatistics {
+    private int maxRequests;
+    private long maxBytes;
+    private OverflowPolicy overflowPolicy;
+    private int inFlightRequests;
+    private long inFlightBytes;
+    private int queueDepth;
+    private long acquisitions;
+    private long delayedAcquisitions;
+    private long rejections;
+}
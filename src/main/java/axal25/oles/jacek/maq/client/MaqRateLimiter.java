@@ -0,0 +1,263 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.http.Deadline;
+import axal25.oles.jacek.http.DeadlineExceededException;
+import axal25.oles.jacek.http.RetryAfter;
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.math.LongMath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// two token buckets (requests and records per second, each allowing a burst of one second's worth)
+// and a pause after 429/503 responses for as long as their Retry-After says;
+// callers are given a dispatch time instead of being rejected, unless their deadline would pass before it
+@Component
+public class MaqRateLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+    private final double requestsPerSecond;
+    private final double recordsPerSecond;
+    private final Executor executor;
+    private final Ticker ticker;
+    private final Clock clock;
+    private final Object lock = new Object();
+    private final Bucket requestsBucket;
+    private final Bucket recordsBucket;
+    private long pausedUntilNanos;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder delayedAcquisitions = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder pauses = new LongAdder();
+
+    @Autowired
+    MaqRateLimiter(@Value("${maq.rate_limit.requests_per_second}") double requestsPerSecond,
+                   @Value("${maq.rate_limit.records_per_second}") double recordsPerSecond,
+                   @Qualifier("executor") Executor executor) {
+        this(requestsPerSecond, recordsPerSecond, executor, Ticker.systemTicker(), Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    MaqRateLimiter(double requestsPerSecond,
+                   double recordsPerSecond,
+                   Executor executor,
+                   Ticker ticker,
+                   Clock clock) {
+        Preconditions.checkArgument(requestsPerSecond > 0.0,
+                "Requests per second must be positive but was: %s.", requestsPerSecond);
+        Preconditions.checkArgument(recordsPerSecond > 0.0,
+                "Records per second must be positive but was: %s.", recordsPerSecond);
+        this.requestsPerSecond = requestsPerSecond;
+        this.recordsPerSecond = recordsPerSecond;
+        this.executor = executor;
+        this.ticker = ticker;
+        this.clock = clock;
+        long now = ticker.read();
+        this.requestsBucket = new Bucket(requestsPerSecond, now);
+        this.recordsBucket = new Bucket(recordsPerSecond, now);
+        this.pausedUntilNanos = now;
+    }
+
+    public static MaqRateLimiter unlimited() {
+        return new MaqRateLimiter(
+                Double.POSITIVE_INFINITY,
+                Double.POSITIVE_INFINITY,
+                Runnable::run,
+                Ticker.systemTicker(),
+                Clock.systemUTC());
+    }
+
+    public void acquire(int records) throws InterruptedException {
+        acquireWithin(records, Long.MAX_VALUE);
+    }
+
+    // a wait which would outlast the deadline fails right away, before any tokens are taken
+    public void acquire(int records, Deadline deadline) throws IOException, InterruptedException {
+        if (!acquireWithin(records, getRemainingNanos(deadline))) {
+            throw new DeadlineExceededException("Deadline would pass while waiting for the rate limit.");
+        }
+    }
+
+    public CompletableFuture<Void> acquireAsync(int records) {
+        return acquireAsync(records, Deadline.none());
+    }
+
+    // the returned future fails with the deadline's failure once it is done,
+    // a wait which would outlast the deadline fails right away, before any tokens are taken
+    public CompletableFuture<Void> acquireAsync(int records, Deadline deadline) {
+        long start = ticker.read();
+        long maxWaitNanos = getRemainingNanos(deadline);
+        long delayNanos = reserve(records, start, maxWaitNanos);
+        if (delayNanos > maxWaitNanos) {
+            return CompletableFuture.failedFuture(
+                    new DeadlineExceededException("Deadline would pass while waiting for the rate limit."));
+        }
+        if (delayNanos <= 0L) {
+            recordWait(0L);
+            return CompletableFuture.completedFuture(null);
+        }
+        queueDepth.incrementAndGet();
+        delayedAcquisitions.increment();
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        acquired.whenComplete((ignored, throwable) -> {
+            queueDepth.decrementAndGet();
+            recordWait(ticker.read() - start);
+        });
+        deadline.whenDone(() -> acquired.completeExceptionally(deadline.getFailure()));
+        dispatchAfter(delayNanos, acquired);
+        return acquired;
+    }
+
+    // records known only while their body streams are taken without waiting, the calls after them wait instead
+    public void charge(int records) {
+        if (records <= 0) {
+            return;
+        }
+        long now = ticker.read();
+        synchronized (lock) {
+            recordsBucket.take(now, records);
+        }
+    }
+
+    public void onResponse(HttpResponse<?> httpResponse) {
+        if (httpResponse.statusCode() != 429 && httpResponse.statusCode() != 503) {
+            return;
+        }
+        RetryAfter.parse(httpResponse.headers(), clock).ifPresent(retryAfter -> {
+            long until = LongMath.saturatedAdd(ticker.read(), retryAfter.toNanos());
+            synchronized (lock) {
+                if (until > pausedUntilNanos) {
+                    pausedUntilNanos = until;
+                    pauses.increment();
+                }
+            }
+        });
+    }
+
+    public MaqRateLimiterStatistics getStatistics() {
+        return MaqRateLimiterStatistics.builder()
+                .requestsPerSecond(requestsPerSecond)
+                .recordsPerSecond(recordsPerSecond)
+                .queueDepth(queueDepth.get())
+                .acquisitions(acquisitions.sum())
+                .delayedAcquisitions(delayedAcquisitions.sum())
+                .totalWait(Duration.ofNanos(totalWaitNanos.sum()))
+                .maxWait(Duration.ofNanos(maxWaitNanos.get()))
+                .pauses(pauses.sum())
+                .remainingPause(Duration.ofNanos(Math.max(0L, getRemainingPauseNanos())))
+                .build();
+    }
+
+    // callers already given a dispatch time still wait for a pause which started after their reservation
+    private void dispatchAfter(long delayNanos, CompletableFuture<Void> acquired) {
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor).execute(() -> {
+            if (acquired.isDone()) {
+                return;
+            }
+            long remainingPauseNanos = getRemainingPauseNanos();
+            if (remainingPauseNanos > 0L) {
+                dispatchAfter(remainingPauseNanos, acquired);
+                return;
+            }
+            acquired.complete(null);
+        });
+    }
+
+    // false when the wait would be longer than maxWaitNanos
+    private boolean acquireWithin(int records, long maxWaitNanos) throws InterruptedException {
+        long start = ticker.read();
+        long delayNanos = reserve(records, start, maxWaitNanos);
+        if (delayNanos > maxWaitNanos) {
+            return false;
+        }
+        if (delayNanos <= 0L) {
+            recordWait(0L);
+            return true;
+        }
+        queueDepth.incrementAndGet();
+        delayedAcquisitions.increment();
+        try {
+            while (delayNanos > 0L) {
+                if (ticker.read() - start + delayNanos > maxWaitNanos) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+                delayNanos = getRemainingPauseNanos();
+            }
+            return true;
+        } finally {
+            queueDepth.decrementAndGet();
+            recordWait(ticker.read() - start);
+        }
+    }
+
+    // tokens are only taken when the caller is willing to wait for them
+    private long reserve(int records, long now, long maxWaitNanos) {
+        synchronized (lock) {
+            long dispatchAt = Math.max(now, pausedUntilNanos);
+            dispatchAt = Math.max(dispatchAt, requestsBucket.earliest());
+            dispatchAt = Math.max(dispatchAt, recordsBucket.earliest());
+            if (dispatchAt - now > maxWaitNanos) {
+                return dispatchAt - now;
+            }
+            requestsBucket.take(dispatchAt, 1);
+            recordsBucket.take(dispatchAt, records);
+            return dispatchAt - now;
+        }
+    }
+
+    private static long getRemainingNanos(Deadline deadline) {
+        return deadline.getRemaining()
+                .map(Duration::toNanos)
+                .orElse(Long.MAX_VALUE);
+    }
+
+    private long getRemainingPauseNanos() {
+        long now = ticker.read();
+        synchronized (lock) {
+            return pausedUntilNanos - now;
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        acquisitions.increment();
+        if (waitNanos > 0L) {
+            totalWaitNanos.add(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+    }
+
+    // "theoretical arrival time" of the next permit, permits may be taken up to a second ahead of it
+    private static class Bucket {
+        private final double nanosPerPermit;
+        private long theoreticalArrivalNanos;
+
+        private Bucket(double permitsPerSecond, long now) {
+            this.nanosPerPermit = NANOS_PER_SECOND / permitsPerSecond;
+            this.theoreticalArrivalNanos = now;
+        }
+
+        private long earliest() {
+            return theoreticalArrivalNanos - NANOS_PER_SECOND;
+        }
+
+        private void take(long at, int permits) {
+            theoreticalArrivalNanos = Math.max(theoreticalArrivalNanos, at) + Math.round(permits * nanosPerPermit);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package axal25.oles.jacek.maq.client;
+
+import lombok.*;
+
+import java.time.Duration;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqRateLimiterStatistics {
+    private double requestsPerSecond;
+    private double recordsPerSecond;
+    private int queueDepth;
+    private long acquisitions;
+    private long delayedAcquisitions;
+    private Duration totalWait;
+    private Duration maxWait;
+    private long pauses;
+    private Duration remainingPause;
+}
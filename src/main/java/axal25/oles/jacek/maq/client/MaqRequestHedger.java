@@ -0,0 +1,226 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// a request still unanswered after the configured percentile of recent latencies gets a duplicate,
+// whichever first completes with a winning value, e.g. a 2xx response, wins and the other is cancelled;
+// latencies are recorded for winners only, so the delay tracks how long MAQ takes to answer successfully;
+// every request earns maxHedgeRatio of a hedge and every hedge spends a whole one,
+// so hedges stay below that share of requests however slow MAQ gets
+@Component
+public class MaqRequestHedger {
+    private static final long MILLI_TOKENS_PER_HEDGE = 1_000L;
+    private static final int MAX_HEDGES_BURST = 10;
+    private final boolean enabled;
+    private final double percentile;
+    private final int minSamples;
+    private final long milliTokensPerRequest;
+    private final Executor executor;
+    private final Ticker ticker;
+    private final Object lock = new Object();
+    private final long[] latencies;
+    private int latenciesNext;
+    private int latenciesCount;
+    private int samplesSinceDelayUpdate;
+    private volatile long hedgeDelayNanos = -1L;
+    private final AtomicLong milliTokens = new AtomicLong(MAX_HEDGES_BURST * MILLI_TOKENS_PER_HEDGE);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    @Autowired
+    MaqRequestHedger(@Value("${maq.hedging.enabled}") boolean enabled,
+                     @Value("${maq.hedging.percentile}") double percentile,
+                     @Value("${maq.hedging.window_size}") int windowSize,
+                     @Value("${maq.hedging.min_samples}") int minSamples,
+                     @Value("${maq.hedging.max_hedge_ratio}") double maxHedgeRatio,
+                     @Qualifier("executor") Executor executor) {
+        this(enabled, percentile, windowSize, minSamples, maxHedgeRatio, executor, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    MaqRequestHedger(boolean enabled,
+                     double percentile,
+                     int windowSize,
+                     int minSamples,
+                     double maxHedgeRatio,
+                     Executor executor,
+                     Ticker ticker) {
+        Preconditions.checkArgument(percentile > 0.0 && percentile < 1.0,
+                "Percentile must be in (0, 1) but was: %s.", percentile);
+        Preconditions.checkArgument(windowSize > 0,
+                "Window size must be positive but was: %s.", windowSize);
+        Preconditions.checkArgument(minSamples > 0 && minSamples <= windowSize,
+                "Min samples must be between 1 and window size: %s but was: %s.", windowSize, minSamples);
+        Preconditions.checkArgument(maxHedgeRatio >= 0.0 && maxHedgeRatio <= 1.0,
+                "Max hedge ratio must be in [0, 1] but was: %s.", maxHedgeRatio);
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.milliTokensPerRequest = Math.round(maxHedgeRatio * MILLI_TOKENS_PER_HEDGE);
+        this.executor = executor;
+        this.ticker = ticker;
+        this.latencies = new long[windowSize];
+    }
+
+    public static MaqRequestHedger disabled() {
+        return new MaqRequestHedger(false, 0.5, 1, 1, 0.0, Runnable::run, Ticker.systemTicker());
+    }
+
+    public <T> CompletableFuture<T> hedge(Supplier<CompletableFuture<T>> request) {
+        return hedge(request, value -> true);
+    }
+
+    public <T> CompletableFuture<T> hedge(Supplier<CompletableFuture<T>> request, Predicate<T> isWinner) {
+        if (!enabled) {
+            return request.get();
+        }
+        requests.increment();
+        milliTokens.getAndUpdate(current ->
+                Math.min(MAX_HEDGES_BURST * MILLI_TOKENS_PER_HEDGE, current + milliTokensPerRequest));
+        return new HedgedRequest<>(request, isWinner).start();
+    }
+
+    public MaqRequestHedgerStatistics getStatistics() {
+        long delayNanos = hedgeDelayNanos;
+        return MaqRequestHedgerStatistics.builder()
+                .enabled(enabled)
+                .percentile(percentile)
+                .hedgeDelay(delayNanos < 0L ? null : Duration.ofNanos(delayNanos))
+                .requests(requests.sum())
+                .hedges(hedges.sum())
+                .hedgeWins(hedgeWins.sum())
+                .budgetExhausted(budgetExhausted.sum())
+                .build();
+    }
+
+    @VisibleForTesting
+    void recordLatency(long latencyNanos) {
+        synchronized (lock) {
+            latencies[latenciesNext] = latencyNanos;
+            latenciesNext = (latenciesNext + 1) % latencies.length;
+            latenciesCount = Math.min(latencies.length, latenciesCount + 1);
+            // sorting the window on every sample would cost more than the requests it is meant to speed up
+            if (latenciesCount < minSamples
+                    || (hedgeDelayNanos >= 0L && ++samplesSinceDelayUpdate < Math.max(1, latencies.length / 10))) {
+                return;
+            }
+            samplesSinceDelayUpdate = 0;
+            long[] sorted = Arrays.copyOf(latencies, latenciesCount);
+            Arrays.sort(sorted);
+            hedgeDelayNanos = sorted[Math.min(latenciesCount - 1, (int) Math.ceil(percentile * latenciesCount) - 1)];
+        }
+    }
+
+    private boolean tryTakeHedgeToken() {
+        long previous = milliTokens.getAndUpdate(current ->
+                current >= MILLI_TOKENS_PER_HEDGE ? current - MILLI_TOKENS_PER_HEDGE : current);
+        return previous >= MILLI_TOKENS_PER_HEDGE;
+    }
+
+    private class HedgedRequest<T> {
+        private final Supplier<CompletableFuture<T>> request;
+        private final Predicate<T> isWinner;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long startNanos = ticker.read();
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private CompletableFuture<T> primary;
+        private volatile CompletableFuture<T> hedge;
+        private volatile boolean hasLosingValue;
+        private volatile T losingValue;
+
+        private HedgedRequest(Supplier<CompletableFuture<T>> request, Predicate<T> isWinner) {
+            this.request = request;
+            this.isWinner = isWinner;
+        }
+
+        private CompletableFuture<T> start() {
+            primary = request.get();
+            primary.whenComplete((value, throwable) -> onComplete(value, throwable, false));
+            long delayNanos = hedgeDelayNanos;
+            if (delayNanos >= 0L && !primary.isDone()) {
+                CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor).execute(this::startHedge);
+            }
+            // a caller giving up cancels both
+            result.whenComplete((value, throwable) -> {
+                if (result.isCancelled()) {
+                    primary.cancel(true);
+                    CompletableFuture<T> started = hedge;
+                    if (started != null) {
+                        started.cancel(true);
+                    }
+                }
+            });
+            return result;
+        }
+
+        private void startHedge() {
+            if (result.isDone()) {
+                return;
+            }
+            if (!tryTakeHedgeToken()) {
+                budgetExhausted.increment();
+                return;
+            }
+            hedges.increment();
+            pending.incrementAndGet();
+            CompletableFuture<T> started = request.get();
+            hedge = started;
+            // the primary may have won, or the caller given up, before the hedge was published for them to cancel
+            if (result.isDone()) {
+                started.cancel(true);
+            }
+            started.whenComplete((value, throwable) -> onComplete(value, throwable, true));
+        }
+
+        // the first winning value wins, anything else only once no other request is still pending,
+        // a losing value, e.g. a 503 response, preferred over a failure
+        private void onComplete(T value, Throwable throwable, boolean isHedge) {
+            if (throwable != null || !isWinner.test(value)) {
+                if (throwable == null) {
+                    losingValue = value;
+                    hasLosingValue = true;
+                }
+                if (pending.decrementAndGet() == 0) {
+                    if (hasLosingValue) {
+                        result.complete(losingValue);
+                    } else {
+                        result.completeExceptionally(throwable);
+                    }
+                }
+                return;
+            }
+            if (!result.complete(value)) {
+                return;
+            }
+            recordLatency(ticker.read() - startNanos);
+            if (isHedge) {
+                hedgeWins.increment();
+                primary.cancel(true);
+                return;
+            }
+            CompletableFuture<T> started = hedge;
+            if (started != null) {
+                started.cancel(true);
+            }
+        }
+    }
+}
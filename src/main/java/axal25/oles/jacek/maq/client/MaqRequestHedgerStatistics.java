@@ -0,0 +1,22 @@
+package axal25.oles.jacek.maq.client;
+
+import lombok.*;
+
+import java.time.Duration;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqRequestHedgerStatistics {
+    private boolean enabled;
+    private double percentile;
+    private Duration hedgeDelay;
+    private long requests;
+    private long hedges;
+    private long hedgeWins;
+    private long budgetExhausted;
+}
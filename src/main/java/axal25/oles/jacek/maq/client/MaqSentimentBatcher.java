@@ -0,0 +1,135 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.executor.PoolThreads;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Utf8;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+@Component
+public class MaqSentimentBatcher implements AutoCloseable {
+    // {"id":"","text":""}, around id and text
+    @VisibleForTesting
+    static final int ELEMENT_JSON_OVERHEAD_BYTES = 20;
+    private final MaqAsyncClient maqAsyncClient;
+    private final int maxCount;
+    private final long maxBytes;
+    private final Duration maxLinger;
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+    private List<PendingElement> pendingElements = new ArrayList<>();
+    private long pendingBytes;
+    private ScheduledFuture<?> lingerFlush;
+
+    @Autowired
+    MaqSentimentBatcher(MaqAsyncClient maqAsyncClient,
+                        @Value("${maq.batcher.max_count}") int maxCount,
+                        @Value("${maq.batcher.max_bytes}") long maxBytes,
+                        @Value("${maq.batcher.max_linger_millis}") long maxLingerMillis) {
+        Preconditions.checkArgument(maxCount > 0,
+                "Max count must be positive but was: %s.", maxCount);
+        Preconditions.checkArgument(maxBytes > 0,
+                "Max bytes must be positive but was: %s.", maxBytes);
+        this.maqAsyncClient = maqAsyncClient;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxLinger = Duration.ofMillis(maxLingerMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                PoolThreads.newThreadFactory(MaqSentimentBatcher.class.getSimpleName() + "-%d"));
+    }
+
+    public CompletableFuture<MaqSentimentResponse> submit(String id, String text) {
+        PendingElement pendingElement = new PendingElement(
+                MaqSentimentRequestBodyDataElement.builder()
+                        .id(id)
+                        .text(text)
+                        .build(),
+                new CompletableFuture<>());
+        long elementBytes = estimateBytes(pendingElement.element());
+        List<List<PendingElement>> batches = new ArrayList<>(2);
+        synchronized (lock) {
+            if (!pendingElements.isEmpty() && pendingBytes + elementBytes > maxBytes) {
+                batches.add(drain());
+            }
+            pendingElements.add(pendingElement);
+            pendingBytes += elementBytes;
+            if (pendingElements.size() >= maxCount || pendingBytes >= maxBytes) {
+                batches.add(drain());
+            } else if (pendingElements.size() == 1) {
+                lingerFlush = scheduler.schedule(this::flush, maxLinger.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        batches.forEach(this::send);
+        return pendingElement.future();
+    }
+
+    public void flush() {
+        List<PendingElement> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    private List<PendingElement> drain() {
+        List<PendingElement> batch = pendingElements;
+        pendingElements = new ArrayList<>();
+        pendingBytes = 0L;
+        if (lingerFlush != null) {
+            lingerFlush.cancel(false);
+            lingerFlush = null;
+        }
+        return batch;
+    }
+
+    @VisibleForTesting
+    static long estimateBytes(MaqSentimentRequestBodyDataElement element) {
+        return ELEMENT_JSON_OVERHEAD_BYTES
+                + (element.getId() == null ? 0 : Utf8.encodedLength(element.getId()))
+                + (element.getText() == null ? 0 : Utf8.encodedLength(element.getText()));
+    }
+
+    private void send(List<PendingElement> batch) {
+        List<MaqSentimentRequestBodyDataElement> elements = batch.stream()
+                .map(PendingElement::element)
+                .collect(toList());
+        MaqSentimentBatches.post(maqAsyncClient, elements)
+                .whenComplete((perElementResponses, throwable) -> {
+                    if (throwable != null) {
+                        batch.forEach(pendingElement -> pendingElement.future().completeExceptionally(throwable));
+                        return;
+                    }
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).future().complete(perElementResponses.get(i));
+                    }
+                });
+    }
+
+    private record PendingElement(
+            MaqSentimentRequestBodyDataElement element,
+            CompletableFuture<MaqSentimentResponse> future) {
+    }
+}
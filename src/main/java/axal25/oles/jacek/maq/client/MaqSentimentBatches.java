@@ -0,0 +1,167 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+// MAQ expects numerical ids, so callers' ids are swapped for record numbers (which errors' recordNumber refer to)
+// and restored in per element responses
+final class MaqSentimentBatches {
+
+    private MaqSentimentBatches() {
+    }
+
+    static MaqSentimentRequestBody toRecordNumberedBody(List<MaqSentimentRequestBodyDataElement> elements) {
+        return MaqSentimentRequestBody.builder()
+                .data(IntStream.range(0, elements.size())
+                        .mapToObj(i -> elements.get(i).toBuilder()
+                                .id(String.valueOf(i + 1))
+                                .build())
+                        .collect(toList()))
+                .build();
+    }
+
+    // sends the elements as record numbered batches and answers each element with its own outcome;
+    // MAQ rejects a whole batch with a 400 when any of its records is invalid,
+    // so the elements which were rejected only because of other records are sent again without them;
+    // cancelling the returned future cancels the batch in flight
+    static CompletableFuture<List<MaqSentimentResponse>> post(MaqAsyncClient maqAsyncClient,
+                                                              List<MaqSentimentRequestBodyDataElement> elements) {
+        CompletableFuture<List<MaqSentimentResponse>> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<MaqSentimentResponse>> inFlight = new AtomicReference<>();
+        result.whenComplete((responses, throwable) -> {
+            CompletableFuture<MaqSentimentResponse> call = inFlight.get();
+            if (result.isCancelled() && call != null) {
+                call.cancel(true);
+            }
+        });
+        post(maqAsyncClient,
+                elements,
+                IntStream.range(0, elements.size()).boxed().collect(toList()),
+                new MaqSentimentResponse[elements.size()],
+                result,
+                inFlight);
+        return result;
+    }
+
+    private static void post(MaqAsyncClient maqAsyncClient,
+                             List<MaqSentimentRequestBodyDataElement> elements,
+                             List<Integer> indexes,
+                             MaqSentimentResponse[] responses,
+                             CompletableFuture<List<MaqSentimentResponse>> result,
+                             AtomicReference<CompletableFuture<MaqSentimentResponse>> inFlight) {
+        List<MaqSentimentRequestBodyDataElement> batch = indexes.stream()
+                .map(elements::get)
+                .collect(toList());
+        CompletableFuture<MaqSentimentResponse> call = maqAsyncClient.postSentiment(toRecordNumberedBody(batch));
+        inFlight.set(call);
+        if (result.isCancelled()) {
+            call.cancel(true);
+            return;
+        }
+        call.whenComplete((maqSentimentResponse, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            List<Optional<MaqSentimentResponse>> outcomes = split(batch, maqSentimentResponse);
+            List<Integer> toResend = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                int index = indexes.get(i);
+                outcomes.get(i).ifPresentOrElse(
+                        outcome -> responses[index] = outcome,
+                        () -> toResend.add(index));
+            }
+            if (toResend.isEmpty()) {
+                result.complete(Arrays.asList(responses));
+            } else {
+                post(maqAsyncClient, elements, toResend, responses, result, inFlight);
+            }
+        });
+    }
+
+    // each response holds only its element's success or errors, with its own id and as record 1,
+    // the batch's HTTP response and message are about the other elements as much as about this one;
+    // empty for the elements of a batch which was rejected for other elements' errors
+    private static List<Optional<MaqSentimentResponse>> split(List<MaqSentimentRequestBodyDataElement> elements,
+                                                              MaqSentimentResponse maqSentimentResponse) {
+        Map<Integer, MaqSentimentResponseSuccessBodyElement> successesByRecordNumber = new HashMap<>();
+        if (maqSentimentResponse.getSuccesses() != null) {
+            maqSentimentResponse.getSuccesses().forEach(success ->
+                    parseRecordNumber(success.getId(), elements.size())
+                            .ifPresent(recordNumber -> successesByRecordNumber.put(recordNumber, success)));
+        }
+        Map<Integer, List<MaqSentimentResponseErrorBodyElement>> errorsByRecordNumber = new HashMap<>();
+        if (maqSentimentResponse.getErrors() != null) {
+            maqSentimentResponse.getErrors().stream()
+                    .filter(error -> error.getRecordNumber() != null
+                            && error.getRecordNumber() >= 1
+                            && error.getRecordNumber() <= elements.size())
+                    .forEach(error -> errorsByRecordNumber
+                            .computeIfAbsent(error.getRecordNumber().intValue(), ignored -> new ArrayList<>())
+                            .add(error));
+        }
+        Integer statusCode = maqSentimentResponse.getStatusCode();
+        boolean failed = statusCode == null || statusCode / 100 != 2;
+        boolean rejectedForRecords = failed && !errorsByRecordNumber.isEmpty();
+
+        List<Optional<MaqSentimentResponse>> outcomes = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            MaqSentimentRequestBodyDataElement element = elements.get(i);
+            int recordNumber = i + 1;
+            MaqSentimentResponseSuccessBodyElement success = successesByRecordNumber.get(recordNumber);
+            List<MaqSentimentResponseErrorBodyElement> errors = errorsByRecordNumber.get(recordNumber);
+            if (success != null) {
+                outcomes.add(Optional.of(MaqSentimentResponse.builder()
+                        .statusCode(200)
+                        .successes(List.of(success.toBuilder()
+                                .id(element.getId())
+                                .build()))
+                        .build()));
+            } else if (errors != null) {
+                outcomes.add(Optional.of(MaqSentimentResponse.builder()
+                        .statusCode(failed ? statusCode : 400)
+                        .errors(errors.stream()
+                                .map(error -> error.toBuilder()
+                                        .recordNumber(1L)
+                                        .build())
+                                .collect(toList()))
+                        .build()));
+            } else if (rejectedForRecords) {
+                outcomes.add(Optional.empty());
+            } else {
+                // the whole batch failed, e.g. MAQ was unavailable, which is as much about this element as any
+                outcomes.add(Optional.of(MaqSentimentResponse.builder()
+                        .statusCode(statusCode)
+                        .message(failed ? maqSentimentResponse.getMessage() : null)
+                        .build()));
+            }
+        }
+        return outcomes;
+    }
+
+    private static Optional<Integer> parseRecordNumber(String id, int batchSize) {
+        try {
+            int recordNumber = Integer.parseInt(id);
+            return recordNumber >= 1 && recordNumber <= batchSize
+                    ? Optional.of(recordNumber)
+                    : Optional.empty();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.cache.AgedSentiment;
+import axal25.oles.jacek.maq.cache.MaqSentimentH2Cache;
+import axal25.oles.jacek.maq.cache.MaqSentimentMemoryCache;
+import axal25.oles.jacek.maq.cache.MaqSentimentNegativeCache;
+import axal25.oles.jacek.maq.cache.TextHash;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+// splits a request body into scores cached in memory or H2, errors cached for invalid texts,
+// and the elements which still have to be sent, then merges MAQ's response for the latter back in the original order
+class MaqSentimentCacheLookup {
+    private final MaqSentimentMemoryCache memoryCache;
+    private final MaqSentimentH2Cache h2Cache;
+    private final MaqSentimentNegativeCache negativeCache;
+    private final List<MaqSentimentRequestBodyDataElement> data;
+    private final TextHash[] textHashes;
+    private final BigDecimal[] cachedSentiments;
+    private final MaqSentimentResponseErrorBodyElement[] cachedErrors;
+    private final List<Integer> missIndexes = new ArrayList<>();
+
+    // blocks on H2 for the elements missing in memory
+    MaqSentimentCacheLookup(MaqSentimentMemoryCache memoryCache,
+                            MaqSentimentH2Cache h2Cache,
+                            MaqSentimentNegativeCache negativeCache,
+                            MaqSentimentRequestBody maqSentimentRequestBody) {
+        this.memoryCache = memoryCache;
+        this.h2Cache = h2Cache;
+        this.negativeCache = negativeCache;
+        this.data = maqSentimentRequestBody.getData();
+        this.textHashes = new TextHash[data.size()];
+        this.cachedSentiments = new BigDecimal[data.size()];
+        this.cachedErrors = new MaqSentimentResponseErrorBodyElement[data.size()];
+        List<TextHash> memoryMisses = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            String text = data.get(i).getText();
+            if (text != null) {
+                textHashes[i] = TextHash.of(text);
+                cachedSentiments[i] = memoryCache.get(textHashes[i]).orElse(null);
+                if (cachedSentiments[i] == null) {
+                    cachedErrors[i] = negativeCache.get(textHashes[i]).orElse(null);
+                }
+                if (cachedSentiments[i] == null && cachedErrors[i] == null) {
+                    memoryMisses.add(textHashes[i]);
+                }
+            }
+        }
+        Map<TextHash, AgedSentiment> h2Hits = memoryMisses.isEmpty() ? Map.of() : h2Cache.getAll(memoryMisses);
+        for (int i = 0; i < data.size(); i++) {
+            if (cachedSentiments[i] == null && cachedErrors[i] == null && textHashes[i] != null) {
+                AgedSentiment h2Hit = h2Hits.get(textHashes[i]);
+                if (h2Hit != null) {
+                    cachedSentiments[i] = h2Hit.sentiment();
+                    memoryCache.put(textHashes[i], h2Hit.sentiment(), h2Hit.age());
+                }
+            }
+            if (cachedSentiments[i] == null && cachedErrors[i] == null) {
+                missIndexes.add(i);
+            }
+        }
+    }
+
+    boolean hasMisses() {
+        return !missIndexes.isEmpty();
+    }
+
+    MaqSentimentRequestBody getMissesRequestBody() {
+        List<MaqSentimentRequestBodyDataElement> misses = new ArrayList<>(missIndexes.size());
+        missIndexes.forEach(missIndex -> misses.add(data.get(missIndex)));
+        return MaqSentimentRequestBody.builder()
+                .data(misses)
+                .build();
+    }
+
+    MaqSentimentResponse merge(MaqSentimentResponse missesResponse) {
+        Map<String, MaqSentimentResponseSuccessBodyElement> missSuccessesById = new HashMap<>();
+        if (missesResponse != null && missesResponse.getSuccesses() != null) {
+            missesResponse.getSuccesses().forEach(success -> missSuccessesById.putIfAbsent(success.getId(), success));
+        }
+
+        List<MaqSentimentResponseSuccessBodyElement> successes = new ArrayList<>();
+        List<MaqSentimentResponseErrorBodyElement> errors = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            MaqSentimentRequestBodyDataElement element = data.get(i);
+            if (cachedSentiments[i] != null) {
+                successes.add(MaqSentimentResponseSuccessBodyElement.builder()
+                        .id(element.getId())
+                        .sentiment(cachedSentiments[i])
+                        .build());
+                continue;
+            }
+            if (cachedErrors[i] != null) {
+                errors.add(cachedErrors[i].toBuilder()
+                        .recordNumber(i + 1L)
+                        .build());
+                continue;
+            }
+            MaqSentimentResponseSuccessBodyElement success = missSuccessesById.get(element.getId());
+            if (success != null) {
+                successes.add(success);
+                if (textHashes[i] != null && success.getSentiment() != null) {
+                    memoryCache.put(textHashes[i], success.getSentiment());
+                    h2Cache.put(textHashes[i], success.getSentiment());
+                }
+            }
+        }
+        if (missesResponse != null && missesResponse.getErrors() != null) {
+            for (MaqSentimentResponseErrorBodyElement error : missesResponse.getErrors()) {
+                OptionalInt index = getOriginalIndex(error);
+                if (index.isEmpty()) {
+                    errors.add(error);
+                    continue;
+                }
+                int originalIndex = index.getAsInt();
+                if (textHashes[originalIndex] != null && MaqSentimentNegativeCache.isCacheable(error)) {
+                    negativeCache.put(textHashes[originalIndex], error);
+                }
+                errors.add(error.toBuilder()
+                        .recordNumber(originalIndex + 1L)
+                        .build());
+            }
+        }
+        errors.sort(Comparator.comparing(
+                MaqSentimentResponseErrorBodyElement::getRecordNumber,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+
+        MaqSentimentResponse.MaqSentimentResponseBuilder merged = missesResponse == null
+                ? MaqSentimentResponse.builder()
+                : missesResponse.toBuilder();
+        return merged
+                .statusCode(getStatusCode(missesResponse, errors))
+                .successes(successes.isEmpty() ? null : successes)
+                .errors(errors.isEmpty() ? null : errors)
+                .build();
+    }
+
+    // like MAQ, which rejects a whole request with a 400 when any record is invalid, errors make the response a 400;
+    // a failure of the misses' request which is not about their records keeps its own status code
+    private static int getStatusCode(MaqSentimentResponse missesResponse,
+                                     List<MaqSentimentResponseErrorBodyElement> errors) {
+        if (missesResponse != null && missesResponse.getStatusCode() != null && missesResponse.getStatusCode() != 200) {
+            return missesResponse.getStatusCode();
+        }
+        return errors.isEmpty() ? 200 : 400;
+    }
+
+    // recordNumber is the 1-based position within the sent misses
+    private OptionalInt getOriginalIndex(MaqSentimentResponseErrorBodyElement error) {
+        Long recordNumber = error.getRecordNumber();
+        if (recordNumber == null || recordNumber < 1 || recordNumber > missIndexes.size()) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(missIndexes.get(recordNumber.intValue() - 1));
+    }
+}
@@ -0,0 +1,356 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+
+@Component
+public class MaqStreamingAsyncClient {
+    private final MaqAsyncClient maqAsyncClient;
+    private final int batchSize;
+    private final int maxInFlightBatches;
+    private final Duration maxLinger;
+    private final Executor executor;
+
+    @Autowired
+    MaqStreamingAsyncClient(MaqAsyncClient maqAsyncClient,
+                            @Value("${maq.streaming.batch_size}") int batchSize,
+                            @Value("${maq.streaming.max_in_flight_batches}") int maxInFlightBatches,
+                            @Value("${maq.streaming.max_linger_millis}") long maxLingerMillis,
+                            @Qualifier("executor") Executor executor) {
+        Preconditions.checkArgument(batchSize > 0,
+                "Batch size must be positive but was: %s.", batchSize);
+        Preconditions.checkArgument(maxInFlightBatches > 0,
+                "Max in flight batches must be positive but was: %s.", maxInFlightBatches);
+        Preconditions.checkArgument(maxLingerMillis >= 0L,
+                "Max linger millis cannot be negative but was: %s.", maxLingerMillis);
+        this.maqAsyncClient = maqAsyncClient;
+        this.batchSize = batchSize;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.maxLinger = Duration.ofMillis(maxLingerMillis);
+        this.executor = executor;
+    }
+
+    // one response per element, holding its success or its errors
+    public Flow.Publisher<MaqSentimentResponse> postSentiment(
+            Flow.Publisher<MaqSentimentRequestBodyDataElement> maqSentimentRequestBodyDataElements,
+            EmissionOrder emissionOrder) {
+        Flow.Processor<MaqSentimentRequestBodyDataElement, MaqSentimentResponse> processor =
+                newProcessor(emissionOrder);
+        maqSentimentRequestBodyDataElements.subscribe(processor);
+        return processor;
+    }
+
+    public Flow.Processor<MaqSentimentRequestBodyDataElement, MaqSentimentResponse> newProcessor(
+            EmissionOrder emissionOrder) {
+        return new SentimentProcessor(Preconditions.checkNotNull(emissionOrder));
+    }
+
+    // elements are requested from upstream only while fewer than capacity of them are buffered,
+    // be it in the batch being filled, in flight to MAQ, or scored but not yet requested by downstream,
+    // so a slow subscriber slows down the publisher instead of piling up responses
+    private class SentimentProcessor implements Flow.Processor<MaqSentimentRequestBodyDataElement, MaqSentimentResponse> {
+        private final EmissionOrder emissionOrder;
+        private final long capacity = (long) batchSize * (maxInFlightBatches + 1);
+        private final Object lock = new Object();
+        private final AtomicInteger workInProgress = new AtomicInteger();
+        private final Queue<List<Slot>> readyBatches = new ArrayDeque<>();
+        private final Queue<Slot> emissions = new ArrayDeque<>();
+        private final Set<CompletableFuture<List<MaqSentimentResponse>>> inFlight = new HashSet<>();
+        private Flow.Subscription upstream;
+        private Flow.Subscriber<? super MaqSentimentResponse> downstream;
+        private List<Slot> filling = new ArrayList<>();
+        private long lingerGeneration;
+        private int inFlightBatches;
+        private long upstreamRequested;
+        private long buffered;
+        private long demand;
+        private boolean upstreamDone;
+        private Throwable failure;
+        private boolean cancelled;
+        private boolean done;
+
+        private SentimentProcessor(EmissionOrder emissionOrder) {
+            this.emissionOrder = emissionOrder;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super MaqSentimentResponse> subscriber) {
+            Preconditions.checkNotNull(subscriber);
+            boolean alreadySubscribed;
+            synchronized (lock) {
+                alreadySubscribed = downstream != null;
+                if (!alreadySubscribed) {
+                    downstream = subscriber;
+                }
+            }
+            if (alreadySubscribed) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException(
+                        SentimentProcessor.class.getSimpleName() + " supports a single subscriber."));
+                return;
+            }
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    synchronized (lock) {
+                        if (n <= 0L) {
+                            fail(new IllegalArgumentException(
+                                    "Requested demand must be positive but was: " + n + "."));
+                        } else {
+                            demand = LongMath.saturatedAdd(demand, n);
+                        }
+                    }
+                    drain();
+                }
+
+                @Override
+                public void cancel() {
+                    synchronized (lock) {
+                        cancelled = true;
+                    }
+                    drain();
+                }
+            });
+            drain();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            Preconditions.checkNotNull(subscription);
+            boolean alreadySubscribed;
+            synchronized (lock) {
+                alreadySubscribed = upstream != null;
+                if (!alreadySubscribed) {
+                    upstream = subscription;
+                }
+            }
+            if (alreadySubscribed) {
+                subscription.cancel();
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onNext(MaqSentimentRequestBodyDataElement element) {
+            Preconditions.checkNotNull(element);
+            long scheduledGeneration = -1L;
+            synchronized (lock) {
+                if (done) {
+                    return;
+                }
+                upstreamRequested--;
+                buffered++;
+                Slot slot = new Slot(element);
+                filling.add(slot);
+                if (emissionOrder == EmissionOrder.IN_ORDER) {
+                    emissions.add(slot);
+                }
+                if (filling.size() >= batchSize) {
+                    sealFilling();
+                } else if (filling.size() == 1) {
+                    scheduledGeneration = lingerGeneration;
+                }
+            }
+            if (scheduledGeneration >= 0L) {
+                long generation = scheduledGeneration;
+                CompletableFuture.delayedExecutor(maxLinger.toNanos(), TimeUnit.NANOSECONDS, executor)
+                        .execute(() -> onLingerElapsed(generation));
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (lock) {
+                upstreamDone = true;
+                fail(throwable);
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (lock) {
+                upstreamDone = true;
+                if (!filling.isEmpty()) {
+                    sealFilling();
+                }
+            }
+            drain();
+        }
+
+        private void onLingerElapsed(long generation) {
+            synchronized (lock) {
+                if (generation != lingerGeneration || filling.isEmpty()) {
+                    return;
+                }
+                sealFilling();
+            }
+            drain();
+        }
+
+        private void fail(Throwable throwable) {
+            if (failure == null) {
+                failure = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable;
+            }
+        }
+
+        private void sealFilling() {
+            readyBatches.add(filling);
+            filling = new ArrayList<>();
+            lingerGeneration++;
+        }
+
+        // the only place which signals downstream, upstream and MAQ, one thread at a time and never under the lock
+        private void drain() {
+            if (workInProgress.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                List<List<Slot>> toSend = new ArrayList<>();
+                List<MaqSentimentResponse> toEmit = new ArrayList<>();
+                List<CompletableFuture<List<MaqSentimentResponse>>> toCancel = List.of();
+                Flow.Subscription upstreamToCancel = null;
+                long toRequest = 0L;
+                Throwable toFail = null;
+                boolean toComplete = false;
+                Flow.Subscriber<? super MaqSentimentResponse> subscriber;
+                Flow.Subscription subscription;
+                synchronized (lock) {
+                    subscriber = downstream;
+                    subscription = upstream;
+                    // terminal signals wait for a subscriber, there would be no one to tell otherwise
+                    if (!done && subscriber != null && (cancelled || failure != null)) {
+                        done = true;
+                        toFail = cancelled ? null : failure;
+                        toCancel = new ArrayList<>(inFlight);
+                        upstreamToCancel = upstreamDone ? null : subscription;
+                        clear();
+                    }
+                    if (!done) {
+                        while (inFlightBatches < maxInFlightBatches && !readyBatches.isEmpty()) {
+                            inFlightBatches++;
+                            toSend.add(readyBatches.poll());
+                        }
+                        while (demand > 0L && !emissions.isEmpty() && emissions.peek().response != null) {
+                            toEmit.add(emissions.poll().response);
+                            demand--;
+                            buffered--;
+                        }
+                        if (upstreamDone && buffered == 0L && subscriber != null) {
+                            done = true;
+                            toComplete = true;
+                        } else if (!upstreamDone && subscription != null && subscriber != null) {
+                            toRequest = capacity - buffered - upstreamRequested;
+                            upstreamRequested += Math.max(0L, toRequest);
+                        }
+                    }
+                }
+                if (upstreamToCancel != null) {
+                    upstreamToCancel.cancel();
+                }
+                toCancel.forEach(call -> call.cancel(true));
+                toSend.forEach(this::send);
+                if (toRequest > 0L) {
+                    subscription.request(toRequest);
+                }
+                for (MaqSentimentResponse response : toEmit) {
+                    subscriber.onNext(response);
+                }
+                if (toFail != null) {
+                    subscriber.onError(toFail);
+                } else if (toComplete) {
+                    subscriber.onComplete();
+                }
+            } while (workInProgress.decrementAndGet() != 0);
+        }
+
+        private void clear() {
+            readyBatches.clear();
+            emissions.clear();
+            inFlight.clear();
+            filling = new ArrayList<>();
+            buffered = 0L;
+        }
+
+        private void send(List<Slot> batch) {
+            List<MaqSentimentRequestBodyDataElement> elements = batch.stream()
+                    .map(slot -> slot.element)
+                    .collect(toList());
+            // a buffered element keeps only its own outcome, not the batch's HTTP response
+            CompletableFuture<List<MaqSentimentResponse>> call = MaqSentimentBatches.post(maqAsyncClient, elements);
+            call.whenComplete((perElementResponses, throwable) -> {
+                synchronized (lock) {
+                    inFlight.remove(call);
+                    inFlightBatches--;
+                    if (!done) {
+                        if (throwable != null) {
+                            fail(throwable);
+                        } else {
+                            for (int i = 0; i < batch.size(); i++) {
+                                Slot slot = batch.get(i);
+                                slot.response = perElementResponses.get(i);
+                                if (emissionOrder == EmissionOrder.AS_COMPLETED) {
+                                    emissions.add(slot);
+                                }
+                            }
+                        }
+                    }
+                }
+                drain();
+            });
+            boolean cancel;
+            synchronized (lock) {
+                cancel = done;
+                if (!done && !call.isDone()) {
+                    inFlight.add(call);
+                }
+            }
+            if (cancel) {
+                call.cancel(true);
+            }
+        }
+    }
+
+    private static class Slot {
+        private final MaqSentimentRequestBodyDataElement element;
+        private MaqSentimentResponse response;
+
+        private Slot(MaqSentimentRequestBodyDataElement element) {
+            this.element = element;
+        }
+    }
+}
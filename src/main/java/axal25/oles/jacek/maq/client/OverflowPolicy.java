@@ -0,0 +1,8 @@
+package axal25.oles.jacek.maq.client;
+
+public enum OverflowPolicy {
+    // parks the caller's thread, calls chained on pool threads wait like ASYNC_WAIT
+    BLOCK,
+    FAIL_FAST,
+    ASYNC_WAIT
+}
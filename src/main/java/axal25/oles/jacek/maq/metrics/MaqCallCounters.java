@@ -0,0 +1,68 @@
+package axal25.oles.jacek.maq.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpResponse;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// monotonic totals, a scraper turns them into per second rates
+@Component
+public class MaqCallCounters {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> responsesByStatusCode = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder deserializationFailures = new LongAdder();
+
+    // every attempt which is sent counts, retries and hedges included
+    public void recordRequest(int records) {
+        requests.increment();
+        if (records > 0) {
+            this.records.add(records);
+        }
+    }
+
+    // records of a streamed body are counted as they are written, its request was counted with none
+    public void recordRecords(int records) {
+        if (records > 0) {
+            this.records.add(records);
+        }
+    }
+
+    // exchanges cancelled by the caller, e.g. the losing hedge, are neither answered nor failed
+    public void recordOutcome(HttpResponse<?> httpResponse, Throwable throwable) {
+        if (httpResponse != null) {
+            responsesByStatusCode.computeIfAbsent(httpResponse.statusCode(), ignored -> new LongAdder())
+                    .increment();
+            return;
+        }
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        if (cause != null && !(cause instanceof CancellationException)) {
+            failures.increment();
+        }
+    }
+
+    public void recordDeserializationFailure() {
+        deserializationFailures.increment();
+    }
+
+    public MaqCallStatistics getStatistics() {
+        SortedMap<Integer, Long> responses = new TreeMap<>();
+        responsesByStatusCode.forEach((statusCode, count) -> responses.put(statusCode, count.sum()));
+        return MaqCallStatistics.builder()
+                .requests(requests.sum())
+                .records(records.sum())
+                .responsesByStatusCode(responses)
+                .failures(failures.sum())
+                .deserializationFailures(deserializationFailures.sum())
+                .build();
+    }
+}
@@ -0,0 +1,12 @@
+package axal25.oles.jacek.maq.metrics;
+
+public enum MaqCallPhase {
+    SERIALIZATION,
+    REQUEST_BUILD,
+    // waiting for the circuit breaker, rate limiter and concurrency limiter
+    ADMISSION,
+    // JDK's HttpClient does not report connect and TLS handshake apart, so they are part of time to first byte
+    TIME_TO_FIRST_BYTE,
+    BODY_DOWNLOAD,
+    DESERIALIZATION
+}
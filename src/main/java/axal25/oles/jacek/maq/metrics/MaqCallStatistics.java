@@ -0,0 +1,20 @@
+package axal25.oles.jacek.maq.metrics;
+
+import lombok.*;
+
+import java.util.SortedMap;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqCallStatistics {
+    private long requests;
+    private long records;
+    private SortedMap<Integer, Long> responsesByStatusCode;
+    private long failures;
+    private long deserializationFailures;
+}
@@ -0,0 +1,92 @@
+package axal25.oles.jacek.maq.metrics;
+
+import axal25.oles.jacek.metrics.Histogram;
+import axal25.oles.jacek.metrics.HistogramSnapshot;
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Component
+public class MaqLatencyRecorder {
+    private final Ticker ticker;
+    private final Map<MaqCallPhase, Histogram> phases = new EnumMap<>(MaqCallPhase.class);
+    private final Histogram recordsPerRequest = new Histogram();
+
+    @Autowired
+    public MaqLatencyRecorder() {
+        this(Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    MaqLatencyRecorder(Ticker ticker) {
+        this.ticker = ticker;
+        for (MaqCallPhase phase : MaqCallPhase.values()) {
+            phases.put(phase, new Histogram());
+        }
+    }
+
+    public long start() {
+        return ticker.read();
+    }
+
+    public void recordSince(MaqCallPhase phase, long startNanos) {
+        phases.get(phase).record(Math.max(0L, ticker.read() - startNanos));
+    }
+
+    // records are not known up front for raw JSON and streamed bodies, those requests are not counted
+    public void recordRecords(int records) {
+        if (records > 0) {
+            recordsPerRequest.record(records);
+        }
+    }
+
+    // time to first byte runs from sendStartNanos until the response headers are in, body download from then on
+    public <T> HttpResponse.BodyHandler<T> timed(HttpResponse.BodyHandler<T> bodyHandler, long sendStartNanos) {
+        return responseInfo -> {
+            recordSince(MaqCallPhase.TIME_TO_FIRST_BYTE, sendStartNanos);
+            long headersNanos = start();
+            HttpResponse.BodySubscriber<T> bodySubscriber = bodyHandler.apply(responseInfo);
+            bodySubscriber.getBody().whenComplete((body, throwable) ->
+                    recordSince(MaqCallPhase.BODY_DOWNLOAD, headersNanos));
+            return bodySubscriber;
+        };
+    }
+
+    public MaqLatencyStatistics getStatistics() {
+        Map<MaqCallPhase, HistogramSnapshot> snapshots = new EnumMap<>(MaqCallPhase.class);
+        phases.forEach((phase, histogram) -> snapshots.put(phase, histogram.getSnapshot()));
+        return MaqLatencyStatistics.builder()
+                .phases(snapshots)
+                .recordsPerRequest(recordsPerRequest.getSnapshot())
+                .build();
+    }
+
+    public String dump() {
+        MaqLatencyStatistics statistics = getStatistics();
+        StringBuilder dump = new StringBuilder(String.format("%-20s %10s %12s %12s %12s %12s%n",
+                "phase", "count", "p50", "p99", "p999", "max"));
+        statistics.getPhases().forEach((phase, snapshot) -> dump.append(String.format(
+                "%-20s %10d %12s %12s %12s %12s%n",
+                phase,
+                snapshot.getCount(),
+                Duration.ofNanos(snapshot.getP50()),
+                Duration.ofNanos(snapshot.getP99()),
+                Duration.ofNanos(snapshot.getP999()),
+                Duration.ofNanos(snapshot.getMax()))));
+        HistogramSnapshot records = statistics.getRecordsPerRequest();
+        dump.append(String.format("%-20s %10d %12d %12d %12d %12d%n",
+                "RECORDS_PER_REQUEST",
+                records.getCount(),
+                records.getP50(),
+                records.getP99(),
+                records.getP999(),
+                records.getMax()));
+        return dump.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package axal25.oles.jacek.maq.metrics;
+
+import axal25.oles.jacek.metrics.HistogramSnapshot;
+import lombok.*;
+
+import java.util.Map;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqLatencyStatistics {
+    // nanoseconds
+    private Map<MaqCallPhase, HistogramSnapshot> phases;
+    private HistogramSnapshot recordsPerRequest;
+}
@@ -0,0 +1,47 @@
+package axal25.oles.jacek.maq.model;
+
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// a fixed set of heap buffers request body chunks are copied into;
+// a chunk larger than a buffer, or one handed back to a full pool, is left to the garbage collector
+class ChunkBufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    ChunkBufferPool(int bufferSize, int maxBuffers) {
+        Preconditions.checkArgument(bufferSize > 0,
+                "Buffer size must be positive but was: %s.", bufferSize);
+        Preconditions.checkArgument(maxBuffers > 0,
+                "Max buffers must be positive but was: %s.", maxBuffers);
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    ByteBuffer acquire(int size) {
+        ByteBuffer buffer = size <= bufferSize ? buffers.poll() : null;
+        if (buffer == null) {
+            return ByteBuffer.allocate(Math.max(size, bufferSize));
+        }
+        return buffer.clear();
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            buffers.offer(buffer.clear());
+        }
+    }
+
+    int getMaxBuffers() {
+        return buffers.remainingCapacity() + buffers.size();
+    }
+
+    @VisibleForTesting
+    int getAvailable() {
+        return buffers.size();
+    }
+}
@@ -1,35 +1,147 @@
 package axal25.oles.jacek.maq.model;
 
+import axal25.oles.jacek.http.CircuitBreakerOpenException;
+import axal25.oles.jacek.http.DeadlineExceededException;
 import axal25.oles.jacek.http.HttpContainer;
+import axal25.oles.jacek.http.OutstandingLimitExceededException;
+import axal25.oles.jacek.maq.metrics.MaqCallCounters;
+import axal25.oles.jacek.maq.metrics.MaqCallPhase;
+import axal25.oles.jacek.maq.metrics.MaqLatencyRecorder;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentColumnarResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentLeanResponse;
 import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.apache.logging.log4j.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 import static org.slf4j.MarkerFactory.getMarker;
 
 @Component
 public class MaqOmniSerializer {
     private static final Logger logger = LoggerFactory.getLogger(MaqOmniSerializer.class);
+    private static final TypeReference<List<MaqSentimentResponseSuccessBodyElement>> SUCCESSES_TYPE =
+            new TypeReference<>() {
+            };
     private final ObjectMapper objectMapper;
+    private final MaqLatencyRecorder maqLatencyRecorder;
+    private final MaqCallCounters maqCallCounters;
+    // shared by the streaming request bodies, whose chunks are recycled once their exchanges got responses
+    private final ChunkBufferPool chunkBufferPool = new ChunkBufferPool(
+            MaqSentimentRequestBodyPublisher.DEFAULT_BUFFER_SIZE,
+            MaqSentimentRequestBodyPublisher.DEFAULT_MAX_BUFFERS);
 
-    @Autowired
     public MaqOmniSerializer(ObjectMapper objectMapper) {
+        this(objectMapper, new MaqLatencyRecorder(), new MaqCallCounters());
+    }
+
+    @Autowired
+    public MaqOmniSerializer(ObjectMapper objectMapper,
+                             MaqLatencyRecorder maqLatencyRecorder,
+                             MaqCallCounters maqCallCounters) {
         this.objectMapper = objectMapper;
+        this.maqLatencyRecorder = maqLatencyRecorder;
+        this.maqCallCounters = maqCallCounters;
     }
 
     public String serializeToJson(MaqSentimentRequestBody maqSentimentRequestBody) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(maqSentimentRequestBody);
+        long startNanos = maqLatencyRecorder.start();
+        try {
+            return objectMapper.writeValueAsString(maqSentimentRequestBody);
+        } finally {
+            maqLatencyRecorder.recordSince(MaqCallPhase.SERIALIZATION, startNanos);
+        }
+    }
+
+    public MaqSentimentRequestBodyPublisher getStreamingBodyPublisher(
+            Iterator<MaqSentimentRequestBodyDataElement> maqSentimentRequestBodyDataElements) {
+        return getStreamingBodyPublisher(maqSentimentRequestBodyDataElements, records -> {
+        });
+    }
+
+    public MaqSentimentRequestBodyPublisher getStreamingBodyPublisher(
+            Iterator<MaqSentimentRequestBodyDataElement> maqSentimentRequestBodyDataElements,
+            IntConsumer writtenRecordsListener) {
+        return new MaqSentimentRequestBodyPublisher(
+                objectMapper,
+                maqSentimentRequestBodyDataElements,
+                MaqSentimentRequestBodyPublisher.DEFAULT_CHUNK_SIZE,
+                writtenRecordsListener,
+                chunkBufferPool);
+    }
+
+    // the elements of the body's data array are counted without being bound,
+    // a body which is not a request body counts none and is left for MAQ to reject
+    public int countRecords(String maqSentimentRequestBodyJson) {
+        if (maqSentimentRequestBodyJson == null) {
+            return 0;
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(maqSentimentRequestBodyJson)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return 0;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "data".equals(fieldName)) {
+                    int records = 0;
+                    for (JsonToken token = parser.nextToken();
+                         token != null && token != JsonToken.END_ARRAY;
+                         token = parser.nextToken()) {
+                        parser.skipChildren();
+                        records++;
+                    }
+                    return records;
+                }
+                parser.skipChildren();
+            }
+            return 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public HttpResponse.BodyHandler<MaqSentimentResponse> getStreamingBodyHandler(
+            Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer) {
+        return getStreamingBodyHandler(successConsumer, MoreExecutors.directExecutor());
+    }
+
+    // the body is parsed and handed to successConsumer on parsingExecutor instead of the HttpClient's thread
+    public HttpResponse.BodyHandler<MaqSentimentResponse> getStreamingBodyHandler(
+            Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer,
+            Executor parsingExecutor) {
+        Preconditions.checkNotNull(successConsumer,
+                "%s argument cannot be null.", Consumer.class.getSimpleName());
+        Preconditions.checkNotNull(parsingExecutor,
+                "%s argument cannot be null.", Executor.class.getSimpleName());
+        return responseInfo -> new MaqSentimentResponseBodySubscriber(
+                objectMapper,
+                responseInfo.statusCode(),
+                successConsumer,
+                maqCallCounters::recordDeserializationFailure,
+                parsingExecutor);
     }
 
     public MaqSentimentResponse deserializeFromJson(HttpContainer<String> httpContainer) {
@@ -49,7 +161,7 @@ public class MaqOmniSerializer {
 
 
             return MaqSentimentResponse.builder()
-                    .statusCode(500)
+                    .statusCode(getStatusCode(httpContainer.getThrowable()))
                     .message(getCauseMessageOrThrowableUnderlyingCauseUsefulMessage(
                             httpContainer.getCauseMessage(),
                             httpContainer.getThrowable()))
@@ -59,7 +171,118 @@ public class MaqOmniSerializer {
                     .build();
         }
 
-        return deserializeHttpResponse(httpContainer.getResponse());
+        long startNanos = maqLatencyRecorder.start();
+        try {
+            return deserializeHttpResponse(httpContainer.getResponse());
+        } finally {
+            maqLatencyRecorder.recordSince(MaqCallPhase.DESERIALIZATION, startNanos);
+        }
+    }
+
+    public MaqSentimentLeanResponse toLeanResponse(MaqSentimentResponse maqSentimentResponse, boolean withHeaders) {
+        Preconditions.checkNotNull(maqSentimentResponse,
+                "%s argument cannot be null.", MaqSentimentResponse.class.getSimpleName());
+        return MaqSentimentLeanResponse.builder()
+                .statusCode(maqSentimentResponse.getStatusCode())
+                .message(maqSentimentResponse.getMessage())
+                .headers(withHeaders && maqSentimentResponse.getUnderlyingResponse() != null
+                        ? maqSentimentResponse.getUnderlyingResponse().headers()
+                        : null)
+                .successes(maqSentimentResponse.getSuccesses())
+                .errors(maqSentimentResponse.getErrors())
+                .build();
+    }
+
+    public MaqSentimentColumnarResponse deserializeColumnarFromJson(HttpContainer<String> httpContainer,
+                                                                    boolean keepPrecision) {
+        Preconditions.checkNotNull(httpContainer,
+                "%s argument cannot be null.", HttpContainer.class.getSimpleName());
+        HttpResponse<String> httpResponse = httpContainer.getResponse();
+        if (httpResponse == null || httpResponse.statusCode() != 200) {
+            return toColumnarResponse(deserializeFromJson(httpContainer), keepPrecision);
+        }
+        // successes are read straight into the columns, without intermediate elements
+        long startNanos = maqLatencyRecorder.start();
+        try (JsonParser parser = objectMapper.createParser(httpResponse.body())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return toColumnarResponse(deserializeFromJson(httpContainer), keepPrecision);
+            }
+            MaqSentimentColumnarResponse.Builder builder = MaqSentimentColumnarResponse.builder(keepPrecision)
+                    .statusCode(httpResponse.statusCode());
+            JsonToken elementToken;
+            while ((elementToken = parser.nextToken()) == JsonToken.START_OBJECT) {
+                readColumnarSuccess(parser, builder);
+            }
+            if (elementToken != JsonToken.END_ARRAY) {
+                throw new IOException("Expected " + JsonToken.START_OBJECT + " or " + JsonToken.END_ARRAY
+                        + " but was: " + elementToken + ".");
+            }
+            MaqSentimentColumnarResponse columnarResponse = builder.build();
+            maqLatencyRecorder.recordSince(MaqCallPhase.DESERIALIZATION, startNanos);
+            return columnarResponse;
+        } catch (IOException | IllegalArgumentException e) {
+            return toColumnarResponse(deserializeFromJson(httpContainer), keepPrecision);
+        }
+    }
+
+    public MaqSentimentColumnarResponse toColumnarResponse(MaqSentimentResponse maqSentimentResponse,
+                                                           boolean keepPrecision) {
+        Preconditions.checkNotNull(maqSentimentResponse,
+                "%s argument cannot be null.", MaqSentimentResponse.class.getSimpleName());
+        MaqSentimentColumnarResponse.Builder builder = MaqSentimentColumnarResponse.builder(keepPrecision)
+                .statusCode(maqSentimentResponse.getStatusCode())
+                .message(maqSentimentResponse.getMessage())
+                .errors(maqSentimentResponse.getErrors());
+        if (maqSentimentResponse.getSuccesses() != null) {
+            maqSentimentResponse.getSuccesses().forEach(success -> builder.add(
+                    success.getId(),
+                    success.getSentiment() == null ? Double.NaN : success.getSentiment().doubleValue(),
+                    keepPrecision ? success.getSentiment() : null));
+        }
+        return builder.build();
+    }
+
+    private static void readColumnarSuccess(JsonParser parser, MaqSentimentColumnarResponse.Builder builder)
+            throws IOException {
+        String id = null;
+        double sentiment = Double.NaN;
+        BigDecimal preciseSentiment = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (!"id".equals(fieldName) && !"sentiment".equals(fieldName) || valueToken == JsonToken.VALUE_NULL) {
+                parser.skipChildren();
+            } else if (!valueToken.isScalarValue()) {
+                // left to databind, which reports it as a deserialization error
+                parser.skipChildren();
+                throw new JsonParseException(parser,
+                        "Expected a scalar " + fieldName + " but was: " + valueToken + ".");
+            } else if ("id".equals(fieldName)) {
+                id = parser.getValueAsString();
+            } else if (valueToken.isNumeric() && !builder.isPrecise()) {
+                sentiment = parser.getDoubleValue();
+            } else {
+                // a sentiment sent as a string is converted as databind does, one which is no number is left to databind
+                preciseSentiment = valueToken.isNumeric()
+                        ? parser.getDecimalValue()
+                        : new BigDecimal(parser.getText().trim());
+                sentiment = preciseSentiment.doubleValue();
+            }
+        }
+        builder.add(id, sentiment, preciseSentiment);
+    }
+
+    // failures which never got an answer from MAQ, as the status code a gateway would give them
+    private static int getStatusCode(Throwable throwable) {
+        if (throwable instanceof CircuitBreakerOpenException
+                || throwable instanceof OutstandingLimitExceededException
+                || throwable instanceof RejectedExecutionException) {
+            return 503;
+        }
+        if (throwable instanceof DeadlineExceededException) {
+            return 504;
+        }
+        return 500;
     }
 
     private String getCauseMessageOrThrowableUnderlyingCauseUsefulMessage(String causeMessage, Throwable throwable) {
@@ -85,35 +308,37 @@ public class MaqOmniSerializer {
     }
 
     private MaqSentimentResponse deserializeHttpResponse(HttpResponse<String> httpResponse) {
-        JsonNode jsonNode = null;
+        String httpResponseBody = httpResponse.body();
+        JsonParser jsonParser = null;
+        JsonToken firstToken = null;
         try {
-            jsonNode = objectMapper.readTree(httpResponse.body());
-        } catch (JsonProcessingException ignored) {
+            jsonParser = objectMapper.createParser(httpResponseBody);
+            firstToken = jsonParser.nextToken();
+        } catch (IOException | IllegalArgumentException ignored) {
         }
-        boolean bodyIsJsonObject = jsonNode != null && jsonNode.isObject();
-        boolean bodyIsArrayOfJsonObjects = jsonNode != null && jsonNode.isArray();
+        boolean bodyIsJsonObject = firstToken == JsonToken.START_OBJECT;
+        boolean bodyIsArrayOfJsonObjects = firstToken == JsonToken.START_ARRAY;
 
         if (!bodyIsJsonObject && !bodyIsArrayOfJsonObjects) {
-            return MaqSentimentResponse.builder()
-                    .statusCode(httpResponse.statusCode())
-                    .message(httpResponse.body())
-                    .underlyingResponse(httpResponse)
-                    .successes(null)
-                    .errors(null)
-                    .build();
+            return getNotJsonResponse(httpResponse);
         }
-        String httpResponseBody = httpResponse.statusCode() == 200 && bodyIsArrayOfJsonObjects
-                ? String.format("{\"successes\": %s}", httpResponse.body())
-                : httpResponse.body();
-        try {
-            return objectMapper.readValue(
-                            httpResponseBody,
-                            MaqSentimentResponse.class)
+        try (JsonParser parser = jsonParser) {
+            MaqSentimentResponse maqSentimentResponse = httpResponse.statusCode() == 200 && bodyIsArrayOfJsonObjects
+                    ? MaqSentimentResponse.builder()
+                    .successes(objectMapper.readValue(parser, SUCCESSES_TYPE))
+                    .build()
+                    : objectMapper.readValue(parser, MaqSentimentResponse.class);
+            return maqSentimentResponse
                     .toBuilder()
                     .statusCode(httpResponse.statusCode())
                     .underlyingResponse(httpResponse)
                     .build();
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
+            maqCallCounters.recordDeserializationFailure();
+            // malformed JSON, e.g. a gateway's error page, is kept with its status code like any other non-JSON body
+            if (isMalformedJson(e)) {
+                return getNotJsonResponse(httpResponse);
+            }
             String msgFormat = "%s during deserialization of "
                     + MaqSentimentResponse.class.getSimpleName()
                     + " from "
@@ -137,4 +362,23 @@ public class MaqOmniSerializer {
         }
     }
 
+    private static boolean isMalformedJson(IOException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JsonParseException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static MaqSentimentResponse getNotJsonResponse(HttpResponse<String> httpResponse) {
+        return MaqSentimentResponse.builder()
+                .statusCode(httpResponse.statusCode())
+                .message(httpResponse.body())
+                .underlyingResponse(httpResponse)
+                .successes(null)
+                .errors(null)
+                .build();
+    }
+
 }
@@ -0,0 +1,198 @@
+package axal25.oles.jacek.maq.model;
+
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+public class MaqSentimentRequestBodyPublisher implements HttpRequest.BodyPublisher {
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    // a chunk ends with the element crossing the chunk size, so a pooled buffer leaves room for one more element
+    static final int DEFAULT_BUFFER_SIZE = 2 * DEFAULT_CHUNK_SIZE;
+    static final int DEFAULT_MAX_BUFFERS = 64;
+    private final ObjectMapper objectMapper;
+    private final Iterator<MaqSentimentRequestBodyDataElement> elements;
+    private final int chunkSize;
+    private final IntConsumer writtenRecordsListener;
+    private final ChunkBufferPool chunkBufferPool;
+    // at most as many chunks as the pool holds are kept for recycle, the rest are left to the garbage collector
+    private final BlockingQueue<ByteBuffer> sentChunks;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    MaqSentimentRequestBodyPublisher(ObjectMapper objectMapper,
+                                     Iterator<MaqSentimentRequestBodyDataElement> elements,
+                                     int chunkSize) {
+        this(objectMapper, elements, chunkSize, records -> {
+        });
+    }
+
+    MaqSentimentRequestBodyPublisher(ObjectMapper objectMapper,
+                                     Iterator<MaqSentimentRequestBodyDataElement> elements,
+                                     int chunkSize,
+                                     IntConsumer writtenRecordsListener) {
+        this(objectMapper, elements, chunkSize, writtenRecordsListener, new ChunkBufferPool(DEFAULT_BUFFER_SIZE, 1));
+    }
+
+    // writtenRecordsListener is told how many elements each chunk holds as it is written
+    MaqSentimentRequestBodyPublisher(ObjectMapper objectMapper,
+                                     Iterator<MaqSentimentRequestBodyDataElement> elements,
+                                     int chunkSize,
+                                     IntConsumer writtenRecordsListener,
+                                     ChunkBufferPool chunkBufferPool) {
+        Preconditions.checkArgument(chunkSize > 0,
+                "Chunk size must be positive but was: %s.", chunkSize);
+        this.objectMapper = objectMapper;
+        this.elements = Preconditions.checkNotNull(elements);
+        this.chunkSize = chunkSize;
+        this.writtenRecordsListener = Preconditions.checkNotNull(writtenRecordsListener);
+        this.chunkBufferPool = Preconditions.checkNotNull(chunkBufferPool);
+        this.sentChunks = new ArrayBlockingQueue<>(chunkBufferPool.getMaxBuffers());
+    }
+
+    @Override
+    public long contentLength() {
+        return -1L;
+    }
+
+    // hands the sent chunks back to the pool; HttpClient gives no signal once it is done with a ByteBuffer
+    // (HTTP/2 slices it into frames written later), so this is only called once the exchange got its response,
+    // a cancelled or failed exchange may still be writing and keeps its chunks
+    public void recycle() {
+        ByteBuffer chunk;
+        while ((chunk = sentChunks.poll()) != null) {
+            chunkBufferPool.release(chunk);
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                    MaqSentimentRequestBodyPublisher.class.getSimpleName()
+                            + " streams its elements once and cannot be subscribed to again."));
+            return;
+        }
+        subscriber.onSubscribe(new ElementsSubscription(subscriber));
+    }
+
+    private class ElementsSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger workInProgress = new AtomicInteger();
+        // reused staging buffer, every chunk is copied out of it into a pooled ByteBuffer
+        private final ChunkStream chunkStream = new ChunkStream(chunkSize);
+        private JsonGenerator generator;
+        private volatile boolean cancelled;
+        private boolean done;
+
+        private ElementsSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException(
+                        "Requested demand must be positive but was: " + n + "."));
+                return;
+            }
+            demand.getAndAccumulate(n, LongMath::saturatedAdd);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (workInProgress.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (demand.get() > 0L && !cancelled && !done) {
+                    ByteBuffer chunk;
+                    try {
+                        chunk = nextChunk();
+                    } catch (IOException | RuntimeException e) {
+                        done = true;
+                        subscriber.onError(e);
+                        return;
+                    }
+                    if (chunk == null) {
+                        done = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(chunk);
+                }
+            } while (workInProgress.decrementAndGet() != 0);
+        }
+
+        private ByteBuffer nextChunk() throws IOException {
+            if (generator == null) {
+                generator = objectMapper.getFactory().createGenerator(chunkStream);
+                generator.writeStartObject();
+                generator.writeFieldName("data");
+                generator.writeStartArray();
+            } else if (generator.isClosed()) {
+                return null;
+            }
+            int records = 0;
+            while (chunkStream.size() < chunkSize && elements.hasNext()) {
+                objectMapper.writeValue(generator, elements.next());
+                generator.flush();
+                records++;
+            }
+            if (records > 0) {
+                writtenRecordsListener.accept(records);
+            }
+            if (!elements.hasNext()) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.close();
+            }
+            ByteBuffer chunk = chunkBufferPool.acquire(chunkStream.size());
+            chunkStream.copyTo(chunk);
+            chunk.flip();
+            chunkStream.reset();
+            sentChunks.offer(chunk);
+            return chunk;
+        }
+    }
+
+    private static class ChunkStream extends ByteArrayOutputStream {
+        private ChunkStream(int size) {
+            super(size);
+        }
+
+        private synchronized void copyTo(ByteBuffer target) {
+            target.put(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package axal25.oles.jacek.maq.model;
+
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import static org.slf4j.MarkerFactory.getMarker;
+
+public class MaqSentimentResponseBodySubscriber implements HttpResponse.BodySubscriber<MaqSentimentResponse> {
+    private static final Logger logger = LoggerFactory.getLogger(MaqSentimentResponseBodySubscriber.class);
+    private final ObjectMapper objectMapper;
+    private final int statusCode;
+    private final Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer;
+    private final Runnable failureListener;
+    private final Executor parsingExecutor;
+    private final CompletableFuture<MaqSentimentResponse> body = new CompletableFuture<>();
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private Flow.Subscription subscription;
+    private ByteArrayOutputStream rawBody = new ByteArrayOutputStream();
+    private JsonToken rootToken;
+    private boolean bodyIsNotJson;
+    private TokenBuffer rootObjectBuffer;
+    private TokenBuffer elementBuffer;
+    private int elementDepth;
+
+    MaqSentimentResponseBodySubscriber(ObjectMapper objectMapper,
+                                       int statusCode,
+                                       Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer) {
+        this(objectMapper, statusCode, successConsumer, () -> {
+        });
+    }
+
+    MaqSentimentResponseBodySubscriber(ObjectMapper objectMapper,
+                                       int statusCode,
+                                       Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer,
+                                       Runnable failureListener) {
+        this(objectMapper, statusCode, successConsumer, failureListener, MoreExecutors.directExecutor());
+    }
+
+    // parsing and successConsumer run on parsingExecutor, one item after another,
+    // instead of on the thread delivering the body
+    MaqSentimentResponseBodySubscriber(ObjectMapper objectMapper,
+                                       int statusCode,
+                                       Consumer<MaqSentimentResponseSuccessBodyElement> successConsumer,
+                                       Runnable failureListener,
+                                       Executor parsingExecutor) {
+        this.objectMapper = objectMapper;
+        this.statusCode = statusCode;
+        this.successConsumer = successConsumer;
+        this.failureListener = failureListener;
+        this.parsingExecutor = MoreExecutors.newSequentialExecutor(parsingExecutor);
+        try {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    @Override
+    public CompletionStage<MaqSentimentResponse> getBody() {
+        return body;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1L);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        execute(() -> parse(items));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        try {
+            parsingExecutor.execute(() -> body.completeExceptionally(throwable));
+        } catch (RejectedExecutionException e) {
+            body.completeExceptionally(throwable);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        execute(this::complete);
+    }
+
+    // the next item is requested only after the previous one was parsed, so a rejected item is the only one pending
+    private void execute(Runnable task) {
+        try {
+            parsingExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            fail(e);
+        }
+    }
+
+    private void parse(List<ByteBuffer> items) {
+        if (body.isDone()) {
+            return;
+        }
+        try {
+            for (ByteBuffer item : items) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                if (rawBody != null) {
+                    rawBody.writeBytes(bytes);
+                }
+                if (!bodyIsNotJson) {
+                    feeder.feedInput(bytes, 0, bytes.length);
+                    drainTokens();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+            return;
+        }
+        subscription.request(1L);
+    }
+
+    private void complete() {
+        if (body.isDone()) {
+            return;
+        }
+        try {
+            if (!bodyIsNotJson) {
+                feeder.endOfInput();
+                drainTokens();
+            }
+            body.complete(buildResponse());
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void drainTokens() throws IOException {
+        JsonToken token;
+        while (!bodyIsNotJson && (token = nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (rootToken == null) {
+                onRootToken(token);
+            } else if (rootObjectBuffer != null) {
+                rootObjectBuffer.copyCurrentEvent(parser);
+            } else {
+                onArrayToken(token);
+            }
+        }
+    }
+
+    private JsonToken nextToken() throws IOException {
+        try {
+            return parser.nextToken();
+        } catch (IOException e) {
+            if (rootToken == null) {
+                bodyIsNotJson = true;
+                return null;
+            }
+            // a malformed object, e.g. a gateway's error page, is kept with its status code like any other non-JSON body
+            if (rootObjectBuffer != null && e instanceof JsonParseException) {
+                bodyIsNotJson = true;
+                rootObjectBuffer = null;
+                failureListener.run();
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    // 200 array elements go to successConsumer one by one and their raw body is dropped,
+    // objects are buffered as tokens, anything else is the message
+    private void onRootToken(JsonToken token) throws IOException {
+        rootToken = token;
+        if (token == JsonToken.START_ARRAY && statusCode == 200) {
+            rawBody = null;
+        } else if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            rootObjectBuffer = newTokenBuffer();
+            rootObjectBuffer.copyCurrentEvent(parser);
+        } else {
+            bodyIsNotJson = true;
+        }
+    }
+
+    private void onArrayToken(JsonToken token) throws IOException {
+        if (elementBuffer == null) {
+            if (token == JsonToken.END_ARRAY) {
+                return;
+            }
+            elementBuffer = newTokenBuffer();
+            elementDepth = 0;
+        }
+        elementBuffer.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+            elementDepth++;
+        } else if (token.isStructEnd()) {
+            elementDepth--;
+        }
+        if (elementDepth == 0) {
+            try (JsonParser elementParser = elementBuffer.asParser(objectMapper)) {
+                successConsumer.accept(objectMapper.readValue(
+                        elementParser,
+                        MaqSentimentResponseSuccessBodyElement.class));
+            }
+            elementBuffer = null;
+        }
+    }
+
+    private TokenBuffer newTokenBuffer() {
+        TokenBuffer tokenBuffer = new TokenBuffer(parser);
+        tokenBuffer.forceUseOfBigDecimal(true);
+        return tokenBuffer;
+    }
+
+    private MaqSentimentResponse buildResponse() throws IOException {
+        if (rootObjectBuffer != null) {
+            try (JsonParser rootParser = rootObjectBuffer.asParser(objectMapper)) {
+                return objectMapper.readValue(rootParser, MaqSentimentResponse.class)
+                        .toBuilder()
+                        .statusCode(statusCode)
+                        .build();
+            }
+        }
+        if (rawBody != null) {
+            return MaqSentimentResponse.builder()
+                    .statusCode(statusCode)
+                    .message(rawBody.toString(StandardCharsets.UTF_8))
+                    .build();
+        }
+        return MaqSentimentResponse.builder()
+                .statusCode(statusCode)
+                .build();
+    }
+
+    // the success consumer is the caller's code, whatever it throws fails the body instead of the exchange
+    private void fail(Exception e) {
+        String msgFormat = "%s during streaming deserialization of "
+                + MaqSentimentResponse.class.getSimpleName()
+                + " from "
+                + HttpResponse.class.getSimpleName()
+                + "'s Body with status code: %s.";
+        logger.error(getMarker(e instanceof RuntimeException ? "unchecked exception" : "checked exception"),
+                String.format(msgFormat, "{}", "{}"),
+                e.getClass().getSimpleName(),
+                statusCode,
+                e);
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        failureListener.run();
+        body.complete(MaqSentimentResponse.builder()
+                .statusCode(500)
+                .message(String.format(msgFormat,
+                        e.getClass().getSimpleName(),
+                        statusCode))
+                .build());
+    }
+}
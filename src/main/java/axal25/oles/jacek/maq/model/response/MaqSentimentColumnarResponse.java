@@ -0,0 +1,161 @@
+package axal25.oles.jacek.maq.model.response;
+
+import com.google.common.base.Preconditions;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.function.ObjDoubleConsumer;
+
+@EqualsAndHashCode
+@ToString
+public class MaqSentimentColumnarResponse {
+    @Getter
+    private final Integer statusCode;
+    @Getter
+    private final String message;
+    private final int size;
+    @ToString.Exclude
+    private final String[] ids;
+    @ToString.Exclude
+    private final double[] sentiments;
+    @ToString.Exclude
+    private final BigDecimal[] preciseSentiments;
+    @Getter
+    private final List<MaqSentimentResponseErrorBodyElement> errors;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile Map<String, Integer> indexById;
+
+    private MaqSentimentColumnarResponse(Builder builder) {
+        this.statusCode = builder.statusCode;
+        this.message = builder.message;
+        this.size = builder.size;
+        this.ids = Arrays.copyOf(builder.ids, builder.size);
+        this.sentiments = Arrays.copyOf(builder.sentiments, builder.size);
+        this.preciseSentiments = builder.preciseSentiments == null
+                ? null
+                : Arrays.copyOf(builder.preciseSentiments, builder.size);
+        this.errors = builder.errors;
+    }
+
+    public static Builder builder(boolean keepPrecision) {
+        return new Builder(keepPrecision);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isPrecise() {
+        return preciseSentiments != null;
+    }
+
+    public String getId(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return ids[index];
+    }
+
+    public double getSentiment(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return sentiments[index];
+    }
+
+    public BigDecimal getPreciseSentiment(int index) {
+        Preconditions.checkState(isPrecise(),
+                "%s was built without precise sentiments.", MaqSentimentColumnarResponse.class.getSimpleName());
+        Preconditions.checkElementIndex(index, size);
+        return preciseSentiments[index];
+    }
+
+    public OptionalInt indexOf(String id) {
+        Integer index = getIndexById().get(id);
+        return index == null ? OptionalInt.empty() : OptionalInt.of(index);
+    }
+
+    public OptionalDouble findSentiment(String id) {
+        OptionalInt index = indexOf(id);
+        return index.isPresent() ? OptionalDouble.of(sentiments[index.getAsInt()]) : OptionalDouble.empty();
+    }
+
+    public void forEach(ObjDoubleConsumer<String> idAndSentimentConsumer) {
+        for (int i = 0; i < size; i++) {
+            idAndSentimentConsumer.accept(ids[i], sentiments[i]);
+        }
+    }
+
+    private Map<String, Integer> getIndexById() {
+        Map<String, Integer> map = indexById;
+        if (map == null) {
+            map = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = size - 1; i >= 0; i--) {
+                map.put(ids[i], i);
+            }
+            indexById = map;
+        }
+        return map;
+    }
+
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 16;
+        private Integer statusCode;
+        private String message;
+        private List<MaqSentimentResponseErrorBodyElement> errors;
+        private int size;
+        private String[] ids = new String[INITIAL_CAPACITY];
+        private double[] sentiments = new double[INITIAL_CAPACITY];
+        private BigDecimal[] preciseSentiments;
+
+        private Builder(boolean keepPrecision) {
+            this.preciseSentiments = keepPrecision ? new BigDecimal[INITIAL_CAPACITY] : null;
+        }
+
+        public boolean isPrecise() {
+            return preciseSentiments != null;
+        }
+
+        public Builder statusCode(Integer statusCode) {
+            this.statusCode = statusCode;
+            return this;
+        }
+
+        public Builder message(String message) {
+            this.message = message;
+            return this;
+        }
+
+        public Builder errors(List<MaqSentimentResponseErrorBodyElement> errors) {
+            this.errors = errors;
+            return this;
+        }
+
+        public Builder add(String id, double sentiment, BigDecimal preciseSentiment) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                sentiments = Arrays.copyOf(sentiments, capacity);
+                if (preciseSentiments != null) {
+                    preciseSentiments = Arrays.copyOf(preciseSentiments, capacity);
+                }
+            }
+            ids[size] = id;
+            sentiments[size] = sentiment;
+            if (preciseSentiments != null) {
+                preciseSentiments[size] = preciseSentiment;
+            }
+            size++;
+            return this;
+        }
+
+        public MaqSentimentColumnarResponse build() {
+            return new MaqSentimentColumnarResponse(this);
+        }
+    }
+}
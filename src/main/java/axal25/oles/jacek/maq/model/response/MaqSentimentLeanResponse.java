@@ -0,0 +1,21 @@
+package axal25.oles.jacek.maq.model.response;
+
+import lombok.*;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class MaqSentimentLeanResponse {
+    private Integer statusCode;
+    private String message;
+    private HttpHeaders headers;
+    private List<MaqSentimentResponseSuccessBodyElement> successes;
+    private List<MaqSentimentResponseErrorBodyElement> errors;
+}
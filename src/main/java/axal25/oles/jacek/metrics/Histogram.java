@@ -0,0 +1,89 @@
+package axal25.oles.jacek.metrics;
+
+import axal25.oles.jacek.util.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// HDR-style log-linear buckets: values below 128 are counted exactly, every power of two above is split
+// into 64 sub-buckets, so any recorded value is reported within 1/64 (under 1.6%) of what it was;
+// recording is a few atomic increments, without locks or allocation
+public class Histogram {
+    @VisibleForTesting
+    static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = getIndex(Long.MAX_VALUE) + 1;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        Preconditions.checkArgument(value >= 0L,
+                "Value cannot be negative but was: %s.", value);
+        counts.incrementAndGet(getIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    // counts are read one by one while recording goes on, so a snapshot may be off by the values recorded meanwhile
+    public HistogramSnapshot getSnapshot() {
+        long[] snapshotCounts = new long[BUCKET_COUNT];
+        long total = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshotCounts[i] = counts.get(i);
+            total += snapshotCounts[i];
+        }
+        long snapshotMax = max.get();
+        return HistogramSnapshot.builder()
+                .count(total)
+                .sum(sum.sum())
+                .p50(getPercentile(snapshotCounts, total, 0.5, snapshotMax))
+                .p99(getPercentile(snapshotCounts, total, 0.99, snapshotMax))
+                .p999(getPercentile(snapshotCounts, total, 0.999, snapshotMax))
+                .max(snapshotMax)
+                .build();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    @VisibleForTesting
+    static int getIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    @VisibleForTesting
+    static long getHighestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        long subBucket = index - (long) shift * HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1L) << shift) - 1L;
+    }
+
+    private static long getPercentile(long[] snapshotCounts, long total, double percentile, long snapshotMax) {
+        if (total == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile * total));
+        long cumulative = 0L;
+        for (int i = 0; i < snapshotCounts.length; i++) {
+            cumulative += snapshotCounts[i];
+            if (cumulative >= rank) {
+                return Math.min(getHighestEquivalentValue(i), snapshotMax);
+            }
+        }
+        return snapshotMax;
+    }
+}
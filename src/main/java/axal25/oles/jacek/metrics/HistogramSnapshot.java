@@ -0,0 +1,19 @@
+package axal25.oles.jacek.metrics;
+
+import lombok.*;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class HistogramSnapshot {
+    private long count;
+    private long sum;
+    private long p50;
+    private long p99;
+    private long p999;
+    private long max;
+}
@@ -0,0 +1,190 @@
+package axal25.oles.jacek.metrics;
+
+import axal25.oles.jacek.executor.BulkheadExecutor;
+import axal25.oles.jacek.executor.BulkheadExecutorStatistics;
+import axal25.oles.jacek.http.HttpClientPool;
+import axal25.oles.jacek.http.HttpClientPoolStatistics;
+import axal25.oles.jacek.maq.client.MaqCircuitBreaker;
+import axal25.oles.jacek.maq.client.MaqCircuitBreakerStatistics;
+import axal25.oles.jacek.maq.client.MaqConcurrencyLimiter;
+import axal25.oles.jacek.maq.client.MaqConcurrencyLimiterStatistics;
+import axal25.oles.jacek.maq.client.MaqOutstandingRequestLimiter;
+import axal25.oles.jacek.maq.client.MaqOutstandingRequestLimiterStatistics;
+import axal25.oles.jacek.maq.metrics.MaqCallCounters;
+import axal25.oles.jacek.maq.metrics.MaqCallStatistics;
+import axal25.oles.jacek.maq.metrics.MaqLatencyRecorder;
+import axal25.oles.jacek.maq.metrics.MaqLatencyStatistics;
+import axal25.oles.jacek.util.VisibleForTesting;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// counters are totals since start, rate() over them gives requests, records and errors per second
+@RestController
+public class MetricsController {
+    @VisibleForTesting
+    static final String DEFAULT_EXECUTOR_NAME = "executor";
+    private final Executor executor;
+    private final List<BulkheadExecutor> bulkheadExecutors;
+    private final HttpClientPool httpClientPool;
+    private final MaqCallCounters maqCallCounters;
+    private final MaqLatencyRecorder maqLatencyRecorder;
+    private final MaqConcurrencyLimiter maqConcurrencyLimiter;
+    private final MaqOutstandingRequestLimiter maqOutstandingRequestLimiter;
+    private final MaqCircuitBreaker maqCircuitBreaker;
+
+    @Autowired
+    MetricsController(@Qualifier("executor") Executor executor,
+                      @Qualifier("cpuExecutor") BulkheadExecutor cpuExecutor,
+                      @Qualifier("ioExecutor") BulkheadExecutor ioExecutor,
+                      @Qualifier("cacheExecutor") BulkheadExecutor cacheExecutor,
+                      HttpClientPool httpClientPool,
+                      MaqCallCounters maqCallCounters,
+                      MaqLatencyRecorder maqLatencyRecorder,
+                      MaqConcurrencyLimiter maqConcurrencyLimiter,
+                      MaqOutstandingRequestLimiter maqOutstandingRequestLimiter,
+                      MaqCircuitBreaker maqCircuitBreaker) {
+        this.executor = executor;
+        this.bulkheadExecutors = List.of(cpuExecutor, ioExecutor, cacheExecutor);
+        this.httpClientPool = httpClientPool;
+        this.maqCallCounters = maqCallCounters;
+        this.maqLatencyRecorder = maqLatencyRecorder;
+        this.maqConcurrencyLimiter = maqConcurrencyLimiter;
+        this.maqOutstandingRequestLimiter = maqOutstandingRequestLimiter;
+        this.maqCircuitBreaker = maqCircuitBreaker;
+    }
+
+    @GetMapping(value = "/metrics", produces = PrometheusTextWriter.CONTENT_TYPE)
+    public String getMetrics() {
+        PrometheusTextWriter writer = new PrometheusTextWriter();
+        writeMaqCalls(writer, maqCallCounters.getStatistics());
+        writeMaqLatencies(writer, maqLatencyRecorder.getStatistics());
+        writeMaqAdmission(writer,
+                maqConcurrencyLimiter.getStatistics(),
+                maqOutstandingRequestLimiter.getStatistics(),
+                maqCircuitBreaker.getStatistics());
+        writeExecutors(writer);
+        writeHttpClientPool(writer, httpClientPool.getStatistics());
+        return writer.toString();
+    }
+
+    private static void writeMaqCalls(PrometheusTextWriter writer, MaqCallStatistics statistics) {
+        writer.counter("maq_requests_total", "Requests sent to MAQ, retries and hedges included.")
+                .sample("maq_requests_total", statistics.getRequests());
+        writer.counter("maq_records_total", "Records sent to MAQ.")
+                .sample("maq_records_total", statistics.getRecords());
+        writer.counter("maq_responses_total", "Responses received from MAQ by status code.");
+        statistics.getResponsesByStatusCode().forEach((statusCode, count) ->
+                writer.sample("maq_responses_total", count, "status_code", String.valueOf(statusCode)));
+        writer.counter("maq_request_failures_total", "Requests to MAQ which failed without a response.")
+                .sample("maq_request_failures_total", statistics.getFailures());
+        writer.counter("maq_deserialization_failures_total", "MAQ response bodies which could not be deserialized.")
+                .sample("maq_deserialization_failures_total", statistics.getDeserializationFailures());
+    }
+
+    private static void writeMaqLatencies(PrometheusTextWriter writer, MaqLatencyStatistics statistics) {
+        writer.summary("maq_call_phase_duration_seconds", "Duration of each phase of MAQ calls.");
+        statistics.getPhases().forEach((phase, snapshot) ->
+                writer.durationSummary("maq_call_phase_duration_seconds", snapshot, "phase", phase.name()));
+        writer.gauge("maq_call_phase_duration_seconds_max", "Longest duration of each phase of MAQ calls.");
+        statistics.getPhases().forEach((phase, snapshot) ->
+                writer.sample("maq_call_phase_duration_seconds_max", snapshot.getMax() / 1e9, "phase", phase.name()));
+        writer.summary("maq_records_per_request", "Records per request sent to MAQ.")
+                .summary("maq_records_per_request", statistics.getRecordsPerRequest());
+    }
+
+    private static void writeMaqAdmission(PrometheusTextWriter writer,
+                                          MaqConcurrencyLimiterStatistics concurrency,
+                                          MaqOutstandingRequestLimiterStatistics outstanding,
+                                          MaqCircuitBreakerStatistics circuitBreaker) {
+        writer.gauge("maq_concurrency_limit", "Current adaptive limit of concurrent MAQ requests.")
+                .sample("maq_concurrency_limit", concurrency.getLimit());
+        writer.gauge("maq_concurrency_in_flight", "MAQ requests holding a concurrency permit.")
+                .sample("maq_concurrency_in_flight", concurrency.getInFlight());
+        writer.gauge("maq_concurrency_queue_depth", "MAQ requests waiting for a concurrency permit.")
+                .sample("maq_concurrency_queue_depth", concurrency.getQueueDepth());
+        writer.gauge("maq_outstanding_requests", "MAQ calls admitted and not yet completed.")
+                .sample("maq_outstanding_requests", outstanding.getInFlightRequests());
+        writer.gauge("maq_outstanding_max_requests", "Limit of MAQ calls admitted and not yet completed.")
+                .sample("maq_outstanding_max_requests", outstanding.getMaxRequests());
+        writer.gauge("maq_outstanding_bytes", "Request body bytes of MAQ calls admitted and not yet completed.")
+                .sample("maq_outstanding_bytes", outstanding.getInFlightBytes());
+        writer.gauge("maq_outstanding_queue_depth", "MAQ calls waiting to be admitted.")
+                .sample("maq_outstanding_queue_depth", outstanding.getQueueDepth());
+        writer.counter("maq_outstanding_rejections_total", "MAQ calls rejected by the outstanding request limit.")
+                .sample("maq_outstanding_rejections_total", outstanding.getRejections());
+        writer.gauge("maq_circuit_breaker_state", "1 for the current state of the MAQ circuit breaker, 0 otherwise.");
+        for (MaqCircuitBreaker.State state : MaqCircuitBreaker.State.values()) {
+            writer.sample("maq_circuit_breaker_state", state == circuitBreaker.getState() ? 1 : 0,
+                    "state", state.name());
+        }
+        writer.counter("maq_circuit_breaker_not_permitted_total", "MAQ calls failed fast by the circuit breaker.")
+                .sample("maq_circuit_breaker_not_permitted_total", circuitBreaker.getNotPermittedCalls());
+    }
+
+    private void writeExecutors(PrometheusTextWriter writer) {
+        List<ExecutorGauges> executorGauges = new ArrayList<>();
+        getDefaultExecutorGauges().ifPresent(executorGauges::add);
+        List<BulkheadExecutorStatistics> bulkheadStatistics = bulkheadExecutors.stream()
+                .map(BulkheadExecutor::getStatistics)
+                .toList();
+        bulkheadStatistics.forEach(statistics -> executorGauges.add(new ExecutorGauges(
+                statistics.getName(),
+                statistics.getQueueDepth(),
+                statistics.getActiveThreads(),
+                statistics.getPoolSize())));
+        writer.gauge("executor_queue_depth", "Tasks queued and not yet started.");
+        executorGauges.forEach(gauges ->
+                writer.sample("executor_queue_depth", gauges.queueDepth(), "executor", gauges.name()));
+        writer.gauge("executor_active_threads", "Threads running a task.");
+        executorGauges.forEach(gauges ->
+                writer.sample("executor_active_threads", gauges.activeThreads(), "executor", gauges.name()));
+        writer.gauge("executor_pool_size", "Threads in the pool.");
+        executorGauges.forEach(gauges ->
+                writer.sample("executor_pool_size", gauges.poolSize(), "executor", gauges.name()));
+        writer.gauge("executor_queue_capacity", "Tasks which can be queued before the executor is saturated.");
+        bulkheadStatistics.forEach(statistics ->
+                writer.sample("executor_queue_capacity", statistics.getQueueCapacity(), "executor", statistics.getName()));
+        writer.counter("executor_rejections_total", "Tasks submitted while the executor was saturated.");
+        bulkheadStatistics.forEach(statistics ->
+                writer.sample("executor_rejections_total", statistics.getRejections(), "executor", statistics.getName()));
+    }
+
+    // a virtual thread per task executor has no pool and no queue to report
+    private Optional<ExecutorGauges> getDefaultExecutorGauges() {
+        if (executor instanceof ThreadPoolExecutor threadPoolExecutor) {
+            return Optional.of(new ExecutorGauges(DEFAULT_EXECUTOR_NAME,
+                    threadPoolExecutor.getQueue().size(),
+                    threadPoolExecutor.getActiveCount(),
+                    threadPoolExecutor.getPoolSize()));
+        }
+        if (executor instanceof ForkJoinPool forkJoinPool) {
+            return Optional.of(new ExecutorGauges(DEFAULT_EXECUTOR_NAME,
+                    forkJoinPool.getQueuedSubmissionCount() + forkJoinPool.getQueuedTaskCount(),
+                    forkJoinPool.getActiveThreadCount(),
+                    forkJoinPool.getPoolSize()));
+        }
+        return Optional.empty();
+    }
+
+    // HttpClient does not expose its open connections, these are the pooled clients each holding its own
+    private static void writeHttpClientPool(PrometheusTextWriter writer, HttpClientPoolStatistics statistics) {
+        writer.gauge("http_client_pool_clients", "HttpClients created by the pool, each with its own connections.")
+                .sample("http_client_pool_clients", statistics.getClients());
+        writer.gauge("http_client_pool_max_clients", "HttpClients the pool grows up to.")
+                .sample("http_client_pool_max_clients", statistics.getMaxClients());
+        writer.counter("http_client_pool_leases_total", "HttpClients handed out by the pool.")
+                .sample("http_client_pool_leases_total", statistics.getLeases());
+    }
+
+    private record ExecutorGauges(String name, long queueDepth, int activeThreads, int poolSize) {
+    }
+}
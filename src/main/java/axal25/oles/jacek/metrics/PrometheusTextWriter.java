@@ -0,0 +1,103 @@
+package axal25.oles.jacek.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+// Prometheus text exposition format 0.0.4
+public class PrometheusTextWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+    private final StringBuilder text = new StringBuilder();
+
+    public PrometheusTextWriter counter(String name, String help) {
+        return family(name, help, "counter");
+    }
+
+    public PrometheusTextWriter gauge(String name, String help) {
+        return family(name, help, "gauge");
+    }
+
+    public PrometheusTextWriter summary(String name, String help) {
+        return family(name, help, "summary");
+    }
+
+    public PrometheusTextWriter sample(String name, double value, String... labelNamesAndValues) {
+        Preconditions.checkArgument(labelNamesAndValues.length % 2 == 0,
+                "Label names and values must come in pairs but were: %s.", labelNamesAndValues.length);
+        text.append(name);
+        if (labelNamesAndValues.length > 0) {
+            text.append('{');
+            for (int i = 0; i < labelNamesAndValues.length; i += 2) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                text.append(labelNamesAndValues[i])
+                        .append("=\"")
+                        .append(escape(labelNamesAndValues[i + 1]))
+                        .append('"');
+            }
+            text.append('}');
+        }
+        text.append(' ').append(format(value)).append('\n');
+        return this;
+    }
+
+    // the snapshot holds nanoseconds, they are written as seconds
+    public PrometheusTextWriter durationSummary(String name, HistogramSnapshot snapshot, String... labelNamesAndValues) {
+        return summarySamples(name, snapshot, NANOS_PER_SECOND, labelNamesAndValues);
+    }
+
+    public PrometheusTextWriter summary(String name, HistogramSnapshot snapshot, String... labelNamesAndValues) {
+        return summarySamples(name, snapshot, 1d, labelNamesAndValues);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    private PrometheusTextWriter family(String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n"))
+                .append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    private PrometheusTextWriter summarySamples(String name,
+                                                HistogramSnapshot snapshot,
+                                                double divisor,
+                                                String... labelNamesAndValues) {
+        sample(name, snapshot.getP50() / divisor, withLabel(labelNamesAndValues, "quantile", "0.5"));
+        sample(name, snapshot.getP99() / divisor, withLabel(labelNamesAndValues, "quantile", "0.99"));
+        sample(name, snapshot.getP999() / divisor, withLabel(labelNamesAndValues, "quantile", "0.999"));
+        sample(name + "_sum", snapshot.getSum() / divisor, labelNamesAndValues);
+        return sample(name + "_count", snapshot.getCount(), labelNamesAndValues);
+    }
+
+    private static String[] withLabel(String[] labelNamesAndValues, String labelName, String labelValue) {
+        String[] labels = new String[labelNamesAndValues.length + 2];
+        System.arraycopy(labelNamesAndValues, 0, labels, 0, labelNamesAndValues.length);
+        labels[labelNamesAndValues.length] = labelName;
+        labels[labelNamesAndValues.length + 1] = labelValue;
+        return labels;
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        // whole numbers, which counters and most gauges are, are written without a fraction
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -7,4 +7,15 @@ public class CompletableFutureUtil {
     public static Executor getDefaultExecutor() {
         return CompletableFuture.completedFuture("").defaultExecutor();
     }
+
+    // cancellation does not travel from a dependent stage back to the stage it was derived from unless told to
+    public static <T> CompletableFuture<T> propagateCancellation(CompletableFuture<T> dependent,
+                                                                 CompletableFuture<?> upstream) {
+        dependent.whenComplete((result, throwable) -> {
+            if (dependent.isCancelled()) {
+                upstream.cancel(true);
+            }
+        });
+        return dependent;
+    }
 }
@@ -0,0 +1,105 @@
+package axal25.oles.jacek.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkheadExecutorUnitTest {
+
+    @Test
+    void execute_saturatedWithAbort_throwsRejectedExecutionException() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        try (BulkheadExecutor executor = new BulkheadExecutor("test", 1, 1, SaturationPolicy.ABORT)) {
+            CountDownLatch started = new CountDownLatch(1);
+            executor.execute(() -> {
+                started.countDown();
+                awaitUninterruptibly(release);
+            });
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+            executor.execute(() -> {
+            });
+
+            RejectedExecutionException actualException = assertThrows(RejectedExecutionException.class, () ->
+                    executor.execute(() -> {
+                    }));
+
+            assertThat(actualException).hasMessageThat().isEqualTo(
+                    "test executor is saturated, all of its 1 threads are busy and its queue of 1 is full.");
+            BulkheadExecutorStatistics statistics = executor.getStatistics();
+            assertThat(statistics.getActiveThreads()).isEqualTo(1);
+            assertThat(statistics.getQueueDepth()).isEqualTo(1);
+            assertThat(statistics.getQueueCapacity()).isEqualTo(1);
+            assertThat(statistics.getRejections()).isEqualTo(1L);
+            release.countDown();
+        }
+    }
+
+    @Test
+    void execute_saturatedWithCallerRuns_runsOnCallingThread() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        try (BulkheadExecutor executor = new BulkheadExecutor("test", 1, 1, SaturationPolicy.CALLER_RUNS)) {
+            CountDownLatch started = new CountDownLatch(1);
+            executor.execute(() -> {
+                started.countDown();
+                awaitUninterruptibly(release);
+            });
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+            executor.execute(() -> {
+            });
+
+            String threadName = getUnchecked(CompletableFuture.supplyAsync(
+                    () -> Thread.currentThread().getName(),
+                    executor));
+
+            assertThat(threadName).isEqualTo(Thread.currentThread().getName());
+            assertThat(executor.getStatistics().getRejections()).isEqualTo(1L);
+            release.countDown();
+        }
+    }
+
+    @Test
+    void getStatistics_countsCompletedTasks() throws InterruptedException {
+        try (BulkheadExecutor executor = new BulkheadExecutor("test", 2, 10, SaturationPolicy.ABORT)) {
+            getUnchecked(CompletableFuture.allOf(
+                    CompletableFuture.runAsync(() -> {
+                    }, executor),
+                    CompletableFuture.runAsync(() -> {
+                    }, executor)));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10L, TimeUnit.SECONDS));
+
+            BulkheadExecutorStatistics statistics = executor.getStatistics();
+
+            assertThat(statistics.getName()).isEqualTo("test");
+            assertThat(statistics.getMaxPoolSize()).isEqualTo(2);
+            assertThat(statistics.getCompletedTasks()).isEqualTo(2L);
+            assertThat(statistics.getRejections()).isEqualTo(0L);
+            assertThat(statistics.getSaturationPolicy()).isEqualTo(SaturationPolicy.ABORT);
+        }
+    }
+
+    @Test
+    void constructor_nonPositiveQueueCapacity_throwsIllegalArgumentException() {
+        IllegalArgumentException actualException = assertThrows(IllegalArgumentException.class, () ->
+                new BulkheadExecutor("test", 1, 0, SaturationPolicy.ABORT));
+
+        assertThat(actualException).hasMessageThat().isEqualTo(
+                "test queue capacity must be positive but was: 0.");
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package axal25.oles.jacek.executor;
+
+import axal25.oles.jacek.util.CompletableFutureUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DefaultExecutorProviderUnitTest {
+    private final DefaultExecutorProvider defaultExecutorProvider = new DefaultExecutorProvider();
+
+    @Test
+    void provideDefaultExecutor_commonPool() {
+        Executor executor = defaultExecutorProvider.provideDefaultExecutor(ExecutorMode.COMMON_POOL, 1);
+
+        assertThat(executor).isSameInstanceAs(CompletableFutureUtil.getDefaultExecutor());
+    }
+
+    @Test
+    void provideDefaultExecutor_platformPool_runsOnNamedThreads() {
+        try (ExecutorService executor = (ExecutorService)
+                defaultExecutorProvider.provideDefaultExecutor(ExecutorMode.PLATFORM_POOL, 2)) {
+            String threadName = getUnchecked(CompletableFuture.supplyAsync(
+                    () -> Thread.currentThread().getName(),
+                    executor));
+
+            assertThat(threadName).matches("executor-\\d+");
+        }
+    }
+
+    @Test
+    void provideDefaultExecutor_platformPool_nonPositiveSize_throwsIllegalArgumentException() {
+        IllegalArgumentException actualException =
+                assertThrows(IllegalArgumentException.class, () ->
+                        defaultExecutorProvider.provideDefaultExecutor(ExecutorMode.PLATFORM_POOL, 0));
+
+        assertThat(actualException).hasMessageThat().isEqualTo(
+                "Platform pool size must be positive but was: 0.");
+    }
+
+    @Test
+    void provideCpuExecutor_runsOnNamedThreads() {
+        try (BulkheadExecutor executor = defaultExecutorProvider.provideCpuExecutor(2, 10, SaturationPolicy.ABORT)) {
+            String threadName = getUnchecked(CompletableFuture.supplyAsync(
+                    () -> Thread.currentThread().getName(),
+                    executor));
+
+            assertThat(threadName).matches("cpu-executor-\\d+");
+        }
+    }
+
+    @Test
+    void provideIoExecutor_runsOnNamedThreads() {
+        try (BulkheadExecutor executor = defaultExecutorProvider.provideIoExecutor(2, 10, SaturationPolicy.ABORT)) {
+            String threadName = getUnchecked(CompletableFuture.supplyAsync(
+                    () -> Thread.currentThread().getName(),
+                    executor));
+
+            assertThat(threadName).matches("io-executor-\\d+");
+        }
+    }
+
+    @Test
+    void provideCacheExecutor_runsOnNamedThreads() {
+        try (BulkheadExecutor executor = defaultExecutorProvider.provideCacheExecutor(2, 10, SaturationPolicy.ABORT)) {
+            String threadName = getUnchecked(CompletableFuture.supplyAsync(
+                    () -> Thread.currentThread().getName(),
+                    executor));
+
+            assertThat(threadName).matches("cache-executor-\\d+");
+        }
+    }
+}
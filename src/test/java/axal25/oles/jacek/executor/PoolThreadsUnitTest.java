@@ -0,0 +1,42 @@
+package axal25.oles.jacek.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class PoolThreadsUnitTest {
+
+    @Test
+    void isPoolThread_callerThread_false() {
+        assertThat(PoolThreads.isPoolThread()).isFalse();
+    }
+
+    @Test
+    void isPoolThread_threadOfPoolThreadsFactory_true() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(PoolThreads.newThreadFactory("test-%d"));
+        try {
+            assertThat(CompletableFuture.supplyAsync(PoolThreads::isPoolThread, executor)
+                    .get(10L, TimeUnit.SECONDS)).isTrue();
+            assertThat(CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executor)
+                    .get(10L, TimeUnit.SECONDS)).isEqualTo("test-0");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void isPoolThread_forkJoinWorker_true() throws Exception {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(1);
+        try {
+            assertThat(forkJoinPool.submit(PoolThreads::isPoolThread).get(10L, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            forkJoinPool.shutdownNow();
+        }
+    }
+}
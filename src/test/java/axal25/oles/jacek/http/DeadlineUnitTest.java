@@ -0,0 +1,107 @@
+package axal25.oles.jacek.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class DeadlineUnitTest {
+
+    @Test
+    void none_notDoneWithoutRemaining() {
+        Deadline deadline = Deadline.none();
+
+        assertThat(deadline.isDone()).isFalse();
+        assertThat(deadline.isExpired()).isFalse();
+        assertThat(deadline.getRemaining().isPresent()).isFalse();
+    }
+
+    @Test
+    void after_remainingAtMostTimeout() {
+        Deadline deadline = Deadline.after(Duration.ofMinutes(1L));
+
+        assertThat(deadline.getRemaining().get()).isAtMost(Duration.ofMinutes(1L));
+        assertThat(deadline.getRemaining().get()).isGreaterThan(Duration.ofSeconds(50L));
+        assertThat(deadline.isDone()).isFalse();
+    }
+
+    @Test
+    void at_pastInstant_expired() {
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+        Deadline deadline = Deadline.at(Instant.parse("2023-12-31T23:59:59Z"), clock);
+
+        assertThat(deadline.isDone()).isTrue();
+        assertThat(deadline.isExpired()).isTrue();
+        assertThat(deadline.getRemaining().get()).isEqualTo(Duration.ZERO);
+        assertThat(deadline.getFailure()).isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    void after_timeoutPasses_whenDoneRuns() {
+        Deadline deadline = Deadline.after(Duration.ofMillis(10L));
+        CountDownLatch done = new CountDownLatch(1);
+
+        deadline.whenDone(done::countDown);
+
+        assertThat(assertDoesNotThrow(() -> done.await(5L, TimeUnit.SECONDS))).isTrue();
+        assertThat(deadline.isExpired()).isTrue();
+        assertThat(deadline.getFailure()).isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    void cancel_whenDoneRunsOnce() {
+        Deadline deadline = Deadline.after(Duration.ofMinutes(1L));
+        AtomicInteger runs = new AtomicInteger();
+        deadline.whenDone(runs::incrementAndGet);
+
+        deadline.cancel();
+        deadline.cancel();
+        deadline.finish();
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(deadline.isDone()).isTrue();
+        assertThat(deadline.isExpired()).isFalse();
+        assertThat(deadline.getFailure()).isInstanceOf(CancellationException.class);
+    }
+
+    @Test
+    void whenDone_alreadyDone_runsImmediately() {
+        Deadline deadline = Deadline.none();
+        deadline.finish();
+        AtomicInteger runs = new AtomicInteger();
+
+        deadline.whenDone(runs::incrementAndGet);
+
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    void child_parentCancelled_childCancelled() {
+        Deadline parent = Deadline.none();
+        Deadline child = parent.child();
+
+        parent.cancel();
+
+        assertThat(child.isDone()).isTrue();
+    }
+
+    @Test
+    void child_cancelled_parentNotDone() {
+        Deadline parent = Deadline.after(Duration.ofMinutes(1L));
+        Deadline child = parent.child();
+
+        child.cancel();
+
+        assertThat(parent.isDone()).isFalse();
+    }
+}
@@ -0,0 +1,169 @@
+package axal25.oles.jacek.http;
+
+import axal25.oles.jacek.util.CurrentThreadExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HttpClientPoolUnitTest {
+    private final Executor executor = new CurrentThreadExecutor();
+
+    @Test
+    void getHttpClient_sameClientReused_whenMaxClientsIsOne() {
+        HttpClientPool httpClientPool = new HttpClientPool(
+                executor,
+                HttpClient.Version.HTTP_2,
+                Duration.ofSeconds(3L),
+                1);
+
+        HttpClient first = httpClientPool.getHttpClient();
+        HttpClient second = httpClientPool.getHttpClient();
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(httpClientPool.getStatistics()).isEqualTo(HttpClientPoolStatistics.builder()
+                .maxClients(1)
+                .clients(1L)
+                .leases(2L)
+                .connectTimeout(Duration.ofSeconds(3L))
+                .build());
+    }
+
+    @Test
+    void getHttpClient_roundRobin_overMaxClients() {
+        HttpClientPool httpClientPool = new HttpClientPool(
+                executor,
+                HttpClient.Version.HTTP_2,
+                Duration.ofSeconds(3L),
+                2);
+
+        HttpClient first = httpClientPool.getHttpClient();
+        HttpClient second = httpClientPool.getHttpClient();
+        HttpClient third = httpClientPool.getHttpClient();
+
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(third).isSameInstanceAs(first);
+        assertThat(httpClientPool.getStatistics().getClients()).isEqualTo(2L);
+        assertThat(httpClientPool.getStatistics().getLeases()).isEqualTo(3L);
+    }
+
+    @Test
+    void getHttpClient_concurrentFirstLeases_clientBuiltOnce() throws Exception {
+        AtomicInteger built = new AtomicInteger();
+        HttpClientPool httpClientPool = new HttpClientPool(
+                executor,
+                HttpClient.Version.HTTP_2,
+                Duration.ofSeconds(3L),
+                1) {
+            @Override
+            HttpClient newHttpClient() {
+                built.incrementAndGet();
+                return super.newHttpClient();
+            }
+        };
+        ExecutorService leasing = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<HttpClient>> leased = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                leased.add(leasing.submit(() -> {
+                    start.await();
+                    return httpClientPool.getHttpClient();
+                }));
+            }
+            start.countDown();
+
+            for (Future<HttpClient> httpClient : leased) {
+                assertThat(httpClient.get(10L, TimeUnit.SECONDS)).isSameInstanceAs(leased.get(0).get());
+            }
+            assertThat(built.get()).isEqualTo(1);
+            assertThat(httpClientPool.getStatistics().getClients()).isEqualTo(1L);
+        } finally {
+            leasing.shutdownNow();
+        }
+    }
+
+    @Test
+    void getHttpClient_clientConfiguredFromPool() {
+        HttpClientPool httpClientPool = new HttpClientPool(
+                executor,
+                HttpClient.Version.HTTP_2,
+                Duration.ofSeconds(3L),
+                1);
+
+        HttpClient httpClient = httpClientPool.getHttpClient();
+
+        assertThat(httpClient.executor()).isEqualTo(Optional.of(executor));
+        assertThat(httpClient.version()).isEqualTo(HttpClient.Version.HTTP_2);
+        assertThat(httpClient.connectTimeout()).isEqualTo(Optional.of(Duration.ofSeconds(3L)));
+    }
+
+    @Test
+    void constructor_nonPositiveMaxClients_throwsIllegalArgumentException() {
+        IllegalArgumentException actualException =
+                assertThrows(IllegalArgumentException.class, () ->
+                        new HttpClientPool(
+                                executor,
+                                HttpClient.Version.HTTP_2,
+                                Duration.ofSeconds(3L),
+                                0));
+
+        assertThat(actualException).hasMessageThat().isEqualTo(
+                "Max clients must be positive but was: 0.");
+    }
+
+    @Test
+    void applyIdleLifetime_propertyAbsent_setsKeepAliveTimeoutSeconds() {
+        String previous = System.clearProperty(HttpClientPool.KEEP_ALIVE_TIMEOUT_PROPERTY);
+        try {
+            HttpClientPool.applyIdleLifetime(Duration.ofMillis(300_500L));
+
+            assertThat(System.getProperty(HttpClientPool.KEEP_ALIVE_TIMEOUT_PROPERTY)).isEqualTo("300");
+        } finally {
+            restoreKeepAliveTimeout(previous);
+        }
+    }
+
+    @Test
+    void applyIdleLifetime_propertyGiven_keepsGivenValue() {
+        String previous = System.setProperty(HttpClientPool.KEEP_ALIVE_TIMEOUT_PROPERTY, "42");
+        try {
+            HttpClientPool.applyIdleLifetime(Duration.ofMinutes(5L));
+
+            assertThat(System.getProperty(HttpClientPool.KEEP_ALIVE_TIMEOUT_PROPERTY)).isEqualTo("42");
+        } finally {
+            restoreKeepAliveTimeout(previous);
+        }
+    }
+
+    @Test
+    void applyIdleLifetime_underOneSecond_throwsIllegalArgumentException() {
+        IllegalArgumentException actualException =
+                assertThrows(IllegalArgumentException.class, () ->
+                        HttpClientPool.applyIdleLifetime(Duration.ofMillis(999L)));
+
+        assertThat(actualException).hasMessageThat().isEqualTo(
+                "Idle lifetime must be at least 1 second but was: PT0.999S.");
+    }
+
+    private static void restoreKeepAliveTimeout(String previous) {
+        if (previous == null) {
+            System.clearProperty(HttpClientPool.KEEP_ALIVE_TIMEOUT_PROPERTY);
+        } else {
+            System.setProperty(HttpClientPool.KEEP_ALIVE_TIMEOUT_PROPERTY, previous);
+        }
+    }
+}
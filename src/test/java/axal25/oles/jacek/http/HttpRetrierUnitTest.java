@@ -0,0 +1,301 @@
+package axal25.oles.jacek.http;
+
+import axal25.oles.jacek.util.CurrentThreadExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+public class HttpRetrierUnitTest {
+    private static final HttpRequest HTTP_REQUEST = HttpRequest.newBuilder()
+            .uri(URI.create("https://www.google.com"))
+            .build();
+    private static final RetryPolicy RETRY_POLICY = RetryPolicy.builder()
+            .maxAttempts(3)
+            .initialBackoff(Duration.ofMillis(1L))
+            .maxBackoff(Duration.ofMillis(2L))
+            .multiplier(2.0)
+            .retryableStatusCodes(Set.of(503))
+            .retryableExceptions(Set.of(IOException.class))
+            .build();
+    private static final RetryPolicy RETRY_POLICY_WAITING_MINUTES = RETRY_POLICY.toBuilder()
+            .maxBackoff(Duration.ofMinutes(5L))
+            .build();
+    private HttpClient httpClientMock;
+
+    @BeforeEach
+    void setUp() {
+        httpClientMock = mock(HttpClient.class);
+    }
+
+    private static HttpResponse<String> response(int statusCode) {
+        return TestHttpResponse.<String>builder()
+                .statusCode(statusCode)
+                .httpRequest(HTTP_REQUEST)
+                .build();
+    }
+
+    private static HttpResponse<String> unavailable(String retryAfter) {
+        return TestHttpResponse.<String>builder()
+                .statusCode(503)
+                .httpRequest(HTTP_REQUEST)
+                .httpHeaders(HttpHeaders.of(Map.of("Retry-After", List.of(retryAfter)), (name, value) -> true))
+                .build();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void send_retryableStatusCode_retriedUntilSuccess() {
+        HttpResponse<String> unavailable = response(503);
+        HttpResponse<String> ok = response(200);
+        assertDoesNotThrow(() -> when(httpClientMock.send(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(unavailable, ok));
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        HttpResponse<String> actualResponse = assertDoesNotThrow(() ->
+                httpRetrier.send(httpClientMock, HTTP_REQUEST, HttpResponse.BodyHandlers.ofString()));
+
+        assertThat(actualResponse).isSameInstanceAs(ok);
+        assertDoesNotThrow(() -> verify(httpClientMock, times(2)).send(any(), any()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void send_retryableException_rethrownAfterMaxAttempts() {
+        ConnectException stubException = new ConnectException("stub exception message");
+        assertDoesNotThrow(() -> when(httpClientMock.send(any(), any(HttpResponse.BodyHandler.class)))
+                .thenThrow(stubException));
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        ConnectException actualException = assertThrows(ConnectException.class, () ->
+                httpRetrier.send(httpClientMock, HTTP_REQUEST, HttpResponse.BodyHandlers.ofString()));
+
+        assertThat(actualException).isSameInstanceAs(stubException);
+        assertDoesNotThrow(() -> verify(httpClientMock, times(3)).send(any(), any()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void send_notRetryableStatusCode_notRetried() {
+        HttpResponse<String> badRequest = response(400);
+        assertDoesNotThrow(() -> when(httpClientMock.send(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(badRequest));
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        HttpResponse<String> actualResponse = assertDoesNotThrow(() ->
+                httpRetrier.send(httpClientMock, HTTP_REQUEST, HttpResponse.BodyHandlers.ofString()));
+
+        assertThat(actualResponse).isSameInstanceAs(badRequest);
+        assertDoesNotThrow(() -> verify(httpClientMock, times(1)).send(any(), any()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void send_retryBudgetExhausted_notRetried() {
+        HttpResponse<String> unavailable = response(503);
+        assertDoesNotThrow(() -> when(httpClientMock.send(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(unavailable));
+        RetryBudget retryBudget = new RetryBudget(4, 0.0);
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, retryBudget, new CurrentThreadExecutor());
+
+        assertDoesNotThrow(() -> httpRetrier.send(httpClientMock, HTTP_REQUEST, HttpResponse.BodyHandlers.ofString()));
+        assertDoesNotThrow(() -> httpRetrier.send(httpClientMock, HTTP_REQUEST, HttpResponse.BodyHandlers.ofString()));
+
+        // 4 tokens: 3 -> retried, 2 -> not retried (not above half), 1 -> not retried
+        assertDoesNotThrow(() -> verify(httpClientMock, times(3)).send(any(), any()));
+        assertThat(retryBudget.getTokens()).isEqualTo(1.0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendAsync_failedAttempts_retriedWithoutBlocking() {
+        HttpResponse<String> ok = response(200);
+        when(httpClientMock.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(
+                        CompletableFuture.failedFuture(new ConnectException("stub exception message")),
+                        CompletableFuture.completedFuture(response(503)),
+                        CompletableFuture.completedFuture(ok));
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        CompletableFuture<HttpResponse<String>> actualResponse =
+                httpRetrier.sendAsync(httpClientMock, HTTP_REQUEST, HttpResponse.BodyHandlers.ofString());
+
+        assertThat(assertDoesNotThrow(() -> actualResponse.get())).isSameInstanceAs(ok);
+        verify(httpClientMock, times(3)).sendAsync(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendAsync_notRetryableException_completedExceptionally() {
+        IllegalStateException stubException = new IllegalStateException("stub exception message");
+        when(httpClientMock.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.failedFuture(stubException));
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        CompletableFuture<HttpResponse<String>> actualResponse =
+                httpRetrier.sendAsync(httpClientMock, HTTP_REQUEST, HttpResponse.BodyHandlers.ofString());
+
+        ExecutionException actualException = assertThrows(ExecutionException.class, actualResponse::get);
+        assertThat(actualException).hasCauseThat().isSameInstanceAs(stubException);
+        verify(httpClientMock, times(1)).sendAsync(any(), any());
+    }
+
+    @Test
+    void sendAsync_cancelled_attemptInFlightCancelledAndNotRetried() {
+        CompletableFuture<HttpResponse<String>> inFlight = new CompletableFuture<>();
+        AtomicInteger attempts = new AtomicInteger();
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        CompletableFuture<HttpResponse<String>> actualResponse = httpRetrier.sendAsync(() -> {
+            attempts.incrementAndGet();
+            return inFlight;
+        });
+        actualResponse.cancel(true);
+
+        assertThat(inFlight.isCancelled()).isTrue();
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void sendAsync_deadlineExceeded_notRetried() {
+        DeadlineExceededException stubException = new DeadlineExceededException("stub exception message");
+        AtomicInteger attempts = new AtomicInteger();
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        CompletableFuture<HttpResponse<String>> actualResponse = httpRetrier.sendAsync(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(stubException);
+        });
+
+        ExecutionException actualException = assertThrows(ExecutionException.class, actualResponse::get);
+        assertThat(actualException).hasCauseThat().isSameInstanceAs(stubException);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void send_retryAfterBeyondDeadline_responseReturnedWithoutWaiting() throws IOException, InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        HttpRetrier httpRetrier = new HttpRetrier(
+                RETRY_POLICY_WAITING_MINUTES, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        HttpResponse<String> actualResponse = httpRetrier.send(
+                () -> {
+                    attempts.incrementAndGet();
+                    return unavailable("60");
+                },
+                Deadline.after(Duration.ofSeconds(1L)));
+
+        assertThat(actualResponse.statusCode()).isEqualTo(503);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void send_retryableExceptionWithBackoffBeyondDeadline_failsWithoutWaiting() {
+        AtomicInteger attempts = new AtomicInteger();
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        assertThrows(DeadlineExceededException.class, () -> httpRetrier.send(
+                () -> {
+                    attempts.incrementAndGet();
+                    throw new IOException("stub exception message");
+                },
+                Deadline.after(Duration.ZERO)));
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void send_retryAfterOverMaxBackoff_responseReturnedWithoutWaiting() throws IOException, InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        HttpResponse<String> actualResponse = httpRetrier.send(() -> {
+            attempts.incrementAndGet();
+            return unavailable("3600");
+        });
+
+        assertThat(actualResponse.statusCode()).isEqualTo(503);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void sendAsync_retryAfterOverMaxBackoff_responseReturnedWithoutWaiting() {
+        AtomicInteger attempts = new AtomicInteger();
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        CompletableFuture<HttpResponse<String>> actualResponse = httpRetrier.sendAsync(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(unavailable("99999999999"));
+        });
+
+        assertThat(actualResponse.isDone()).isTrue();
+        assertThat(getUnchecked(actualResponse).statusCode()).isEqualTo(503);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void sendAsync_retryAfterBeyondDeadline_responseReturnedWithoutWaiting() {
+        AtomicInteger attempts = new AtomicInteger();
+        HttpRetrier httpRetrier = new HttpRetrier(
+                RETRY_POLICY_WAITING_MINUTES, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        CompletableFuture<HttpResponse<String>> actualResponse = httpRetrier.sendAsync(
+                () -> {
+                    attempts.incrementAndGet();
+                    return CompletableFuture.completedFuture(unavailable("60"));
+                },
+                Deadline.after(Duration.ofSeconds(1L)));
+
+        assertThat(actualResponse.isDone()).isTrue();
+        assertThat(getUnchecked(actualResponse).statusCode()).isEqualTo(503);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void sendAsync_deadlineCancelledDuringBackoff_notRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        HttpRetrier httpRetrier = new HttpRetrier(
+                RETRY_POLICY_WAITING_MINUTES, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+        Deadline deadline = Deadline.none();
+
+        CompletableFuture<HttpResponse<String>> actualResponse = httpRetrier.sendAsync(
+                () -> {
+                    attempts.incrementAndGet();
+                    return CompletableFuture.completedFuture(unavailable("60"));
+                },
+                deadline);
+        assertThat(actualResponse.isDone()).isFalse();
+        deadline.cancel();
+
+        assertThrows(CancellationException.class, actualResponse::get);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void getBackoff_cappedByMaxBackoff() {
+        HttpRetrier httpRetrier = new HttpRetrier(RETRY_POLICY, new RetryBudget(10, 0.1), new CurrentThreadExecutor());
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(httpRetrier.getBackoff(10, null).orElseThrow()).isAtMost(Duration.ofMillis(2L));
+        }
+    }
+}
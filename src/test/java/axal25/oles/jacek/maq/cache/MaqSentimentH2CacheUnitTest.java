@@ -0,0 +1,178 @@
+package axal25.oles.jacek.maq.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MaqSentimentH2CacheUnitTest {
+    private static final Duration TTL = Duration.ofDays(1);
+    private final TestClock clock = new TestClock();
+    private JdbcTemplate jdbcTemplate;
+    private MaqSentimentH2Cache h2Cache;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+        h2Cache = new MaqSentimentH2Cache(jdbcTemplate, 2, 4, 60_000L, TTL, 60_000L, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        h2Cache.close();
+    }
+
+    @Test
+    void constructor_maxPendingWritesBelowBatchSize_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MaqSentimentH2Cache(jdbcTemplate, 2, 1, 60_000L, TTL, 60_000L, clock));
+    }
+
+    @Test
+    void getAll_pendingWrite_readBeforeFlush() {
+        h2Cache.put(TextHash.of("a"), new BigDecimal("0.5"));
+        clock.advance(Duration.ofSeconds(3));
+
+        assertThat(h2Cache.getAll(List.of(TextHash.of("a"), TextHash.of("b"))))
+                .containsExactly(TextHash.of("a"), new AgedSentiment(new BigDecimal("0.5"), Duration.ofSeconds(3)));
+        assertThat(h2Cache.getWritten()).isEqualTo(0);
+    }
+
+    @Test
+    void flush_writesInBatches_readableByAnotherInstance() {
+        h2Cache.put(TextHash.of("a"), new BigDecimal("0.9533200264"));
+        h2Cache.put(TextHash.of("b"), new BigDecimal("0.25"));
+        h2Cache.put(TextHash.of("c"), new BigDecimal("0.75"));
+
+        h2Cache.flush();
+
+        assertThat(h2Cache.getPendingWrites()).isEqualTo(0);
+        assertThat(h2Cache.getWritten()).isEqualTo(3);
+        MaqSentimentH2Cache restarted = new MaqSentimentH2Cache(jdbcTemplate, 2, 4, 60_000L, TTL, 60_000L, clock);
+        assertThat(restarted.getAll(List.of(TextHash.of("a"), TextHash.of("c"), TextHash.of("d"))))
+                .isEqualTo(Map.of(
+                        TextHash.of("a"), new AgedSentiment(new BigDecimal("0.9533200264"), Duration.ZERO),
+                        TextHash.of("c"), new AgedSentiment(new BigDecimal("0.75"), Duration.ZERO)));
+        restarted.close();
+    }
+
+    @Test
+    void getAll_moreKeysThanOneSelect() {
+        List<TextHash> textHashes = IntStream.range(0, 1_200)
+                .mapToObj(i -> TextHash.of("text " + i))
+                .collect(toList());
+        h2Cache.put(textHashes.get(1_100), BigDecimal.ONE);
+        h2Cache.flush();
+
+        assertThat(h2Cache.getAll(textHashes))
+                .containsExactly(textHashes.get(1_100), new AgedSentiment(BigDecimal.ONE, Duration.ZERO));
+    }
+
+    @Test
+    void put_overMaxPendingWrites_dropped() {
+        MaqSentimentH2Cache neverFlushed = new MaqSentimentH2Cache(jdbcTemplate, 4, 4, 60_000L, TTL, 60_000L, clock);
+        neverFlushed.close();
+
+        IntStream.range(0, 5).forEach(i -> neverFlushed.put(TextHash.of("text " + i), BigDecimal.ONE));
+
+        assertThat(neverFlushed.getPendingWrites()).isEqualTo(4);
+        assertThat(neverFlushed.getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    void getAll_flushed_readWithItsAge() {
+        h2Cache.put(TextHash.of("a"), new BigDecimal("0.5"));
+        h2Cache.flush();
+
+        clock.advance(Duration.ofHours(5));
+
+        assertThat(h2Cache.getAll(List.of(TextHash.of("a"))))
+                .containsExactly(TextHash.of("a"), new AgedSentiment(new BigDecimal("0.5"), Duration.ofHours(5)));
+    }
+
+    @Test
+    void getAll_afterTtl_notRead() {
+        h2Cache.put(TextHash.of("a"), new BigDecimal("0.5"));
+        h2Cache.flush();
+
+        clock.advance(TTL);
+
+        assertThat(h2Cache.getAll(List.of(TextHash.of("a")))).isEmpty();
+    }
+
+    @Test
+    void purge_deletesOnlyRowsOlderThanTtl() {
+        h2Cache.put(TextHash.of("old"), new BigDecimal("0.5"));
+        h2Cache.flush();
+        clock.advance(Duration.ofHours(12));
+        h2Cache.put(TextHash.of("new"), new BigDecimal("0.25"));
+        h2Cache.flush();
+        clock.advance(Duration.ofHours(12));
+
+        h2Cache.purge();
+
+        assertThat(h2Cache.getPurged()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM maq_sentiment_cache", Long.class))
+                .isEqualTo(1L);
+        assertThat(h2Cache.getAll(List.of(TextHash.of("old"), TextHash.of("new"))))
+                .containsExactly(TextHash.of("new"), new AgedSentiment(new BigDecimal("0.25"), Duration.ofHours(12)));
+    }
+
+    @Test
+    void constructor_tableWithoutWrittenAt_rowsExpired() {
+        JdbcTemplate oldJdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+        oldJdbcTemplate.execute("CREATE TABLE maq_sentiment_cache ("
+                + "text_hash_high BIGINT NOT NULL, "
+                + "text_hash_low BIGINT NOT NULL, "
+                + "sentiment DECFLOAT NOT NULL, "
+                + "PRIMARY KEY (text_hash_high, text_hash_low))");
+        oldJdbcTemplate.update("INSERT INTO maq_sentiment_cache VALUES (?, ?, ?)",
+                TextHash.of("a").high(), TextHash.of("a").low(), new BigDecimal("0.5"));
+
+        MaqSentimentH2Cache upgraded = new MaqSentimentH2Cache(oldJdbcTemplate, 2, 4, 60_000L, TTL, 60_000L, clock);
+
+        assertThat(upgraded.getAll(List.of(TextHash.of("a")))).isEmpty();
+        upgraded.close();
+    }
+
+    private static class TestClock extends Clock {
+        private volatile Instant instant = Instant.parse("2022-11-01T00:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+    }
+}
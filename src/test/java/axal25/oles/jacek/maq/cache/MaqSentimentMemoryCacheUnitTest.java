@@ -0,0 +1,90 @@
+package axal25.oles.jacek.maq.cache;
+
+import axal25.oles.jacek.http.TestTicker;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MaqSentimentMemoryCacheUnitTest {
+    private final TestTicker ticker = new TestTicker();
+
+    @Test
+    void textHash_normalizesWhitespaceAndUnicode() {
+        assertThat(TextHash.of("  good\tmorning \n")).isEqualTo(TextHash.of("good morning"));
+        assertThat(TextHash.of("cafe\u0301")).isEqualTo(TextHash.of("caf\u00e9"));
+        assertThat(TextHash.of("good morning")).isNotEqualTo(TextHash.of("good evening"));
+    }
+
+    @Test
+    void constructor_maxEntriesNotPositive_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MaqSentimentMemoryCache(0, Duration.ofMinutes(1), ticker));
+    }
+
+    @Test
+    void get_hitAndMiss_counted() {
+        MaqSentimentMemoryCache cache = new MaqSentimentMemoryCache(10, Duration.ofMinutes(1), ticker);
+        cache.put(TextHash.of("a"), new BigDecimal("0.5"));
+
+        assertThat(cache.get(TextHash.of("a"))).isEqualTo(Optional.of(new BigDecimal("0.5")));
+        assertThat(cache.get(TextHash.of("b"))).isEqualTo(Optional.empty());
+        assertThat(cache.getStatistics()).isEqualTo(MaqSentimentCacheStatistics.builder()
+                .hits(1)
+                .misses(1)
+                .evictions(0)
+                .expirations(0)
+                .size(1)
+                .maxEntries(10)
+                .ttl(Duration.ofMinutes(1))
+                .build());
+    }
+
+    @Test
+    void get_afterTtl_expired() {
+        MaqSentimentMemoryCache cache = new MaqSentimentMemoryCache(10, Duration.ofSeconds(1), ticker);
+        cache.put(TextHash.of("a"), new BigDecimal("0.5"));
+        cache.get(TextHash.of("a"));
+
+        ticker.advance(Duration.ofSeconds(1));
+
+        assertThat(cache.get(TextHash.of("a"))).isEqualTo(Optional.empty());
+        assertThat(cache.getStatistics().getExpirations()).isEqualTo(1);
+        assertThat(cache.getStatistics().getSize()).isEqualTo(0);
+    }
+
+    @Test
+    void put_withAge_expiresTtlAfterItWasWritten() {
+        MaqSentimentMemoryCache cache = new MaqSentimentMemoryCache(10, Duration.ofSeconds(10), ticker);
+        ticker.advance(Duration.ofMinutes(1));
+        cache.put(TextHash.of("a"), new BigDecimal("0.5"), Duration.ofSeconds(8));
+
+        ticker.advance(Duration.ofSeconds(1));
+        assertThat(cache.get(TextHash.of("a"))).isEqualTo(Optional.of(new BigDecimal("0.5")));
+
+        ticker.advance(Duration.ofSeconds(1));
+        assertThat(cache.get(TextHash.of("a"))).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    void put_overMaxEntries_evictsOneOffEntriesBeforeRepeatedlyHitOnes() {
+        MaqSentimentMemoryCache cache = new MaqSentimentMemoryCache(3, Duration.ofMinutes(1), ticker);
+        cache.put(TextHash.of("frequent"), BigDecimal.ONE);
+        cache.get(TextHash.of("frequent"));
+
+        cache.put(TextHash.of("once 1"), BigDecimal.ZERO);
+        cache.put(TextHash.of("once 2"), BigDecimal.ZERO);
+        cache.put(TextHash.of("once 3"), BigDecimal.ZERO);
+        cache.put(TextHash.of("once 4"), BigDecimal.ZERO);
+
+        assertThat(cache.get(TextHash.of("frequent"))).isEqualTo(Optional.of(BigDecimal.ONE));
+        assertThat(cache.get(TextHash.of("once 1"))).isEqualTo(Optional.empty());
+        assertThat(cache.get(TextHash.of("once 2"))).isEqualTo(Optional.empty());
+        assertThat(cache.getStatistics().getEvictions()).isEqualTo(2);
+        assertThat(cache.getStatistics().getSize()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,69 @@
+package axal25.oles.jacek.maq.cache;
+
+import axal25.oles.jacek.http.TestTicker;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MaqSentimentNegativeCacheUnitTest {
+    private static final MaqSentimentResponseErrorBodyElement EMPTY_TEXT_ERROR = MaqSentimentResponseErrorBodyElement.builder()
+            .property("text")
+            .recordNumber(3L)
+            .validator("Empty string check")
+            .value("null")
+            .message("InvalidJSONError: The ‘text’ passed in json is empty")
+            .build();
+    private final TestTicker ticker = new TestTicker();
+
+    @Test
+    void put_notTextValidatorError_throws() {
+        MaqSentimentNegativeCache cache = new MaqSentimentNegativeCache(10, Duration.ofMinutes(1), ticker);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.put(TextHash.of(""), EMPTY_TEXT_ERROR.toBuilder()
+                .property("data")
+                .build()));
+    }
+
+    @Test
+    void get_cachedWithoutRecordNumber() {
+        MaqSentimentNegativeCache cache = new MaqSentimentNegativeCache(10, Duration.ofMinutes(1), ticker);
+        cache.put(TextHash.of(""), EMPTY_TEXT_ERROR);
+
+        assertThat(cache.get(TextHash.of(" "))).isEqualTo(Optional.of(EMPTY_TEXT_ERROR.toBuilder()
+                .recordNumber(null)
+                .build()));
+        assertThat(cache.getStatistics().getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void get_afterTtl_expired() {
+        MaqSentimentNegativeCache cache = new MaqSentimentNegativeCache(10, Duration.ofSeconds(1), ticker);
+        cache.put(TextHash.of(""), EMPTY_TEXT_ERROR);
+
+        ticker.advance(Duration.ofSeconds(1));
+
+        assertThat(cache.get(TextHash.of(""))).isEqualTo(Optional.empty());
+        assertThat(cache.getStatistics().getExpirations()).isEqualTo(1);
+    }
+
+    @Test
+    void put_overMaxEntries_evictsLeastRecentlyUsed() {
+        MaqSentimentNegativeCache cache = new MaqSentimentNegativeCache(2, Duration.ofMinutes(1), ticker);
+        cache.put(TextHash.of("a"), EMPTY_TEXT_ERROR);
+        cache.put(TextHash.of("b"), EMPTY_TEXT_ERROR);
+        cache.get(TextHash.of("a"));
+
+        cache.put(TextHash.of("c"), EMPTY_TEXT_ERROR);
+
+        assertThat(cache.get(TextHash.of("a"))).isEqualTo(Optional.of(EMPTY_TEXT_ERROR.toBuilder()
+                .recordNumber(null)
+                .build()));
+        assertThat(cache.get(TextHash.of("b"))).isEqualTo(Optional.empty());
+        assertThat(cache.getStatistics().getEvictions()).isEqualTo(1);
+    }
+}
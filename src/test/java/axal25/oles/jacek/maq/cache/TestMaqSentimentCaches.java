@@ -0,0 +1,20 @@
+package axal25.oles.jacek.maq.cache;
+
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+
+// the caches' test constructors are package-private, clients' tests outside this package build them here
+public final class TestMaqSentimentCaches {
+
+    private TestMaqSentimentCaches() {
+    }
+
+    public static MaqSentimentMemoryCache newMemoryCache(int maxEntries, Duration ttl, Ticker ticker) {
+        return new MaqSentimentMemoryCache(maxEntries, ttl, ticker);
+    }
+
+    public static MaqSentimentNegativeCache newNegativeCache(int maxEntries, Duration ttl, Ticker ticker) {
+        return new MaqSentimentNegativeCache(maxEntries, ttl, ticker);
+    }
+}
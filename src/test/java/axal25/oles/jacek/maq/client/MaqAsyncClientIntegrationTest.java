@@ -1,5 +1,6 @@
 package axal25.oles.jacek.maq.client;
 
+import axal25.oles.jacek.http.HttpClientPool;
 import axal25.oles.jacek.maq.model.MaqOmniSerializer;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
@@ -22,6 +23,8 @@ public class MaqAsyncClientIntegrationTest {
     @Autowired
     private Executor executor;
     @Autowired
+    private HttpClientPool httpClientPool;
+    @Autowired
     private MaqOmniSerializer maqOmniSerializer;
     @Autowired
     private MaqAsyncClient maqAsyncClient;
@@ -68,7 +71,7 @@ public class MaqAsyncClientIntegrationTest {
                                 .text("test")
                                 .build()))
                 .build();
-        MaqClientCommons maqClientCommons = new MaqClientCommons("bad maq api key value", executor);
+        MaqClientCommons maqClientCommons = new MaqClientCommons("bad maq api key value", httpClientPool);
         MaqAsyncClient maqAsyncClient = new MaqAsyncClient(maqClientCommons, maqOmniSerializer, executor);
 
         MaqSentimentResponse maqSentimentResponse =
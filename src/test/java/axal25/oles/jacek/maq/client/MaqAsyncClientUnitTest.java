@@ -1,5 +1,9 @@
 package axal25.oles.jacek.maq.client;
 
+import axal25.oles.jacek.http.Deadline;
+import axal25.oles.jacek.http.HttpClientPool;
+import axal25.oles.jacek.http.HttpContainer;
+import axal25.oles.jacek.http.TestHttpResponse;
 import axal25.oles.jacek.maq.model.MaqOmniSerializer;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
 import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
@@ -17,16 +21,30 @@ import org.junit.jupiter.api.Test;
 
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 import static axal25.oles.jacek.constant.Constants.CONTENT_TYPE;
 import static axal25.oles.jacek.maq.MaqConstants.MAQ_API_KEY_NAME;
 import static axal25.oles.jacek.maq.client.MaqClientCommons.URI_SENTIMENT;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
@@ -36,6 +54,7 @@ public class MaqAsyncClientUnitTest {
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final String maqKeyValueStub = "STUB_MAQ_KEY_VALUE";
     private Executor executor;
+    private HttpClientPool httpClientPool;
     private MaqClientCommons maqClientCommonsMock;
     private MaqOmniSerializer maqOmniSerializerMock;
     private MaqAsyncClient maqAsyncClientMock;
@@ -50,8 +69,13 @@ public class MaqAsyncClientUnitTest {
     @BeforeEach
     void setUp() {
         executor = new CurrentThreadExecutor();
+        httpClientPool = new HttpClientPool(
+                executor,
+                HttpClient.Version.HTTP_2,
+                Duration.ofSeconds(1L),
+                1);
         maqClientCommonsMock = mock(MaqClientCommons.class, withSettings()
-                .useConstructor(maqKeyValueStub, executor)
+                .useConstructor(maqKeyValueStub, httpClientPool)
                 .defaultAnswer(CALLS_REAL_METHODS));
         httpClientMock = mock(HttpClient.class);
         when(maqClientCommonsMock.getHttpClient()).thenReturn(httpClientMock);
@@ -154,4 +178,123 @@ public class MaqAsyncClientUnitTest {
         assertThat(((ThrowableProxy) listAppender.list.get(0).getThrowableProxy()).getThrowable()).isEqualTo(stubException);
         assertThat(listAppender.list.get(0).getMarker().getName()).isEqualTo("checked exception");
     }
+
+    @Test
+    void postSentiment_thousandsOfOutstandingRequests_doNotBlockSmallExecutor() throws InterruptedException {
+        int outstandingRequests = 5_000;
+        Queue<CompletableFuture<HttpResponse<String>>> pendingExchanges = new ConcurrentLinkedQueue<>();
+        CountDownLatch allSent = new CountDownLatch(outstandingRequests);
+        when(httpClientMock.sendAsync(any(), any())).thenAnswer(invocation -> {
+            CompletableFuture<HttpResponse<String>> pendingExchange = new CompletableFuture<>();
+            pendingExchanges.add(pendingExchange);
+            allSent.countDown();
+            return pendingExchange;
+        });
+        HttpResponse<String> httpResponse = TestHttpResponse.<String>builder()
+                .statusCode(200)
+                .body("[{\"id\": \"1\", \"sentiment\": 0.5}]")
+                .build();
+
+        try (ExecutorService smallExecutor = Executors.newFixedThreadPool(2)) {
+            MaqAsyncClient maqAsyncClient = new MaqAsyncClient(
+                    maqClientCommonsMock, maqOmniSerializerMock, smallExecutor);
+            MaqSentimentRequestBody maqSentimentRequestBody = MaqSentimentRequestBody.builder().build();
+
+            List<CompletableFuture<MaqSentimentResponse>> futures = IntStream.range(0, outstandingRequests)
+                    .mapToObj(i -> maqAsyncClient.postSentiment(maqSentimentRequestBody))
+                    .collect(toList());
+
+            assertTrue(allSent.await(30L, TimeUnit.SECONDS),
+                    "Only " + (outstandingRequests - allSent.getCount()) + " requests were sent.");
+            assertThat(futures.stream().noneMatch(CompletableFuture::isDone)).isTrue();
+
+            pendingExchanges.forEach(pendingExchange -> pendingExchange.complete(httpResponse));
+
+            futures.forEach(future -> assertThat(getUnchecked(future).getStatusCode()).isEqualTo(200));
+        }
+    }
+
+    @Test
+    void postSentiment_cpuExecutorSaturatedAfterExchange_responseDeserializedOnCompletingThread() {
+        when(httpClientMock.sendAsync(any(), any())).thenAnswer(invocation -> CompletableFuture.completedFuture(
+                TestHttpResponse.<String>builder()
+                        .statusCode(200)
+                        .body("[{\"id\": \"1\", \"sentiment\": 0.5}]")
+                        .build()));
+        AtomicInteger cpuTasks = new AtomicInteger();
+        Executor cpuExecutorSaturatedAfterSerialization = task -> {
+            if (cpuTasks.incrementAndGet() > 1) {
+                throw new RejectedExecutionException("saturated");
+            }
+            task.run();
+        };
+        MaqAsyncClient maqAsyncClient = new MaqAsyncClient(
+                maqClientCommonsMock,
+                maqOmniSerializerMock,
+                cpuExecutorSaturatedAfterSerialization,
+                new CurrentThreadExecutor(),
+                MaqRequestHedger.disabled(),
+                MaqOutstandingRequestLimiter.unlimited());
+
+        MaqSentimentResponse maqSentimentResponse =
+                getUnchecked(maqAsyncClient.postSentiment(MaqSentimentRequestBody.builder().build()));
+
+        assertThat(cpuTasks.get()).isEqualTo(2);
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(200);
+        assertThat(maqSentimentResponse.getSuccesses()).hasSize(1);
+        assertThat(listAppender.list).isEmpty();
+    }
+
+    @Test
+    void postSentiment_ioExecutorSaturatedAfterExchange_serviceUnavailableNotSerializationFailure() {
+        when(httpClientMock.sendAsync(any(), any())).thenAnswer(invocation -> CompletableFuture.completedFuture(
+                TestHttpResponse.<String>builder()
+                        .statusCode(200)
+                        .body("[]")
+                        .build()));
+        MaqAsyncClient maqAsyncClient = new MaqAsyncClient(
+                maqClientCommonsMock,
+                maqOmniSerializerMock,
+                new CurrentThreadExecutor(),
+                task -> {
+                    throw new RejectedExecutionException("saturated");
+                },
+                MaqRequestHedger.disabled(),
+                MaqOutstandingRequestLimiter.unlimited());
+
+        MaqSentimentResponse maqSentimentResponse =
+                getUnchecked(maqAsyncClient.postSentiment(MaqSentimentRequestBody.builder().build()));
+
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(503);
+        assertThat(listAppender.list).isEmpty();
+    }
+
+    @Test
+    void postSentiment_cancelled_exchangeAbortedAndLaterStagesSkipped() {
+        CompletableFuture<HttpResponse<String>> pendingExchange = new CompletableFuture<>();
+        when(httpClientMock.sendAsync(any(), any())).thenAnswer(invocation -> pendingExchange);
+
+        CompletableFuture<MaqSentimentResponse> maqSentimentResponseFuture =
+                maqAsyncClientMock.postSentiment(MaqSentimentRequestBody.builder().build());
+        maqSentimentResponseFuture.cancel(true);
+
+        assertThat(pendingExchange.isCancelled()).isTrue();
+        assertThat(maqSentimentResponseFuture.isCancelled()).isTrue();
+        verify(maqOmniSerializerMock, never()).deserializeFromJson(any(HttpContainer.class));
+        assertThat(listAppender.list).isEmpty();
+    }
+
+    @Test
+    void postSentiment_deadlinePassesDuringExchange_exchangeAbortedAndGatewayTimeout() {
+        CompletableFuture<HttpResponse<String>> pendingExchange = new CompletableFuture<>();
+        when(httpClientMock.sendAsync(any(), any())).thenAnswer(invocation -> pendingExchange);
+
+        MaqSentimentResponse maqSentimentResponse = getUnchecked(maqAsyncClientMock.postSentiment(
+                MaqSentimentRequestBody.builder().build(),
+                Deadline.after(Duration.ofMillis(50L))));
+
+        assertThat(pendingExchange.isCancelled()).isTrue();
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(504);
+        assertThat(listAppender.list).isEmpty();
+    }
 }
@@ -0,0 +1,150 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+import static org.mockito.Mockito.*;
+
+public class MaqBulkAsyncClientUnitTest {
+    private final Map<String, CompletableFuture<MaqSentimentResponse>> pendingByFirstId = new ConcurrentHashMap<>();
+    private MaqAsyncClient maqAsyncClientMock;
+
+    @BeforeEach
+    void setUp() {
+        maqAsyncClientMock = mock(MaqAsyncClient.class);
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class))).thenAnswer(invocation -> {
+            MaqSentimentRequestBody body = invocation.getArgument(0);
+            CompletableFuture<MaqSentimentResponse> pending = new CompletableFuture<>();
+            pendingByFirstId.put(body.getData().get(0).getId(), pending);
+            return pending;
+        });
+    }
+
+    private static MaqSentimentRequestBody requestBody(int size) {
+        return MaqSentimentRequestBody.builder()
+                .data(IntStream.rangeClosed(1, size)
+                        .mapToObj(i -> MaqSentimentRequestBodyDataElement.builder()
+                                .id(String.valueOf(i))
+                                .text("text " + i)
+                                .build())
+                        .collect(toList()))
+                .build();
+    }
+
+    private static MaqSentimentResponse successes(String... ids) {
+        return MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(ids).stream()
+                        .map(id -> MaqSentimentResponseSuccessBodyElement.builder()
+                                .id(id)
+                                .sentiment(new BigDecimal(id))
+                                .build())
+                        .collect(toList()))
+                .build();
+    }
+
+    @Test
+    void postSentiment_bodyNotLargerThanChunk_delegatesAsIs() {
+        MaqBulkAsyncClient maqBulkAsyncClient = new MaqBulkAsyncClient(maqAsyncClientMock, 2, 1);
+        MaqSentimentRequestBody maqSentimentRequestBody = requestBody(2);
+
+        maqBulkAsyncClient.postSentiment(maqSentimentRequestBody);
+
+        verify(maqAsyncClientMock, times(1)).postSentiment(maqSentimentRequestBody);
+    }
+
+    @Test
+    void postSentiment_boundedInFlight_mergedInInputOrder() {
+        MaqBulkAsyncClient maqBulkAsyncClient = new MaqBulkAsyncClient(maqAsyncClientMock, 2, 2);
+
+        CompletableFuture<MaqSentimentResponse> merged = maqBulkAsyncClient.postSentiment(requestBody(5));
+
+        assertThat(pendingByFirstId.keySet()).containsExactly("1", "3");
+        pendingByFirstId.get("3").complete(successes("3", "4"));
+        assertThat(pendingByFirstId.keySet()).containsExactly("1", "3", "5");
+        pendingByFirstId.get("5").complete(successes("5"));
+        assertThat(merged.isDone()).isFalse();
+        pendingByFirstId.get("1").complete(successes("1", "2"));
+
+        MaqSentimentResponse maqSentimentResponse = merged.join();
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(200);
+        assertThat(maqSentimentResponse.getErrors()).isNull();
+        assertThat(maqSentimentResponse.getSuccesses().stream()
+                .map(MaqSentimentResponseSuccessBodyElement::getId)
+                .collect(toList()))
+                .containsExactly("1", "2", "3", "4", "5")
+                .inOrder();
+    }
+
+    @Test
+    void postSentiment_errorRecordNumbers_rebasedOntoWholeBody() {
+        MaqBulkAsyncClient maqBulkAsyncClient = new MaqBulkAsyncClient(maqAsyncClientMock, 2, 3);
+
+        CompletableFuture<MaqSentimentResponse> merged = maqBulkAsyncClient.postSentiment(requestBody(5));
+
+        pendingByFirstId.get("1").complete(successes("1", "2"));
+        pendingByFirstId.get("3").complete(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .errors(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                        .property("text")
+                        .recordNumber(2L)
+                        .build()))
+                .build());
+        pendingByFirstId.get("5").complete(successes("5"));
+
+        MaqSentimentResponse maqSentimentResponse = merged.join();
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(400);
+        assertThat(maqSentimentResponse.getUnderlyingResponse()).isNull();
+        assertThat(maqSentimentResponse.getErrors()).isEqualTo(List.of(
+                MaqSentimentResponseErrorBodyElement.builder()
+                        .property("text")
+                        .recordNumber(4L)
+                        .build()));
+        assertThat(maqSentimentResponse.getSuccesses().stream()
+                .map(MaqSentimentResponseSuccessBodyElement::getId)
+                .collect(toList()))
+                .containsExactly("1", "2", "5")
+                .inOrder();
+    }
+
+    @Test
+    void postSentiment_mergedCancelled_chunksInFlightCancelledAndNoFurtherSent() {
+        MaqBulkAsyncClient maqBulkAsyncClient = new MaqBulkAsyncClient(maqAsyncClientMock, 2, 2);
+
+        CompletableFuture<MaqSentimentResponse> merged = maqBulkAsyncClient.postSentiment(requestBody(7));
+        pendingByFirstId.get("1").complete(successes("1", "2"));
+        merged.cancel(true);
+
+        assertThat(pendingByFirstId.keySet()).containsExactly("1", "3", "5");
+        assertThat(pendingByFirstId.get("3").isCancelled()).isTrue();
+        assertThat(pendingByFirstId.get("5").isCancelled()).isTrue();
+        verify(maqAsyncClientMock, times(3)).postSentiment(any(MaqSentimentRequestBody.class));
+    }
+
+    @Test
+    void postSentiment_chunkFailed_otherChunksCancelledAndNoFurtherSent() {
+        MaqBulkAsyncClient maqBulkAsyncClient = new MaqBulkAsyncClient(maqAsyncClientMock, 2, 2);
+        IllegalStateException stubException = new IllegalStateException("stub exception message");
+
+        CompletableFuture<MaqSentimentResponse> merged = maqBulkAsyncClient.postSentiment(requestBody(7));
+        pendingByFirstId.get("1").completeExceptionally(stubException);
+
+        assertThat(merged.isCompletedExceptionally()).isTrue();
+        assertThat(pendingByFirstId.get("3").isCancelled()).isTrue();
+        verify(maqAsyncClientMock, times(2)).postSentiment(any(MaqSentimentRequestBody.class));
+    }
+}
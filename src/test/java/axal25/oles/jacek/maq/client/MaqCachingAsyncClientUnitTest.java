@@ -0,0 +1,245 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.cache.AgedSentiment;
+import axal25.oles.jacek.maq.cache.MaqSentimentH2Cache;
+import axal25.oles.jacek.maq.cache.MaqSentimentMemoryCache;
+import axal25.oles.jacek.maq.cache.MaqSentimentNegativeCache;
+import axal25.oles.jacek.maq.cache.TestMaqSentimentCaches;
+import axal25.oles.jacek.maq.cache.TextHash;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.mockito.Mockito.*;
+
+public class MaqCachingAsyncClientUnitTest {
+    private MaqCoalescingAsyncClient maqCoalescingAsyncClientMock;
+    private MaqSentimentMemoryCache memoryCache;
+    private MaqSentimentH2Cache h2CacheMock;
+    private MaqSentimentNegativeCache negativeCache;
+    private MaqCachingAsyncClient maqCachingAsyncClient;
+
+    @BeforeEach
+    void setUp() {
+        maqCoalescingAsyncClientMock = mock(MaqCoalescingAsyncClient.class);
+        memoryCache = TestMaqSentimentCaches.newMemoryCache(100, Duration.ofMinutes(1), Ticker.systemTicker());
+        h2CacheMock = mock(MaqSentimentH2Cache.class);
+        negativeCache = TestMaqSentimentCaches.newNegativeCache(100, Duration.ofMinutes(1), Ticker.systemTicker());
+        maqCachingAsyncClient = new MaqCachingAsyncClient(
+                maqCoalescingAsyncClientMock,
+                memoryCache,
+                h2CacheMock,
+                negativeCache,
+                Runnable::run);
+    }
+
+    private static MaqSentimentRequestBodyDataElement element(String id, String text) {
+        return MaqSentimentRequestBodyDataElement.builder()
+                .id(id)
+                .text(text)
+                .build();
+    }
+
+    private static MaqSentimentResponseSuccessBodyElement success(String id, String sentiment) {
+        return MaqSentimentResponseSuccessBodyElement.builder()
+                .id(id)
+                .sentiment(new BigDecimal(sentiment))
+                .build();
+    }
+
+    @Test
+    void postSentiment_allCached_doesNotCallMaq() {
+        memoryCache.put(TextHash.of("cached"), new BigDecimal("0.1"));
+
+        MaqSentimentResponse actualResponse = getUnchecked(maqCachingAsyncClient.postSentiment(
+                MaqSentimentRequestBody.builder()
+                        .data(List.of(element("1", "cached")))
+                        .build()));
+
+        verifyNoInteractions(maqCoalescingAsyncClientMock);
+        assertThat(actualResponse).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(success("1", "0.1")))
+                .build());
+    }
+
+    @Test
+    void postSentiment_someCached_sendsOnlyMissesAndMergesInOrder() {
+        memoryCache.put(TextHash.of("cached"), new BigDecimal("0.1"));
+        when(maqCoalescingAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                        .statusCode(200)
+                        .successes(List.of(success("3", "0.3")))
+                        .errors(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                                .recordNumber(1L)
+                                .build()))
+                        .build()));
+
+        MaqSentimentResponse actualResponse = getUnchecked(maqCachingAsyncClient.postSentiment(
+                MaqSentimentRequestBody.builder()
+                        .data(List.of(element("1", "cached"), element("2", ""), element("3", "new")))
+                        .build()));
+
+        verify(maqCoalescingAsyncClientMock).postSentiment(MaqSentimentRequestBody.builder()
+                .data(List.of(element("2", ""), element("3", "new")))
+                .build());
+        assertThat(actualResponse).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .successes(List.of(success("1", "0.1"), success("3", "0.3")))
+                .errors(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                        .recordNumber(2L)
+                        .build()))
+                .build());
+        assertThat(memoryCache.get(TextHash.of("new"))).isEqualTo(Optional.of(new BigDecimal("0.3")));
+        verify(h2CacheMock).put(TextHash.of("new"), new BigDecimal("0.3"));
+    }
+
+    @Test
+    void postSentiment_cachedInH2_promotedToMemory() {
+        when(h2CacheMock.getAll(List.of(TextHash.of("persisted"))))
+                .thenReturn(Map.of(TextHash.of("persisted"),
+                        new AgedSentiment(new BigDecimal("0.7"), Duration.ofSeconds(10))));
+
+        MaqSentimentResponse actualResponse = getUnchecked(maqCachingAsyncClient.postSentiment(
+                MaqSentimentRequestBody.builder()
+                        .data(List.of(element("1", "persisted")))
+                        .build()));
+
+        verifyNoInteractions(maqCoalescingAsyncClientMock);
+        assertThat(actualResponse.getSuccesses()).containsExactly(success("1", "0.7"));
+        assertThat(memoryCache.get(TextHash.of("persisted"))).isEqualTo(Optional.of(new BigDecimal("0.7")));
+    }
+
+    @Test
+    void postSentiment_cachedInH2AsLongAsTtl_notKeptInMemory() {
+        when(h2CacheMock.getAll(List.of(TextHash.of("persisted"))))
+                .thenReturn(Map.of(TextHash.of("persisted"),
+                        new AgedSentiment(new BigDecimal("0.7"), Duration.ofMinutes(1))));
+
+        MaqSentimentResponse actualResponse = getUnchecked(maqCachingAsyncClient.postSentiment(
+                MaqSentimentRequestBody.builder()
+                        .data(List.of(element("1", "persisted")))
+                        .build()));
+
+        assertThat(actualResponse.getSuccesses()).containsExactly(success("1", "0.7"));
+        assertThat(memoryCache.get(TextHash.of("persisted"))).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    void postSentiment_cacheExecutorSaturated_serviceUnavailable() {
+        MaqCachingAsyncClient saturated = new MaqCachingAsyncClient(
+                maqCoalescingAsyncClientMock,
+                memoryCache,
+                h2CacheMock,
+                negativeCache,
+                command -> {
+                    throw new RejectedExecutionException("Executor cache-executor is saturated.");
+                });
+
+        MaqSentimentResponse actualResponse = getUnchecked(saturated.postSentiment(
+                MaqSentimentRequestBody.builder()
+                        .data(List.of(element("1", "new")))
+                        .build()));
+
+        verifyNoInteractions(maqCoalescingAsyncClientMock, h2CacheMock);
+        assertThat(actualResponse).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(503)
+                .message("Executor cache-executor is saturated.")
+                .build());
+    }
+
+    @Test
+    void postSentiment_rejectedText_answeredLocallyNextTime() {
+        MaqSentimentResponseErrorBodyElement emptyTextError = MaqSentimentResponseErrorBodyElement.builder()
+                .property("text")
+                .recordNumber(1L)
+                .validator("Empty string check")
+                .value("null")
+                .message("InvalidJSONError: The ‘text’ passed in json is empty")
+                .build();
+        when(maqCoalescingAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                        .statusCode(400)
+                        .errors(List.of(emptyTextError))
+                        .build()));
+        getUnchecked(maqCachingAsyncClient.postSentiment(MaqSentimentRequestBody.builder()
+                .data(List.of(element("1", " ")))
+                .build()));
+        memoryCache.put(TextHash.of("cached"), new BigDecimal("0.1"));
+
+        MaqSentimentResponse actualResponse = getUnchecked(maqCachingAsyncClient.postSentiment(
+                MaqSentimentRequestBody.builder()
+                        .data(List.of(element("7", "cached"), element("8", " ")))
+                        .build()));
+
+        verify(maqCoalescingAsyncClientMock, times(1)).postSentiment(any(MaqSentimentRequestBody.class));
+        assertThat(actualResponse).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .successes(List.of(success("7", "0.1")))
+                .errors(List.of(emptyTextError.toBuilder()
+                        .recordNumber(2L)
+                        .build()))
+                .build());
+    }
+
+    @Test
+    void postSentiment_cachedErrorAndMaqSuccess_badRequest() {
+        negativeCache.put(TextHash.of(" "), MaqSentimentResponseErrorBodyElement.builder()
+                .property("text")
+                .recordNumber(1L)
+                .validator("Empty string check")
+                .value("null")
+                .message("InvalidJSONError: The ‘text’ passed in json is empty")
+                .build());
+        when(maqCoalescingAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                        .statusCode(200)
+                        .successes(List.of(success("2", "0.2")))
+                        .build()));
+
+        MaqSentimentResponse actualResponse = getUnchecked(maqCachingAsyncClient.postSentiment(
+                MaqSentimentRequestBody.builder()
+                        .data(List.of(element("1", " "), element("2", "new")))
+                        .build()));
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(400);
+        assertThat(actualResponse.getSuccesses()).containsExactly(success("2", "0.2"));
+        assertThat(actualResponse.getErrors()).hasSize(1);
+    }
+
+    @Test
+    void postSentiment_maqUnavailable_keepsItsStatusCode() {
+        memoryCache.put(TextHash.of("cached"), new BigDecimal("0.1"));
+        when(maqCoalescingAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                        .statusCode(503)
+                        .message("Service Unavailable")
+                        .build()));
+
+        MaqSentimentResponse actualResponse = getUnchecked(maqCachingAsyncClient.postSentiment(
+                MaqSentimentRequestBody.builder()
+                        .data(List.of(element("1", "cached"), element("2", "new")))
+                        .build()));
+
+        assertThat(actualResponse).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(503)
+                .message("Service Unavailable")
+                .successes(List.of(success("1", "0.1")))
+                .build());
+    }
+}
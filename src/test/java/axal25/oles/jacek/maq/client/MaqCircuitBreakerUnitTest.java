@@ -0,0 +1,228 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.http.CircuitBreakerOpenException;
+import axal25.oles.jacek.http.DeadlineExceededException;
+import axal25.oles.jacek.http.TestHttpResponse;
+import axal25.oles.jacek.http.TestTicker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MaqCircuitBreakerUnitTest {
+    private static final Duration SLOW_CALL = Duration.ofSeconds(1L);
+    private static final Duration OPEN = Duration.ofSeconds(10L);
+    private final TestTicker ticker = new TestTicker();
+    private MaqCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreaker = new MaqCircuitBreaker(10, 4, 0.5, SLOW_CALL, 0.5, OPEN, 2, ticker);
+    }
+
+    private static HttpResponse<String> response(int statusCode) {
+        return TestHttpResponse.<String>builder()
+                .statusCode(statusCode)
+                .build();
+    }
+
+    private void call(int statusCode) {
+        call(statusCode, Duration.ZERO);
+    }
+
+    private void call(int statusCode, Duration duration) {
+        MaqCircuitBreaker.Permission permission = assertDoesNotThrow(() -> circuitBreaker.acquire());
+        permission.start();
+        ticker.advance(duration);
+        permission.release(response(statusCode), null);
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(503);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void release_failuresBelowMinimumCalls_staysClosed() {
+        for (int i = 0; i < 3; i++) {
+            call(500);
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getStatistics().getFailureRate()).isEqualTo(1.0);
+    }
+
+    @Test
+    void release_failureRateBelowThreshold_staysClosed() {
+        for (int i = 0; i < 6; i++) {
+            call(200);
+        }
+        for (int i = 0; i < 4; i++) {
+            call(500);
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getStatistics().getBufferedCalls()).isEqualTo(10);
+    }
+
+    @Test
+    void release_failureRateReachesThreshold_opens() {
+        call(200);
+        call(200);
+        call(500);
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.CLOSED);
+
+        MaqCircuitBreaker.Permission permission = assertDoesNotThrow(() -> circuitBreaker.acquire());
+        permission.start();
+        permission.release(null, new IOException("stub exception message"));
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void release_slowCallRateReachesThreshold_opens() {
+        call(200);
+        call(200);
+        call(200, SLOW_CALL);
+        call(200, SLOW_CALL);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void release_clientErrors_notFailures() {
+        for (int i = 0; i < 10; i++) {
+            call(400);
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getStatistics().getFailureRate()).isEqualTo(0.0);
+    }
+
+    @Test
+    void acquire_open_failsFast() {
+        open();
+        ticker.advance(Duration.ofSeconds(4L));
+
+        CircuitBreakerOpenException exception =
+                assertThrows(CircuitBreakerOpenException.class, () -> circuitBreaker.acquire());
+
+        assertThat(exception.getRemainingOpen()).isEqualTo(Duration.ofSeconds(6L));
+        assertThat(circuitBreaker.getStatistics().getNotPermittedCalls()).isEqualTo(1L);
+    }
+
+    @Test
+    void acquire_openDurationPassed_permitsLimitedTrialCalls() {
+        open();
+        ticker.advance(OPEN);
+
+        assertDoesNotThrow(() -> circuitBreaker.acquire());
+        assertDoesNotThrow(() -> circuitBreaker.acquire());
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.HALF_OPEN);
+        assertThrows(CircuitBreakerOpenException.class, () -> circuitBreaker.acquire());
+    }
+
+    @Test
+    void release_trialCallsSucceed_closes() {
+        open();
+        ticker.advance(OPEN);
+
+        call(200);
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.HALF_OPEN);
+        call(200);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getStatistics().getBufferedCalls()).isEqualTo(0);
+    }
+
+    @Test
+    void release_trialCallsFail_reopens() {
+        open();
+        ticker.advance(OPEN);
+
+        call(200);
+        call(503);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.getStatistics().getRemainingOpen()).isEqualTo(OPEN);
+    }
+
+    @Test
+    void release_trialCallAbandoned_freesTrialSlot() {
+        open();
+        ticker.advance(OPEN);
+        MaqCircuitBreaker.Permission first = assertDoesNotThrow(() -> circuitBreaker.acquire());
+        MaqCircuitBreaker.Permission second = assertDoesNotThrow(() -> circuitBreaker.acquire());
+
+        first.release(null, null);
+        second.start();
+        second.release(null, new CancellationException());
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.HALF_OPEN);
+        assertDoesNotThrow(() -> circuitBreaker.acquire());
+    }
+
+    @Test
+    void release_callersShortDeadlinesExceeded_notFailures() {
+        for (int i = 0; i < 10; i++) {
+            MaqCircuitBreaker.Permission permission = assertDoesNotThrow(() -> circuitBreaker.acquire());
+            permission.start();
+            ticker.advance(Duration.ofMillis(50L));
+            permission.release(null, new DeadlineExceededException("stub exception message"));
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getStatistics().getBufferedCalls()).isEqualTo(0);
+    }
+
+    @Test
+    void release_deadlineExceededAfterSlowCall_countedAsSlowNotFailed() {
+        call(200);
+        MaqCircuitBreaker.Permission permission = assertDoesNotThrow(() -> circuitBreaker.acquire());
+        permission.start();
+        ticker.advance(SLOW_CALL);
+
+        permission.release(null, new CompletionException(new DeadlineExceededException("stub exception message")));
+
+        assertThat(circuitBreaker.getStatistics().getBufferedCalls()).isEqualTo(2);
+        assertThat(circuitBreaker.getStatistics().getFailureRate()).isEqualTo(0.0);
+        assertThat(circuitBreaker.getStatistics().getSlowCallRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void release_permittedBeforeOpening_notRecorded() {
+        MaqCircuitBreaker.Permission late = assertDoesNotThrow(() -> circuitBreaker.acquire());
+        late.start();
+        open();
+        ticker.advance(OPEN);
+        call(200);
+
+        late.release(response(503), null);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MaqCircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.getStatistics().getFailureRate()).isEqualTo(0.0);
+    }
+
+    @Test
+    void neverOpen_failures_alwaysPermits() {
+        MaqCircuitBreaker neverOpen = MaqCircuitBreaker.neverOpen();
+
+        for (int i = 0; i < 10; i++) {
+            MaqCircuitBreaker.Permission permission = assertDoesNotThrow(neverOpen::acquire);
+            permission.start();
+            permission.release(response(503), null);
+        }
+
+        assertThat(neverOpen.getState()).isEqualTo(MaqCircuitBreaker.State.CLOSED);
+    }
+}
@@ -1,6 +1,7 @@
 package axal25.oles.jacek.maq.client;
 
 import axal25.oles.jacek.http.HttpContainer;
+import axal25.oles.jacek.http.HttpClientPool;
 import axal25.oles.jacek.maq.model.MaqOmniSerializer;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
@@ -11,7 +12,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.util.List;
-import java.util.concurrent.Executor;
 import java.util.stream.IntStream;
 
 import static com.google.common.truth.Truth.assertThat;
@@ -20,7 +20,7 @@ import static java.util.stream.Collectors.toList;
 @SpringBootTest
 public class MaqClientIntegrationTest {
     @Autowired
-    private Executor executor;
+    private HttpClientPool httpClientPool;
     @Autowired
     private MaqOmniSerializer maqOmniSerializer;
     @Autowired
@@ -124,7 +124,7 @@ public class MaqClientIntegrationTest {
                                 .text("test")
                                 .build()))
                 .build();
-        MaqClientCommons maqClientCommons = new MaqClientCommons("bad maq api key value", executor);
+        MaqClientCommons maqClientCommons = new MaqClientCommons("bad maq api key value", httpClientPool);
         MaqClient maqClient = new MaqClient(maqClientCommons, maqOmniSerializer);
 
         MaqSentimentResponse maqSentimentResponse = maqClient.postSentiment(maqSentimentRequestBody);
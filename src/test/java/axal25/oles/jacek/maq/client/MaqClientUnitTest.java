@@ -1,5 +1,6 @@
 package axal25.oles.jacek.maq.client;
 
+import axal25.oles.jacek.http.HttpClientPool;
 import axal25.oles.jacek.maq.model.MaqOmniSerializer;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
 import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
@@ -17,6 +18,7 @@ import org.junit.jupiter.api.Test;
 
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.time.Duration;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -34,6 +36,7 @@ public class MaqClientUnitTest {
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final String maqKeyValueStub = "STUB_MAQ_KEY_VALUE";
     private Executor executor;
+    private HttpClientPool httpClientPool;
     private MaqClientCommons maqClientCommonsMock;
     private MaqOmniSerializer maqOmniSerializerMock;
     private MaqClient maqClientMock;
@@ -48,8 +51,13 @@ public class MaqClientUnitTest {
     @BeforeEach
     void setUp() {
         executor = new CurrentThreadExecutor();
+        httpClientPool = new HttpClientPool(
+                executor,
+                HttpClient.Version.HTTP_2,
+                Duration.ofSeconds(1L),
+                1);
         maqClientCommonsMock = mock(MaqClientCommons.class, withSettings()
-                .useConstructor(maqKeyValueStub, executor)
+                .useConstructor(maqKeyValueStub, httpClientPool)
                 .defaultAnswer(CALLS_REAL_METHODS));
         httpClientMock = mock(HttpClient.class);
         when(maqClientCommonsMock.getHttpClient()).thenReturn(httpClientMock);
@@ -0,0 +1,228 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.mockito.Mockito.*;
+
+public class MaqCoalescingAsyncClientUnitTest {
+    private final List<MaqSentimentRequestBody> sentBodies = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<MaqSentimentResponse>> pendingResponses = new CopyOnWriteArrayList<>();
+    private MaqCoalescingAsyncClient maqCoalescingAsyncClient;
+
+    @BeforeEach
+    void setUp() {
+        MaqAsyncClient maqAsyncClientMock = mock(MaqAsyncClient.class);
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class))).thenAnswer(invocation -> {
+            sentBodies.add(invocation.getArgument(0));
+            CompletableFuture<MaqSentimentResponse> pending = new CompletableFuture<>();
+            pendingResponses.add(pending);
+            return pending;
+        });
+        maqCoalescingAsyncClient = new MaqCoalescingAsyncClient(maqAsyncClientMock);
+    }
+
+    private static MaqSentimentRequestBody requestBody(MaqSentimentRequestBodyDataElement... elements) {
+        return MaqSentimentRequestBody.builder()
+                .data(List.of(elements))
+                .build();
+    }
+
+    private static MaqSentimentRequestBodyDataElement element(String id, String text) {
+        return MaqSentimentRequestBodyDataElement.builder()
+                .id(id)
+                .text(text)
+                .build();
+    }
+
+    private static MaqSentimentResponseSuccessBodyElement success(String id, String sentiment) {
+        return MaqSentimentResponseSuccessBodyElement.builder()
+                .id(id)
+                .sentiment(new BigDecimal(sentiment))
+                .build();
+    }
+
+    @Test
+    void postSentiment_duplicatesWithinBody_sentOnceAndFannedOut() {
+        CompletableFuture<MaqSentimentResponse> response = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("1", "good"),
+                element("2", "bad"),
+                element("3", " good ")));
+
+        assertThat(sentBodies).containsExactly(requestBody(element("1", "good"), element("2", "bad")));
+        pendingResponses.get(0).complete(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(success("1", "0.9"), success("2", "0.1")))
+                .build());
+
+        assertThat(getUnchecked(response)).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(success("1", "0.9"), success("2", "0.1"), success("3", "0.9")))
+                .build());
+        assertThat(maqCoalescingAsyncClient.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    void postSentiment_textInFlightForAnotherCaller_shared() {
+        CompletableFuture<MaqSentimentResponse> first = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("1", "shared")));
+        CompletableFuture<MaqSentimentResponse> second = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("7", "shared"),
+                element("8", "own")));
+
+        assertThat(sentBodies).containsExactly(
+                requestBody(element("1", "shared")),
+                requestBody(element("8", "own")));
+        pendingResponses.get(1).complete(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(success("8", "0.8")))
+                .build());
+        assertThat(second.isDone()).isFalse();
+        pendingResponses.get(0).complete(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(success("1", "0.5")))
+                .build());
+
+        assertThat(getUnchecked(first).getSuccesses()).containsExactly(success("1", "0.5"));
+        assertThat(getUnchecked(second).getSuccesses()).containsExactly(success("7", "0.5"), success("8", "0.8"))
+                .inOrder();
+    }
+
+    @Test
+    void postSentiment_duplicateRejected_errorFannedOutWithOriginalRecordNumbers() {
+        CompletableFuture<MaqSentimentResponse> response = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("1", ""),
+                element("2", "fine"),
+                element("3", "")));
+        MaqSentimentResponseErrorBodyElement emptyTextError = MaqSentimentResponseErrorBodyElement.builder()
+                .property("text")
+                .recordNumber(1L)
+                .validator("Empty string check")
+                .build();
+
+        pendingResponses.get(0).complete(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .errors(List.of(emptyTextError))
+                .build());
+
+        assertThat(getUnchecked(response)).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .errors(List.of(
+                        emptyTextError,
+                        emptyTextError.toBuilder()
+                                .recordNumber(3L)
+                                .build()))
+                .build());
+    }
+
+    @Test
+    void postSentiment_sharedBodyRejectedForAnotherRecord_waiterResendsInsteadOfCopyingStatus() {
+        CompletableFuture<MaqSentimentResponse> first = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("1", ""),
+                element("2", "shared")));
+        CompletableFuture<MaqSentimentResponse> second = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("7", "shared")));
+        MaqSentimentResponseErrorBodyElement emptyTextError = MaqSentimentResponseErrorBodyElement.builder()
+                .property("text")
+                .recordNumber(1L)
+                .validator("Empty string check")
+                .build();
+
+        assertThat(sentBodies).hasSize(1);
+        pendingResponses.get(0).complete(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .message("Bad Request")
+                .errors(List.of(emptyTextError))
+                .build());
+
+        assertThat(getUnchecked(first)).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .message("Bad Request")
+                .errors(List.of(emptyTextError))
+                .build());
+        assertThat(second.isDone()).isFalse();
+        assertThat(sentBodies.get(1)).isEqualTo(requestBody(element("7", "shared")));
+        pendingResponses.get(1).complete(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(success("7", "0.6")))
+                .build());
+
+        assertThat(getUnchecked(second)).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(success("7", "0.6")))
+                .build());
+        assertThat(maqCoalescingAsyncClient.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    void postSentiment_sharedCallFailed_waiterGetsItsOwnResendsStatus() {
+        CompletableFuture<MaqSentimentResponse> first = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("1", "shared")));
+        CompletableFuture<MaqSentimentResponse> second = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("7", "shared"),
+                element("8", "shared")));
+
+        pendingResponses.get(0).complete(MaqSentimentResponse.builder()
+                .statusCode(503)
+                .message("Service Unavailable")
+                .build());
+
+        assertThat(getUnchecked(first).getStatusCode()).isEqualTo(503);
+        assertThat(sentBodies.get(1)).isEqualTo(requestBody(element("7", "shared")));
+        pendingResponses.get(1).complete(MaqSentimentResponse.builder()
+                .statusCode(429)
+                .message("Too Many Requests")
+                .build());
+
+        assertThat(getUnchecked(second)).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(429)
+                .message("Too Many Requests")
+                .build());
+    }
+
+    @Test
+    void postSentiment_sharedTextRejected_waiterGetsItsErrorsWithItsRecordNumber() {
+        CompletableFuture<MaqSentimentResponse> first = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("1", "  ")));
+        CompletableFuture<MaqSentimentResponse> second = maqCoalescingAsyncClient.postSentiment(requestBody(
+                element("7", "own"),
+                element("8", "  ")));
+        MaqSentimentResponseErrorBodyElement blankTextError = MaqSentimentResponseErrorBodyElement.builder()
+                .property("text")
+                .recordNumber(1L)
+                .validator("Blank string check")
+                .build();
+
+        pendingResponses.get(1).complete(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(success("7", "0.7")))
+                .build());
+        pendingResponses.get(0).complete(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .message("Bad Request")
+                .errors(List.of(blankTextError))
+                .build());
+
+        assertThat(sentBodies).hasSize(2);
+        assertThat(getUnchecked(first).getErrors()).containsExactly(blankTextError);
+        assertThat(getUnchecked(second)).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .successes(List.of(success("7", "0.7")))
+                .errors(List.of(blankTextError.toBuilder()
+                        .recordNumber(2L)
+                        .build()))
+                .build());
+    }
+}
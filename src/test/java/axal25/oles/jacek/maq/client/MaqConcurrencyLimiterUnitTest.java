@@ -0,0 +1,138 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.http.TestHttpResponse;
+import axal25.oles.jacek.http.TestTicker;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+
+public class MaqConcurrencyLimiterUnitTest {
+    private final TestTicker ticker = new TestTicker();
+
+    private static HttpResponse<String> response(int statusCode) {
+        return TestHttpResponse.<String>builder()
+                .statusCode(statusCode)
+                .build();
+    }
+
+    // takes every permit the current limit allows and releases them all after rttMillis
+    private void saturate(MaqConcurrencyLimiter limiter, long rttMillis) {
+        List<MaqConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = limiter.getLimit(); i > 0; i--) {
+            permits.add(getUnchecked(limiter.acquire()));
+        }
+        ticker.advance(Duration.ofMillis(rttMillis));
+        permits.forEach(permit -> permit.release(response(200), null));
+    }
+
+    @Test
+    void acquire_overLimit_waitsForRelease() {
+        MaqConcurrencyLimiter limiter = new MaqConcurrencyLimiter(1, 1, 1, ticker);
+
+        CompletableFuture<MaqConcurrencyLimiter.Permit> first = limiter.acquire();
+        CompletableFuture<MaqConcurrencyLimiter.Permit> second = limiter.acquire();
+
+        assertThat(first.isDone()).isTrue();
+        assertThat(second.isDone()).isFalse();
+        assertThat(limiter.getStatistics().getQueueDepth()).isEqualTo(1);
+        getUnchecked(first).release(response(200), null);
+        assertThat(second.isDone()).isTrue();
+        assertThat(limiter.getStatistics().getInFlight()).isEqualTo(1);
+        assertThat(limiter.getStatistics().getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    void acquire_waiterCancelled_permitHandedBack() {
+        MaqConcurrencyLimiter limiter = new MaqConcurrencyLimiter(1, 1, 1, ticker);
+        CompletableFuture<MaqConcurrencyLimiter.Permit> first = limiter.acquire();
+        CompletableFuture<MaqConcurrencyLimiter.Permit> second = limiter.acquire();
+
+        second.cancel(false);
+        getUnchecked(first).release(response(200), null);
+
+        assertThat(limiter.getStatistics().getInFlight()).isEqualTo(0);
+        assertThat(limiter.acquire().isDone()).isTrue();
+    }
+
+    @Test
+    void release_steadyLatencyAtLimit_limitGrows() {
+        MaqConcurrencyLimiter limiter = new MaqConcurrencyLimiter(10, 1, 100, ticker);
+
+        for (int i = 0; i < 20; i++) {
+            saturate(limiter, 10L);
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(10);
+        assertThat(limiter.getLimit()).isAtMost(100);
+    }
+
+    @Test
+    void release_latencyRises_limitShrinks() {
+        MaqConcurrencyLimiter limiter = new MaqConcurrencyLimiter(10, 1, 100, ticker);
+        for (int i = 0; i < 20; i++) {
+            saturate(limiter, 10L);
+        }
+        int limitBefore = limiter.getLimit();
+
+        saturate(limiter, 50L);
+
+        assertThat(limiter.getLimit()).isLessThan(limitBefore);
+    }
+
+    @Test
+    void release_lightTraffic_limitUnchanged() {
+        MaqConcurrencyLimiter limiter = new MaqConcurrencyLimiter(10, 1, 100, ticker);
+
+        for (int i = 0; i < 20; i++) {
+            MaqConcurrencyLimiter.Permit permit = getUnchecked(limiter.acquire());
+            ticker.advance(Duration.ofMillis(10L));
+            permit.release(response(200), null);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+        assertThat(limiter.getStatistics().getSamples()).isEqualTo(20L);
+    }
+
+    @Test
+    void release_dropped_limitDecreasedMultiplicatively() {
+        MaqConcurrencyLimiter limiter = new MaqConcurrencyLimiter(50, 1, 100, ticker);
+
+        getUnchecked(limiter.acquire()).release(response(503), null);
+        getUnchecked(limiter.acquire()).release(null, new IOException("stub exception message"));
+
+        MaqConcurrencyLimiterStatistics statistics = limiter.getStatistics();
+        assertThat(statistics.getLimit()).isEqualTo((int) (50 * MaqConcurrencyLimiter.DROP_RATIO * MaqConcurrencyLimiter.DROP_RATIO));
+        assertThat(statistics.getDrops()).isEqualTo(2L);
+    }
+
+    @Test
+    void release_repeatedDrops_limitNotBelowMin() {
+        MaqConcurrencyLimiter limiter = new MaqConcurrencyLimiter(5, 2, 10, ticker);
+
+        for (int i = 0; i < 50; i++) {
+            getUnchecked(limiter.acquire()).release(response(429), null);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void release_calledTwice_countedOnce() {
+        MaqConcurrencyLimiter limiter = new MaqConcurrencyLimiter(5, 1, 10, ticker);
+        MaqConcurrencyLimiter.Permit permit = getUnchecked(limiter.acquire());
+
+        permit.release(response(200), null);
+        permit.release(response(200), null);
+
+        assertThat(limiter.getStatistics().getInFlight()).isEqualTo(0);
+        assertThat(limiter.getStatistics().getSamples()).isEqualTo(1L);
+    }
+}
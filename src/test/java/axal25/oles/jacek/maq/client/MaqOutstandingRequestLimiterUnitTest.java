@@ -0,0 +1,172 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.executor.BulkheadExecutor;
+import axal25.oles.jacek.executor.SaturationPolicy;
+import axal25.oles.jacek.http.Deadline;
+import axal25.oles.jacek.http.DeadlineExceededException;
+import axal25.oles.jacek.http.OutstandingLimitExceededException;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MaqOutstandingRequestLimiterUnitTest {
+
+    @Test
+    void acquire_overMaxRequests_asyncWait_waitsForRelease() {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(1, 100L, OverflowPolicy.ASYNC_WAIT);
+
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> first = limiter.acquire(10L, Deadline.none());
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> second = limiter.acquire(10L, Deadline.none());
+
+        assertThat(first.isDone()).isTrue();
+        assertThat(second.isDone()).isFalse();
+        assertThat(limiter.getStatistics().getQueueDepth()).isEqualTo(1);
+        getUnchecked(first).release();
+        assertThat(second.isDone()).isTrue();
+        MaqOutstandingRequestLimiterStatistics statistics = limiter.getStatistics();
+        assertThat(statistics.getInFlightRequests()).isEqualTo(1);
+        assertThat(statistics.getInFlightBytes()).isEqualTo(10L);
+        assertThat(statistics.getAcquisitions()).isEqualTo(2L);
+        assertThat(statistics.getDelayedAcquisitions()).isEqualTo(1L);
+    }
+
+    @Test
+    void acquire_overMaxBytes_waitsInArrivalOrder() {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(10, 100L, OverflowPolicy.ASYNC_WAIT);
+
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> first = limiter.acquire(60L, Deadline.none());
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> large = limiter.acquire(60L, Deadline.none());
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> small = limiter.acquire(10L, Deadline.none());
+
+        assertThat(large.isDone()).isFalse();
+        assertThat(small.isDone()).isFalse();
+        getUnchecked(first).release();
+        assertThat(large.isDone()).isTrue();
+        assertThat(small.isDone()).isTrue();
+        assertThat(limiter.getStatistics().getInFlightBytes()).isEqualTo(70L);
+    }
+
+    @Test
+    void acquire_largerThanMaxBytes_permittedWhenNothingInFlight() {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(10, 100L, OverflowPolicy.FAIL_FAST);
+
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> permit = limiter.acquire(1000L, Deadline.none());
+
+        assertThat(permit.isDone()).isTrue();
+        assertThat(permit.isCompletedExceptionally()).isFalse();
+    }
+
+    @Test
+    void acquire_overLimit_failFast_failsWithOutstandingLimitExceededException() {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(1, 100L, OverflowPolicy.FAIL_FAST);
+        limiter.acquire(10L, Deadline.none());
+
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> rejected = limiter.acquire(10L, Deadline.none());
+
+        ExecutionException actualException = assertThrows(ExecutionException.class, rejected::get);
+        assertThat(actualException.getCause()).isInstanceOf(OutstandingLimitExceededException.class);
+        assertThat(actualException.getCause()).hasMessageThat().isEqualTo(
+                "MAQ outstanding request limit is reached, in flight are: 1 requests of 10 bytes.");
+        assertThat(limiter.getStatistics().getRejections()).isEqualTo(1L);
+    }
+
+    @Test
+    void acquire_overLimit_block_returnsOnceReleased() throws InterruptedException {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(1, 100L, OverflowPolicy.BLOCK);
+        MaqOutstandingRequestLimiter.Permit first = getUnchecked(limiter.acquire(10L, Deadline.none()));
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        Thread blocked = new Thread(() -> {
+            limiter.acquire(10L, Deadline.none());
+            acquired.countDown();
+        });
+        blocked.start();
+
+        assertThat(acquired.await(100L, TimeUnit.MILLISECONDS)).isFalse();
+        first.release();
+        assertTrue(acquired.await(10L, TimeUnit.SECONDS));
+        blocked.join();
+    }
+
+    @Test
+    void acquire_overLimit_blockOnPoolThread_waitsAsynchronously() throws Exception {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(1, 100L, OverflowPolicy.BLOCK);
+        MaqOutstandingRequestLimiter.Permit first = getUnchecked(limiter.acquire(10L, Deadline.none()));
+
+        try (BulkheadExecutor executor = new BulkheadExecutor("test", 1, 1, SaturationPolicy.ABORT)) {
+            CompletableFuture<MaqOutstandingRequestLimiter.Permit> second = CompletableFuture
+                    .supplyAsync(() -> limiter.acquire(10L, Deadline.none()), executor)
+                    .get(10L, TimeUnit.SECONDS);
+
+            assertThat(second.isDone()).isFalse();
+            first.release();
+            assertThat(second.isDone()).isTrue();
+        }
+    }
+
+    @Test
+    void acquire_deadlineExpiresWhileWaiting_failsAndLeavesQueue() {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(1, 100L, OverflowPolicy.ASYNC_WAIT);
+        limiter.acquire(10L, Deadline.none());
+
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> waiting =
+                limiter.acquire(10L, Deadline.after(Duration.ofMillis(10L)));
+
+        ExecutionException actualException = assertThrows(ExecutionException.class, waiting::get);
+        assertThat(actualException.getCause()).isInstanceOf(DeadlineExceededException.class);
+        assertThat(limiter.getStatistics().getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    void acquire_waiterCancelled_permitHandedBack() {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(1, 100L, OverflowPolicy.ASYNC_WAIT);
+        MaqOutstandingRequestLimiter.Permit first = getUnchecked(limiter.acquire(10L, Deadline.none()));
+        CompletableFuture<MaqOutstandingRequestLimiter.Permit> cancelled = limiter.acquire(10L, Deadline.none());
+
+        cancelled.cancel(false);
+        first.release();
+
+        assertThat(limiter.getStatistics().getInFlightRequests()).isEqualTo(0);
+        assertThat(limiter.acquire(10L, Deadline.none()).isDone()).isTrue();
+    }
+
+    @Test
+    void release_twice_releasesOnce() {
+        MaqOutstandingRequestLimiter limiter = new MaqOutstandingRequestLimiter(2, 100L, OverflowPolicy.ASYNC_WAIT);
+        MaqOutstandingRequestLimiter.Permit first = getUnchecked(limiter.acquire(10L, Deadline.none()));
+        limiter.acquire(20L, Deadline.none());
+
+        first.release();
+        first.release();
+
+        assertThat(limiter.getStatistics().getInFlightRequests()).isEqualTo(1);
+        assertThat(limiter.getStatistics().getInFlightBytes()).isEqualTo(20L);
+    }
+
+    @Test
+    void getBytes_sumsElementEstimates() {
+        MaqSentimentRequestBodyDataElement element = MaqSentimentRequestBodyDataElement.builder()
+                .id("1")
+                .text("abc")
+                .build();
+        MaqSentimentRequestBody maqSentimentRequestBody = MaqSentimentRequestBody.builder()
+                .data(List.of(element, element))
+                .build();
+
+        assertThat(MaqOutstandingRequestLimiter.getBytes(maqSentimentRequestBody))
+                .isEqualTo(2L * (MaqSentimentBatcher.ELEMENT_JSON_OVERHEAD_BYTES + 4L));
+        assertThat(MaqOutstandingRequestLimiter.getBytes(null)).isEqualTo(0L);
+    }
+}
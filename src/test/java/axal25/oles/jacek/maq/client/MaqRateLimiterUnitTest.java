@@ -0,0 +1,193 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.http.Deadline;
+import axal25.oles.jacek.http.DeadlineExceededException;
+import axal25.oles.jacek.http.TestHttpResponse;
+import axal25.oles.jacek.http.TestTicker;
+import axal25.oles.jacek.util.CurrentThreadExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MaqRateLimiterUnitTest {
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC);
+    private final TestTicker ticker = new TestTicker();
+
+    private MaqRateLimiter rateLimiter(double requestsPerSecond, double recordsPerSecond) {
+        return new MaqRateLimiter(requestsPerSecond, recordsPerSecond, new CurrentThreadExecutor(), ticker, CLOCK);
+    }
+
+    private static HttpResponse<String> response(int statusCode, String retryAfter) {
+        return TestHttpResponse.<String>builder()
+                .statusCode(statusCode)
+                .httpHeaders(HttpHeaders.of(Map.of("Retry-After", List.of(retryAfter)), (name, value) -> true))
+                .build();
+    }
+
+    @Test
+    void acquireAsync_withinOneSecondBurst_notDelayed() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, Double.POSITIVE_INFINITY);
+
+        for (int i = 0; i <= 100; i++) {
+            assertThat(rateLimiter.acquireAsync(1).isDone()).isTrue();
+        }
+
+        MaqRateLimiterStatistics statistics = rateLimiter.getStatistics();
+        assertThat(statistics.getAcquisitions()).isEqualTo(101L);
+        assertThat(statistics.getDelayedAcquisitions()).isEqualTo(0L);
+        assertThat(statistics.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    void acquireAsync_requestsBurstExhausted_delayedNotRejected() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, Double.POSITIVE_INFINITY);
+        for (int i = 0; i <= 100; i++) {
+            rateLimiter.acquireAsync(1);
+        }
+
+        CompletableFuture<Void> delayed = rateLimiter.acquireAsync(1);
+
+        assertThat(delayed.isDone()).isFalse();
+        assertThat(rateLimiter.getStatistics().getQueueDepth()).isEqualTo(1);
+        assertDoesNotThrow(() -> getUnchecked(delayed));
+        MaqRateLimiterStatistics statistics = rateLimiter.getStatistics();
+        assertThat(statistics.getQueueDepth()).isEqualTo(0);
+        assertThat(statistics.getAcquisitions()).isEqualTo(102L);
+        assertThat(statistics.getDelayedAcquisitions()).isEqualTo(1L);
+    }
+
+    @Test
+    void acquireAsync_recordsBurstExhausted_delayed() {
+        MaqRateLimiter rateLimiter = rateLimiter(Double.POSITIVE_INFINITY, 1000.0);
+
+        CompletableFuture<Void> first = rateLimiter.acquireAsync(1010);
+        CompletableFuture<Void> second = rateLimiter.acquireAsync(1);
+
+        assertThat(first.isDone()).isTrue();
+        assertThat(second.isDone()).isFalse();
+        assertDoesNotThrow(() -> getUnchecked(second));
+    }
+
+    @Test
+    void charge_recordsBurstExhausted_nextCallDelayed() {
+        MaqRateLimiter rateLimiter = rateLimiter(Double.POSITIVE_INFINITY, 1000.0);
+
+        rateLimiter.charge(1010);
+        CompletableFuture<Void> next = rateLimiter.acquireAsync(1);
+
+        assertThat(next.isDone()).isFalse();
+        assertDoesNotThrow(() -> getUnchecked(next));
+    }
+
+    @Test
+    void acquire_withinBurst_returnsImmediately() {
+        MaqRateLimiter rateLimiter = rateLimiter(1.0, 10.0);
+
+        assertDoesNotThrow(() -> rateLimiter.acquire(10));
+
+        assertThat(rateLimiter.getStatistics().getDelayedAcquisitions()).isEqualTo(0L);
+    }
+
+    @Test
+    void onResponse_tooManyRequestsWithRetryAfter_pausesDispatch() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, 1000.0);
+
+        rateLimiter.onResponse(response(429, "2"));
+        CompletableFuture<Void> paused = rateLimiter.acquireAsync(1);
+
+        assertThat(paused.isDone()).isFalse();
+        MaqRateLimiterStatistics statistics = rateLimiter.getStatistics();
+        assertThat(statistics.getPauses()).isEqualTo(1L);
+        assertThat(statistics.getRemainingPause()).isEqualTo(Duration.ofSeconds(2L));
+        ticker.advance(Duration.ofSeconds(2L));
+        assertThat(rateLimiter.getStatistics().getRemainingPause()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void acquireAsync_pauseLongerThanDeadline_failsRightAwayWithoutTakingTokens() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, 10.0);
+        rateLimiter.onResponse(response(429, "60"));
+
+        CompletableFuture<Void> overDeadline = rateLimiter.acquireAsync(1_000, Deadline.after(Duration.ofSeconds(1L)));
+
+        ExecutionException actualException = assertThrows(ExecutionException.class, overDeadline::get);
+        assertThat(actualException).hasCauseThat().isInstanceOf(DeadlineExceededException.class);
+        ticker.advance(Duration.ofSeconds(60L));
+        assertThat(rateLimiter.acquireAsync(10).isDone()).isTrue();
+    }
+
+    @Test
+    void acquireAsync_deadlineCancelledWhileWaiting_failsAndLeavesQueue() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, 1000.0);
+        rateLimiter.onResponse(response(429, "2"));
+        Deadline deadline = Deadline.none();
+
+        CompletableFuture<Void> paused = rateLimiter.acquireAsync(1, deadline);
+        assertThat(rateLimiter.getStatistics().getQueueDepth()).isEqualTo(1);
+        deadline.cancel();
+
+        assertThrows(CancellationException.class, paused::get);
+        assertThat(rateLimiter.getStatistics().getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    void acquire_pauseLongerThanDeadline_throwsRightAway() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, 1000.0);
+        rateLimiter.onResponse(response(503, "60"));
+
+        assertThrows(DeadlineExceededException.class,
+                () -> rateLimiter.acquire(1, Deadline.after(Duration.ofSeconds(1L))));
+    }
+
+    @Test
+    void onResponse_serviceUnavailableWithRetryAfterDate_pausesUntilDate() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, 1000.0);
+
+        rateLimiter.onResponse(response(503, "Mon, 01 Jan 2024 00:00:05 GMT"));
+
+        assertThat(rateLimiter.getStatistics().getRemainingPause()).isEqualTo(Duration.ofSeconds(5L));
+    }
+
+    @Test
+    void onResponse_retryAfterOfCenturies_pauseClampedToMinutes() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, 1000.0);
+
+        assertDoesNotThrow(() -> rateLimiter.onResponse(response(429, "99999999999")));
+
+        assertThat(rateLimiter.getStatistics().getRemainingPause()).isEqualTo(Duration.ofMinutes(5L));
+    }
+
+    @Test
+    void onResponse_retryAfterDateFarAhead_pauseClampedToMinutes() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, 1000.0);
+
+        rateLimiter.onResponse(response(503, "Fri, 31 Dec 9999 23:59:59 GMT"));
+
+        assertThat(rateLimiter.getStatistics().getRemainingPause()).isEqualTo(Duration.ofMinutes(5L));
+    }
+
+    @Test
+    void onResponse_successWithRetryAfter_ignored() {
+        MaqRateLimiter rateLimiter = rateLimiter(100.0, 1000.0);
+
+        rateLimiter.onResponse(response(200, "2"));
+
+        assertThat(rateLimiter.getStatistics().getPauses()).isEqualTo(0L);
+        assertThat(rateLimiter.acquireAsync(1).isDone()).isTrue();
+    }
+}
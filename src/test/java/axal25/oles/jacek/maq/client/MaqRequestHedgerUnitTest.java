@@ -0,0 +1,228 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.http.TestTicker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MaqRequestHedgerUnitTest {
+    private final TestTicker ticker = new TestTicker();
+    // hedges are started by hand instead of after the hedge delay
+    private final List<Runnable> scheduled = Collections.synchronizedList(new ArrayList<>());
+    private final Executor executor = scheduled::add;
+    private final List<CompletableFuture<String>> sent = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        scheduled.clear();
+        sent.clear();
+    }
+
+    private MaqRequestHedger hedger(double maxHedgeRatio) {
+        MaqRequestHedger hedger = new MaqRequestHedger(true, 0.9, 10, 10, maxHedgeRatio, executor, ticker);
+        for (int i = 1; i <= 10; i++) {
+            hedger.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        return hedger;
+    }
+
+    private CompletableFuture<String> send() {
+        CompletableFuture<String> request = new CompletableFuture<>();
+        sent.add(request);
+        return request;
+    }
+
+    // the delayed executor hands the hedge over to the executor once its delay passes
+    private void awaitHedgeDelay() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (scheduled.isEmpty() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        synchronized (scheduled) {
+            scheduled.forEach(Runnable::run);
+            scheduled.clear();
+        }
+    }
+
+    @Test
+    void recordLatency_fullWindow_hedgeDelayIsPercentile() {
+        MaqRequestHedger hedger = hedger(0.1);
+
+        assertThat(hedger.getStatistics().getHedgeDelay()).isEqualTo(Duration.ofMillis(9L));
+    }
+
+    @Test
+    void hedge_tooFewSamples_notHedged() {
+        MaqRequestHedger hedger = new MaqRequestHedger(true, 0.9, 10, 10, 1.0, executor, ticker);
+
+        CompletableFuture<String> result = hedger.hedge(this::send);
+
+        assertThat(sent).hasSize(1);
+        assertThat(hedger.getStatistics().getHedgeDelay()).isNull();
+        sent.get(0).complete("primary");
+        assertThat(getUnchecked(result)).isEqualTo("primary");
+    }
+
+    @Test
+    void hedge_primaryAnswersBeforeDelay_notHedged() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(this::send);
+
+        sent.get(0).complete("primary");
+        awaitHedgeDelay();
+
+        assertThat(getUnchecked(result)).isEqualTo("primary");
+        assertThat(sent).hasSize(1);
+        assertThat(hedger.getStatistics().getHedges()).isEqualTo(0L);
+    }
+
+    @Test
+    void hedge_hedgeAnswersFirst_primaryCancelled() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(this::send);
+
+        awaitHedgeDelay();
+        assertThat(sent).hasSize(2);
+        sent.get(1).complete("hedge");
+
+        assertThat(getUnchecked(result)).isEqualTo("hedge");
+        assertThat(sent.get(0).isCancelled()).isTrue();
+        MaqRequestHedgerStatistics statistics = hedger.getStatistics();
+        assertThat(statistics.getHedges()).isEqualTo(1L);
+        assertThat(statistics.getHedgeWins()).isEqualTo(1L);
+    }
+
+    @Test
+    void hedge_primaryAnswersFirst_hedgeCancelled() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(this::send);
+
+        awaitHedgeDelay();
+        sent.get(0).complete("primary");
+
+        assertThat(getUnchecked(result)).isEqualTo("primary");
+        assertThat(sent.get(1).isCancelled()).isTrue();
+        assertThat(hedger.getStatistics().getHedgeWins()).isEqualTo(0L);
+    }
+
+    @Test
+    void hedge_primaryFails_hedgeStillWins() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(this::send);
+
+        awaitHedgeDelay();
+        sent.get(0).completeExceptionally(new IOException("stub exception message"));
+        assertThat(result.isDone()).isFalse();
+        sent.get(1).complete("hedge");
+
+        assertThat(getUnchecked(result)).isEqualTo("hedge");
+    }
+
+    @Test
+    void hedge_bothFail_failsWithLastFailure() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(this::send);
+        IOException stubException = new IOException("stub exception message");
+
+        awaitHedgeDelay();
+        sent.get(1).completeExceptionally(new IOException("first stub exception message"));
+        sent.get(0).completeExceptionally(stubException);
+
+        CompletionException actualException = assertThrows(CompletionException.class, result::join);
+        assertThat(actualException).hasCauseThat().isSameInstanceAs(stubException);
+    }
+
+    @Test
+    void hedge_budgetExhausted_notHedged() {
+        MaqRequestHedger hedger = hedger(0.0);
+
+        for (int i = 0; i < 11; i++) {
+            hedger.hedge(this::send);
+            awaitHedgeDelay();
+        }
+
+        MaqRequestHedgerStatistics statistics = hedger.getStatistics();
+        assertThat(statistics.getRequests()).isEqualTo(11L);
+        assertThat(statistics.getHedges()).isEqualTo(10L);
+        assertThat(statistics.getBudgetExhausted()).isEqualTo(1L);
+    }
+
+    @Test
+    void hedge_resultCancelled_bothCancelled() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(this::send);
+        awaitHedgeDelay();
+
+        result.cancel(true);
+
+        assertThat(sent.get(0).isCancelled()).isTrue();
+        assertThat(sent.get(1).isCancelled()).isTrue();
+    }
+
+    @Test
+    void hedge_primaryLoses_hedgeWins() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(this::send, "200"::equals);
+        awaitHedgeDelay();
+
+        sent.get(0).complete("503");
+
+        assertThat(result.isDone()).isFalse();
+        sent.get(1).complete("200");
+        assertThat(result.join()).isEqualTo("200");
+        assertThat(hedger.getStatistics().getHedgeWins()).isEqualTo(1L);
+    }
+
+    @Test
+    void hedge_bothLose_losingValuePreferredOverFailure() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(this::send, "200"::equals);
+        awaitHedgeDelay();
+
+        sent.get(0).complete("503");
+        sent.get(1).completeExceptionally(new IOException("stub exception message"));
+
+        assertThat(result.join()).isEqualTo("503");
+        assertThat(hedger.getStatistics().getHedgeWins()).isEqualTo(0L);
+    }
+
+    @Test
+    void hedge_primaryWinsWhileHedgeStarts_hedgeCancelled() {
+        MaqRequestHedger hedger = hedger(1.0);
+        CompletableFuture<String> result = hedger.hedge(() -> {
+            CompletableFuture<String> request = send();
+            if (sent.size() == 2) {
+                sent.get(0).complete("200");
+            }
+            return request;
+        });
+
+        awaitHedgeDelay();
+
+        assertThat(result.join()).isEqualTo("200");
+        assertThat(sent.get(1).isCancelled()).isTrue();
+    }
+
+    @Test
+    void disabled_neverHedged() {
+        MaqRequestHedger hedger = MaqRequestHedger.disabled();
+
+        CompletableFuture<String> result = hedger.hedge(this::send);
+
+        assertThat(result).isSameInstanceAs(sent.get(0));
+        assertThat(hedger.getStatistics().getRequests()).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,185 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.Mockito.*;
+
+public class MaqSentimentBatcherUnitTest {
+    private MaqAsyncClient maqAsyncClientMock;
+    private MaqSentimentBatcher maqSentimentBatcher;
+
+    @BeforeEach
+    void setUp() {
+        maqAsyncClientMock = mock(MaqAsyncClient.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (maqSentimentBatcher != null) {
+            maqSentimentBatcher.close();
+        }
+    }
+
+    @Test
+    void submit_maxCountReached_sendsSingleRequestAndMatchesSuccessesById() {
+        maqSentimentBatcher = new MaqSentimentBatcher(maqAsyncClientMock, 2, Long.MAX_VALUE, 60_000L);
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                        .statusCode(200)
+                        .successes(List.of(
+                                MaqSentimentResponseSuccessBodyElement.builder()
+                                        .id("2")
+                                        .sentiment(new BigDecimal("0.2"))
+                                        .build(),
+                                MaqSentimentResponseSuccessBodyElement.builder()
+                                        .id("1")
+                                        .sentiment(new BigDecimal("0.1"))
+                                        .build()))
+                        .build()));
+
+        CompletableFuture<MaqSentimentResponse> first = maqSentimentBatcher.submit("a", "first text");
+        CompletableFuture<MaqSentimentResponse> second = maqSentimentBatcher.submit("b", "second text");
+
+        ArgumentCaptor<MaqSentimentRequestBody> requestBodyCaptor =
+                ArgumentCaptor.forClass(MaqSentimentRequestBody.class);
+        verify(maqAsyncClientMock, times(1)).postSentiment(requestBodyCaptor.capture());
+        assertThat(requestBodyCaptor.getValue().getData()).isEqualTo(List.of(
+                MaqSentimentRequestBodyDataElement.builder().id("1").text("first text").build(),
+                MaqSentimentRequestBodyDataElement.builder().id("2").text("second text").build()));
+        assertThat(first.join().getSuccesses()).isEqualTo(List.of(
+                MaqSentimentResponseSuccessBodyElement.builder()
+                        .id("a")
+                        .sentiment(new BigDecimal("0.1"))
+                        .build()));
+        assertThat(second.join().getSuccesses()).isEqualTo(List.of(
+                MaqSentimentResponseSuccessBodyElement.builder()
+                        .id("b")
+                        .sentiment(new BigDecimal("0.2"))
+                        .build()));
+    }
+
+    @Test
+    void submit_errorRecordNumber_matchedToSubmissionAndOthersResent() {
+        maqSentimentBatcher = new MaqSentimentBatcher(maqAsyncClientMock, 2, Long.MAX_VALUE, 60_000L);
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(
+                        CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                                .statusCode(400)
+                                .message("Bad Request")
+                                .errors(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                                        .property("text")
+                                        .recordNumber(2L)
+                                        .validator("Empty string check")
+                                        .value("null")
+                                        .build()))
+                                .build()),
+                        CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                                .statusCode(200)
+                                .successes(List.of(MaqSentimentResponseSuccessBodyElement.builder()
+                                        .id("1")
+                                        .sentiment(new BigDecimal("0.1"))
+                                        .build()))
+                                .build()));
+
+        CompletableFuture<MaqSentimentResponse> first = maqSentimentBatcher.submit("a", "first text");
+        CompletableFuture<MaqSentimentResponse> second = maqSentimentBatcher.submit("b", "");
+
+        ArgumentCaptor<MaqSentimentRequestBody> requestBodyCaptor =
+                ArgumentCaptor.forClass(MaqSentimentRequestBody.class);
+        verify(maqAsyncClientMock, times(2)).postSentiment(requestBodyCaptor.capture());
+        assertThat(requestBodyCaptor.getAllValues().get(1).getData()).isEqualTo(List.of(
+                MaqSentimentRequestBodyDataElement.builder().id("1").text("first text").build()));
+        assertThat(first.join()).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(MaqSentimentResponseSuccessBodyElement.builder()
+                        .id("a")
+                        .sentiment(new BigDecimal("0.1"))
+                        .build()))
+                .build());
+        assertThat(second.join()).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .errors(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                        .property("text")
+                        .recordNumber(1L)
+                        .validator("Empty string check")
+                        .value("null")
+                        .build()))
+                .build());
+    }
+
+    @Test
+    void submit_batchFailedWithoutRecordErrors_eachGetsTheFailureWithoutResending() {
+        maqSentimentBatcher = new MaqSentimentBatcher(maqAsyncClientMock, 2, Long.MAX_VALUE, 60_000L);
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                        .statusCode(503)
+                        .message("Service Unavailable")
+                        .build()));
+
+        CompletableFuture<MaqSentimentResponse> first = maqSentimentBatcher.submit("a", "first text");
+        CompletableFuture<MaqSentimentResponse> second = maqSentimentBatcher.submit("b", "second text");
+
+        verify(maqAsyncClientMock, times(1)).postSentiment(any(MaqSentimentRequestBody.class));
+        MaqSentimentResponse expectedResponse = MaqSentimentResponse.builder()
+                .statusCode(503)
+                .message("Service Unavailable")
+                .build();
+        assertThat(first.join()).isEqualTo(expectedResponse);
+        assertThat(second.join()).isEqualTo(expectedResponse);
+    }
+
+    @Test
+    void submit_maxBytesExceeded_sendsPendingBeforeAddingNext() {
+        long elementBytes = MaqSentimentBatcher.estimateBytes(MaqSentimentRequestBodyDataElement.builder()
+                .id("a")
+                .text("0123456789")
+                .build());
+        maqSentimentBatcher = new MaqSentimentBatcher(maqAsyncClientMock, 100, elementBytes + 1L, 60_000L);
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(new CompletableFuture<>());
+
+        maqSentimentBatcher.submit("a", "0123456789");
+        verify(maqAsyncClientMock, never()).postSentiment(any(MaqSentimentRequestBody.class));
+        maqSentimentBatcher.submit("b", "0123456789");
+
+        ArgumentCaptor<MaqSentimentRequestBody> requestBodyCaptor =
+                ArgumentCaptor.forClass(MaqSentimentRequestBody.class);
+        verify(maqAsyncClientMock, times(1)).postSentiment(requestBodyCaptor.capture());
+        assertThat(requestBodyCaptor.getValue().getData()).hasSize(1);
+        assertThat(requestBodyCaptor.getValue().getData().get(0).getText()).isEqualTo("0123456789");
+    }
+
+    @Test
+    void submit_maxLingerElapsed_sendsPartialBatch() {
+        maqSentimentBatcher = new MaqSentimentBatcher(maqAsyncClientMock, 100, Long.MAX_VALUE, 10L);
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                        .statusCode(200)
+                        .successes(List.of(MaqSentimentResponseSuccessBodyElement.builder()
+                                .id("1")
+                                .sentiment(BigDecimal.ONE)
+                                .build()))
+                        .build()));
+
+        CompletableFuture<MaqSentimentResponse> only = maqSentimentBatcher.submit("a", "text");
+
+        MaqSentimentResponse maqSentimentResponse =
+                assertDoesNotThrow(() -> only.get(5L, TimeUnit.SECONDS));
+        assertThat(maqSentimentResponse.getSuccesses().get(0).getId()).isEqualTo("a");
+    }
+}
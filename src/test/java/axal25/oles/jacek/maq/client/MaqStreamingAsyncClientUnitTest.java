@@ -0,0 +1,318 @@
+package axal25.oles.jacek.maq.client;
+
+import axal25.oles.jacek.http.TestHttpResponse;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import axal25.oles.jacek.util.CurrentThreadExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class MaqStreamingAsyncClientUnitTest {
+    private MaqAsyncClient maqAsyncClientMock;
+
+    @BeforeEach
+    void setUp() {
+        maqAsyncClientMock = mock(MaqAsyncClient.class);
+    }
+
+    private MaqStreamingAsyncClient newClient(int batchSize, int maxInFlightBatches, long maxLingerMillis) {
+        return new MaqStreamingAsyncClient(
+                maqAsyncClientMock, batchSize, maxInFlightBatches, maxLingerMillis, new CurrentThreadExecutor());
+    }
+
+    private static List<MaqSentimentRequestBodyDataElement> elements(String... ids) {
+        return IntStream.range(0, ids.length)
+                .mapToObj(i -> MaqSentimentRequestBodyDataElement.builder()
+                        .id(ids[i])
+                        .text("text " + ids[i])
+                        .build())
+                .collect(toList());
+    }
+
+    // MAQ's answer to a batch of two, record numbers as ids
+    private static MaqSentimentResponse successes(String firstSentiment, String secondSentiment) {
+        return MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(
+                        MaqSentimentResponseSuccessBodyElement.builder()
+                                .id("1")
+                                .sentiment(new BigDecimal(firstSentiment))
+                                .build(),
+                        MaqSentimentResponseSuccessBodyElement.builder()
+                                .id("2")
+                                .sentiment(new BigDecimal(secondSentiment))
+                                .build()))
+                .build();
+    }
+
+    private static List<String> ids(List<MaqSentimentResponse> responses) {
+        return responses.stream()
+                .map(response -> response.getSuccesses().get(0).getId())
+                .collect(toList());
+    }
+
+    @Test
+    void postSentiment_inOrder_emitsInSubmissionOrder() {
+        CompletableFuture<MaqSentimentResponse> firstBatch = new CompletableFuture<>();
+        CompletableFuture<MaqSentimentResponse> secondBatch = new CompletableFuture<>();
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(firstBatch, secondBatch);
+        TestPublisher publisher = new TestPublisher(elements("a", "b", "c", "d"));
+        TestSubscriber subscriber = new TestSubscriber();
+
+        newClient(2, 2, 60_000L).postSentiment(publisher, EmissionOrder.IN_ORDER).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+        secondBatch.complete(successes("0.3", "0.4"));
+
+        assertThat(subscriber.items).isEmpty();
+        firstBatch.complete(successes("0.1", "0.2"));
+        assertThat(ids(subscriber.items)).isEqualTo(List.of("a", "b", "c", "d"));
+        assertThat(subscriber.completed).isTrue();
+    }
+
+    @Test
+    void postSentiment_asCompleted_emitsBatchesAsTheyComplete() {
+        CompletableFuture<MaqSentimentResponse> firstBatch = new CompletableFuture<>();
+        CompletableFuture<MaqSentimentResponse> secondBatch = new CompletableFuture<>();
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(firstBatch, secondBatch);
+        TestPublisher publisher = new TestPublisher(elements("a", "b", "c", "d"));
+        TestSubscriber subscriber = new TestSubscriber();
+
+        newClient(2, 2, 60_000L).postSentiment(publisher, EmissionOrder.AS_COMPLETED).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+        secondBatch.complete(successes("0.3", "0.4"));
+
+        assertThat(ids(subscriber.items)).isEqualTo(List.of("c", "d"));
+        firstBatch.complete(successes("0.1", "0.2"));
+        assertThat(ids(subscriber.items)).isEqualTo(List.of("c", "d", "a", "b"));
+        assertThat(subscriber.completed).isTrue();
+    }
+
+    @Test
+    void postSentiment_downstreamDemand_boundsEmissionsAndUpstreamRequests() {
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(successes("0.1", "0.2")));
+        TestPublisher publisher = new TestPublisher(elements("a", "b", "c", "d", "e", "f", "g", "h"));
+        TestSubscriber subscriber = new TestSubscriber();
+
+        newClient(2, 1, 60_000L).postSentiment(publisher, EmissionOrder.IN_ORDER).subscribe(subscriber);
+        subscriber.request(1L);
+
+        // capacity is a batch being filled and one in flight, elements scored but not yet emitted count against it
+        assertThat(ids(subscriber.items)).isEqualTo(List.of("a"));
+        assertThat(publisher.requested).isEqualTo(1L + 4L);
+        subscriber.request(2L);
+        assertThat(ids(subscriber.items)).isEqualTo(List.of("a", "b", "c"));
+        assertThat(publisher.requested).isEqualTo(3L + 4L);
+        assertThat(subscriber.completed).isFalse();
+    }
+
+    @Test
+    void postSentiment_errors_matchedToElementsByRecordNumberAndOthersResent() {
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(
+                        CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                                .statusCode(400)
+                                .errors(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                                        .recordNumber(2L)
+                                        .message("text is empty")
+                                        .build()))
+                                .build()),
+                        CompletableFuture.completedFuture(MaqSentimentResponse.builder()
+                                .statusCode(200)
+                                .successes(List.of(MaqSentimentResponseSuccessBodyElement.builder()
+                                        .id("1")
+                                        .sentiment(new BigDecimal("0.1"))
+                                        .build()))
+                                .build()));
+        TestPublisher publisher = new TestPublisher(elements("a", "b"));
+        TestSubscriber subscriber = new TestSubscriber();
+
+        newClient(2, 1, 60_000L).postSentiment(publisher, EmissionOrder.IN_ORDER).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        verify(maqAsyncClientMock, times(2)).postSentiment(any(MaqSentimentRequestBody.class));
+        assertThat(subscriber.items).isEqualTo(List.of(
+                MaqSentimentResponse.builder()
+                        .statusCode(200)
+                        .successes(List.of(MaqSentimentResponseSuccessBodyElement.builder()
+                                .id("a")
+                                .sentiment(new BigDecimal("0.1"))
+                                .build()))
+                        .build(),
+                MaqSentimentResponse.builder()
+                        .statusCode(400)
+                        .errors(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                                .recordNumber(1L)
+                                .message("text is empty")
+                                .build()))
+                        .build()));
+    }
+
+    @Test
+    void postSentiment_batchHttpResponse_notKeptByElements() {
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(successes("0.1", "0.2").toBuilder()
+                        .message("OK")
+                        .underlyingResponse(TestHttpResponse.<String>builder()
+                                .statusCode(200)
+                                .body("[{\"id\": \"1\", \"sentiment\": 0.1}, {\"id\": \"2\", \"sentiment\": 0.2}]")
+                                .build())
+                        .build()));
+        TestPublisher publisher = new TestPublisher(elements("a", "b"));
+        TestSubscriber subscriber = new TestSubscriber();
+
+        newClient(2, 1, 60_000L).postSentiment(publisher, EmissionOrder.IN_ORDER).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        assertThat(ids(subscriber.items)).isEqualTo(List.of("a", "b"));
+        subscriber.items.forEach(item -> {
+            assertThat(item.getUnderlyingResponse()).isNull();
+            assertThat(item.getMessage()).isNull();
+        });
+    }
+
+    @Test
+    void postSentiment_partialBatch_sentAfterLinger() throws InterruptedException {
+        CountDownLatch sent = new CountDownLatch(1);
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class))).thenAnswer(invocation -> {
+            sent.countDown();
+            return new CompletableFuture<>();
+        });
+        TestPublisher publisher = new TestPublisher(elements("a", "b", "c"));
+        publisher.completeWhenExhausted = false;
+        TestSubscriber subscriber = new TestSubscriber();
+
+        newClient(10, 1, 10L).postSentiment(publisher, EmissionOrder.IN_ORDER).subscribe(subscriber);
+
+        assertTrue(sent.await(10L, TimeUnit.SECONDS));
+        verify(maqAsyncClientMock, times(1)).postSentiment(argThat((MaqSentimentRequestBody body) ->
+                body.getData().size() == 3));
+    }
+
+    @Test
+    void cancel_cancelsUpstreamAndBatchesInFlight() {
+        CompletableFuture<MaqSentimentResponse> batch = new CompletableFuture<>();
+        when(maqAsyncClientMock.postSentiment(any(MaqSentimentRequestBody.class))).thenReturn(batch);
+        TestPublisher publisher = new TestPublisher(elements("a", "b"));
+        publisher.completeWhenExhausted = false;
+        TestSubscriber subscriber = new TestSubscriber();
+
+        newClient(2, 1, 60_000L).postSentiment(publisher, EmissionOrder.IN_ORDER).subscribe(subscriber);
+        subscriber.subscription.cancel();
+
+        assertThat(batch.isCancelled()).isTrue();
+        assertThat(publisher.cancelled).isTrue();
+        assertThat(subscriber.completed).isFalse();
+        assertThat(subscriber.error).isNull();
+    }
+
+    @Test
+    void onError_upstreamFailure_failsDownstream() {
+        TestSubscriber subscriber = new TestSubscriber();
+        Flow.Processor<MaqSentimentRequestBodyDataElement, MaqSentimentResponse> processor =
+                newClient(2, 1, 60_000L).newProcessor(EmissionOrder.IN_ORDER);
+        processor.subscribe(subscriber);
+        IllegalStateException stubException = new IllegalStateException("upstream failed");
+
+        processor.onError(stubException);
+
+        assertThat(subscriber.error).isSameInstanceAs(stubException);
+    }
+
+    @Test
+    void subscribe_secondSubscriber_failsWithIllegalStateException() {
+        Flow.Processor<MaqSentimentRequestBodyDataElement, MaqSentimentResponse> processor =
+                newClient(2, 1, 60_000L).newProcessor(EmissionOrder.IN_ORDER);
+        processor.subscribe(new TestSubscriber());
+        TestSubscriber second = new TestSubscriber();
+
+        processor.subscribe(second);
+
+        assertThat(second.error).isInstanceOf(IllegalStateException.class);
+    }
+
+    // emits its elements synchronously, as they are requested
+    private static class TestPublisher implements Flow.Publisher<MaqSentimentRequestBodyDataElement> {
+        private final List<MaqSentimentRequestBodyDataElement> elements;
+        private int next;
+        private long requested;
+        private boolean cancelled;
+        private boolean completeWhenExhausted = true;
+
+        private TestPublisher(List<MaqSentimentRequestBodyDataElement> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super MaqSentimentRequestBodyDataElement> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    for (long i = 0; i < n && next < elements.size(); i++) {
+                        subscriber.onNext(elements.get(next++));
+                    }
+                    if (next == elements.size() && completeWhenExhausted) {
+                        next++;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static class TestSubscriber implements Flow.Subscriber<MaqSentimentResponse> {
+        private final List<MaqSentimentResponse> items = new CopyOnWriteArrayList<>();
+        private Flow.Subscription subscription;
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(MaqSentimentResponse item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        private void request(long n) {
+            subscription.request(n);
+        }
+    }
+}
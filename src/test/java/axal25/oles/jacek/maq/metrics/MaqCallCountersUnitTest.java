@@ -0,0 +1,70 @@
+package axal25.oles.jacek.maq.metrics;
+
+import axal25.oles.jacek.http.TestHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MaqCallCountersUnitTest {
+    private final MaqCallCounters maqCallCounters = new MaqCallCounters();
+
+    @Test
+    void recordRequest_countsRequestsAndKnownRecords() {
+        maqCallCounters.recordRequest(25);
+        maqCallCounters.recordRequest(0);
+
+        MaqCallStatistics statistics = maqCallCounters.getStatistics();
+
+        assertThat(statistics.getRequests()).isEqualTo(2L);
+        assertThat(statistics.getRecords()).isEqualTo(25L);
+    }
+
+    @Test
+    void recordRecords_streamedRecords_countedWithoutRequests() {
+        maqCallCounters.recordRequest(0);
+        maqCallCounters.recordRecords(100);
+        maqCallCounters.recordRecords(20);
+
+        MaqCallStatistics statistics = maqCallCounters.getStatistics();
+
+        assertThat(statistics.getRequests()).isEqualTo(1L);
+        assertThat(statistics.getRecords()).isEqualTo(120L);
+    }
+
+    @Test
+    void recordOutcome_responses_countedByStatusCode() {
+        maqCallCounters.recordOutcome(TestHttpResponse.<String>builder().statusCode(200).build(), null);
+        maqCallCounters.recordOutcome(TestHttpResponse.<String>builder().statusCode(503).build(), null);
+        maqCallCounters.recordOutcome(TestHttpResponse.<String>builder().statusCode(200).build(), null);
+
+        MaqCallStatistics statistics = maqCallCounters.getStatistics();
+
+        assertThat(statistics.getResponsesByStatusCode()).isEqualTo(Map.of(200, 2L, 503, 1L));
+        assertThat(statistics.getFailures()).isEqualTo(0L);
+    }
+
+    @Test
+    void recordOutcome_exceptions_countedAsFailuresExceptCancellations() {
+        maqCallCounters.recordOutcome(null, new IOException("connection reset"));
+        maqCallCounters.recordOutcome(null, new CompletionException(new IOException("connection reset")));
+        maqCallCounters.recordOutcome(null, new CancellationException());
+        maqCallCounters.recordOutcome(null, new CompletionException(new CancellationException()));
+
+        MaqCallStatistics statistics = maqCallCounters.getStatistics();
+
+        assertThat(statistics.getFailures()).isEqualTo(2L);
+        assertThat(statistics.getResponsesByStatusCode()).isEmpty();
+    }
+
+    @Test
+    void recordDeserializationFailure_counted() {
+        maqCallCounters.recordDeserializationFailure();
+
+        assertThat(maqCallCounters.getStatistics().getDeserializationFailures()).isEqualTo(1L);
+    }
+}
@@ -0,0 +1,99 @@
+package axal25.oles.jacek.maq.metrics;
+
+import axal25.oles.jacek.http.TestTicker;
+import axal25.oles.jacek.metrics.HistogramSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MaqLatencyRecorderUnitTest {
+    private final TestTicker ticker = new TestTicker();
+    private final MaqLatencyRecorder maqLatencyRecorder = new MaqLatencyRecorder(ticker);
+
+    @Test
+    void recordSince_recordsElapsedNanosPerPhase() {
+        long startNanos = maqLatencyRecorder.start();
+        ticker.advance(Duration.ofMillis(3L));
+
+        maqLatencyRecorder.recordSince(MaqCallPhase.SERIALIZATION, startNanos);
+
+        Map<MaqCallPhase, HistogramSnapshot> phases = maqLatencyRecorder.getStatistics().getPhases();
+        assertThat(phases.get(MaqCallPhase.SERIALIZATION).getCount()).isEqualTo(1L);
+        assertThat(phases.get(MaqCallPhase.SERIALIZATION).getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(3L));
+        assertThat(phases.get(MaqCallPhase.DESERIALIZATION).getCount()).isEqualTo(0L);
+    }
+
+    @Test
+    void recordRecords_unknownRecords_notCounted() {
+        maqLatencyRecorder.recordRecords(0);
+        maqLatencyRecorder.recordRecords(25);
+
+        HistogramSnapshot recordsPerRequest = maqLatencyRecorder.getStatistics().getRecordsPerRequest();
+
+        assertThat(recordsPerRequest.getCount()).isEqualTo(1L);
+        assertThat(recordsPerRequest.getMax()).isEqualTo(25L);
+    }
+
+    @Test
+    void timed_recordsTimeToFirstByteAndBodyDownload() {
+        long sendStartNanos = maqLatencyRecorder.start();
+        HttpResponse.BodyHandler<String> bodyHandler =
+                maqLatencyRecorder.timed(HttpResponse.BodyHandlers.ofString(), sendStartNanos);
+        ticker.advance(Duration.ofMillis(20L));
+
+        HttpResponse.BodySubscriber<String> bodySubscriber = bodyHandler.apply(new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return 200;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return HttpHeaders.of(Map.of(), (name, value) -> true);
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_2;
+            }
+        });
+        ticker.advance(Duration.ofMillis(5L));
+        bodySubscriber.onSubscribe(new java.util.concurrent.Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        bodySubscriber.onNext(List.of(ByteBuffer.wrap("[]".getBytes(StandardCharsets.UTF_8))));
+        bodySubscriber.onComplete();
+
+        Map<MaqCallPhase, HistogramSnapshot> phases = maqLatencyRecorder.getStatistics().getPhases();
+        assertThat(phases.get(MaqCallPhase.TIME_TO_FIRST_BYTE).getMax())
+                .isEqualTo(TimeUnit.MILLISECONDS.toNanos(20L));
+        assertThat(phases.get(MaqCallPhase.BODY_DOWNLOAD).getMax())
+                .isEqualTo(TimeUnit.MILLISECONDS.toNanos(5L));
+    }
+
+    @Test
+    void dump_listsEveryPhaseAndRecordsPerRequest() {
+        String dump = maqLatencyRecorder.dump();
+
+        for (MaqCallPhase phase : MaqCallPhase.values()) {
+            assertThat(dump).contains(phase.name());
+        }
+        assertThat(dump).contains("RECORDS_PER_REQUEST");
+    }
+}
@@ -0,0 +1,59 @@
+package axal25.oles.jacek.maq.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ChunkBufferPoolUnitTest {
+
+    @Test
+    void acquire_afterRelease_sameBufferCleared() {
+        ChunkBufferPool chunkBufferPool = new ChunkBufferPool(64, 2);
+        ByteBuffer buffer = chunkBufferPool.acquire(10);
+        buffer.put(new byte[10]).flip();
+
+        chunkBufferPool.release(buffer);
+        ByteBuffer reacquired = chunkBufferPool.acquire(20);
+
+        assertThat(reacquired).isSameInstanceAs(buffer);
+        assertThat(reacquired.position()).isEqualTo(0);
+        assertThat(reacquired.limit()).isEqualTo(64);
+        assertThat(chunkBufferPool.getAvailable()).isEqualTo(0);
+    }
+
+    @Test
+    void acquire_largerThanBuffer_allocatedAndNotPooled() {
+        ChunkBufferPool chunkBufferPool = new ChunkBufferPool(64, 2);
+
+        ByteBuffer buffer = chunkBufferPool.acquire(100);
+        chunkBufferPool.release(buffer);
+
+        assertThat(buffer.capacity()).isEqualTo(100);
+        assertThat(chunkBufferPool.getAvailable()).isEqualTo(0);
+    }
+
+    @Test
+    void release_fullPool_bufferDropped() {
+        ChunkBufferPool chunkBufferPool = new ChunkBufferPool(64, 1);
+        ByteBuffer first = chunkBufferPool.acquire(10);
+        ByteBuffer second = chunkBufferPool.acquire(10);
+
+        chunkBufferPool.release(first);
+        chunkBufferPool.release(second);
+
+        assertThat(chunkBufferPool.getAvailable()).isEqualTo(1);
+        assertThat(chunkBufferPool.acquire(10)).isSameInstanceAs(first);
+    }
+
+    @Test
+    void constructor_nonPositiveMaxBuffers_throwsIllegalArgumentException() {
+        IllegalArgumentException actualException =
+                assertThrows(IllegalArgumentException.class, () -> new ChunkBufferPool(64, 0));
+
+        assertThat(actualException).hasMessageThat().isEqualTo(
+                "Max buffers must be positive but was: 0.");
+    }
+}
@@ -1,9 +1,14 @@
 package axal25.oles.jacek.maq.model;
 
+import axal25.oles.jacek.http.CircuitBreakerOpenException;
+import axal25.oles.jacek.http.DeadlineExceededException;
 import axal25.oles.jacek.http.HttpContainer;
+import axal25.oles.jacek.http.OutstandingLimitExceededException;
 import axal25.oles.jacek.http.TestHttpResponse;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
 import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentColumnarResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentLeanResponse;
 import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
 import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
 import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
@@ -11,8 +16,9 @@ import axal25.oles.jacek.util.ThreadLocalListAppender;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ThrowableProxy;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -20,15 +26,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import javax.net.ssl.SSLSession;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.concurrent.RejectedExecutionException;
 
 import static axal25.oles.jacek.constant.Constants.CONTENT_TYPE;
 import static axal25.oles.jacek.maq.MaqConstants.MAQ_API_KEY_NAME;
@@ -141,6 +151,21 @@ public class MaqOmniSerializerUnitTest {
                         "}");
     }
 
+    @Test
+    void countRecords_requestBody_countsDataElements() {
+        assertThat(maqOmniSerializer.countRecords(
+                "{\"data\": [{\"id\": \"1\", \"text\": \"[a]\"}, {\"id\": \"2\", \"text\": \"{b}\"}]}"))
+                .isEqualTo(2);
+        assertThat(maqOmniSerializer.countRecords("{\"other\": [1, 2, 3], \"data\": []}")).isEqualTo(0);
+    }
+
+    @Test
+    void countRecords_notRequestBody_countsNone() {
+        assertThat(maqOmniSerializer.countRecords(null)).isEqualTo(0);
+        assertThat(maqOmniSerializer.countRecords("[1, 2]")).isEqualTo(0);
+        assertThat(maqOmniSerializer.countRecords("{\"data\": [1, 2")).isEqualTo(0);
+    }
+
     @Test
     void serializeToJson_objectMapperWritevalueAsString_throwsCheckedException() {
         JsonProcessingException stubException = mock(JsonProcessingException.class, withSettings()
@@ -191,6 +216,70 @@ public class MaqOmniSerializerUnitTest {
         assertThat(actualException).hasCauseThat().isNull();
     }
 
+    @Test
+    void deserializeFromJson_outstandingLimitExceeded_serviceUnavailable() {
+        OutstandingLimitExceededException stubException = new OutstandingLimitExceededException("MAQ", 2, 10L);
+        HttpContainer<String> outstandingLimitExceeded = HttpContainer.<String>builder()
+                .throwable(stubException)
+                .causeMessage(stubException.getMessage())
+                .build();
+
+        MaqSentimentResponse actualResponse = maqOmniSerializer.deserializeFromJson(outstandingLimitExceeded);
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(503);
+        assertThat(actualResponse.getMessage()).isEqualTo(
+                "MAQ outstanding request limit is reached, in flight are: 2 requests of 10 bytes.");
+    }
+
+    @Test
+    void deserializeFromJson_executorSaturated_serviceUnavailable() {
+        RejectedExecutionException stubException = new RejectedExecutionException("cpu executor is saturated.");
+        HttpContainer<String> executorSaturated = HttpContainer.<String>builder()
+                .throwable(stubException)
+                .causeMessage(stubException.getMessage())
+                .build();
+
+        MaqSentimentResponse actualResponse = maqOmniSerializer.deserializeFromJson(executorSaturated);
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(503);
+        assertThat(actualResponse.getMessage()).isEqualTo("cpu executor is saturated.");
+    }
+
+    @Test
+    void deserializeFromJson_circuitBreakerOpen_serviceUnavailable() {
+        CircuitBreakerOpenException stubException = new CircuitBreakerOpenException("MAQ", Duration.ofSeconds(5L));
+        HttpContainer<String> circuitBreakerOpen = HttpContainer.<String>builder()
+                .client(STUB_HTTP_CLIENT)
+                .request(STUB_HTTP_REQUEST)
+                .throwable(stubException)
+                .causeMessage(stubException.getMessage())
+                .build();
+
+        MaqSentimentResponse actualResponse = maqOmniSerializer.deserializeFromJson(circuitBreakerOpen);
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(503);
+        assertThat(actualResponse.getMessage()).isEqualTo(
+                "MAQ circuit breaker is open, calls are not permitted for another: PT5S.");
+        assertThat(actualResponse.getSuccesses()).isNull();
+        assertThat(actualResponse.getErrors()).isNull();
+    }
+
+    @Test
+    void deserializeFromJson_deadlineExceeded_gatewayTimeout() {
+        DeadlineExceededException stubException = new DeadlineExceededException("Deadline exceeded.");
+        HttpContainer<String> deadlineExceeded = HttpContainer.<String>builder()
+                .client(STUB_HTTP_CLIENT)
+                .request(STUB_HTTP_REQUEST)
+                .throwable(stubException)
+                .causeMessage(stubException.getMessage())
+                .build();
+
+        MaqSentimentResponse actualResponse = maqOmniSerializer.deserializeFromJson(deadlineExceeded);
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(504);
+        assertThat(actualResponse.getMessage()).isEqualTo("Deadline exceeded.");
+    }
+
     @Test
     void deserializeFromJson_nullResponseThrowableCauseMessage_throwsIllegalArgumentException() {
         HttpContainer<String> empty = HttpContainer.<String>builder()
@@ -379,6 +468,50 @@ public class MaqOmniSerializerUnitTest {
                 .build());
     }
 
+    @Test
+    void deserializeFromJson_withResponse_statusCode502_bodyMalformedJsonObject_keptAsMessage() {
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(502)
+                .body("{<html><body>Bad Gateway</body></html>")
+                .build();
+        HttpContainer<String> withResponse = HttpContainer.<String>builder()
+                .response(null)
+                .causeMessage(null)
+                .throwable(null)
+                .client(STUB_HTTP_CLIENT)
+                .request(STUB_HTTP_REQUEST)
+                .response(httpResponse)
+                .build();
+
+        MaqSentimentResponse actualResponse = maqOmniSerializer.deserializeFromJson(withResponse);
+
+        assertThat(actualResponse).isEqualTo(MaqSentimentResponse.builder()
+                .underlyingResponse(httpResponse)
+                .successes(null)
+                .statusCode(502)
+                .message("{<html><body>Bad Gateway</body></html>")
+                .errors(null)
+                .build());
+    }
+
+    @Test
+    void deserializeFromJson_withResponse_statusCode503_bodyTruncatedJsonObject_keptAsMessage() {
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(503)
+                .body("{\"message\": \"Service Unav")
+                .build();
+        HttpContainer<String> withResponse = HttpContainer.<String>builder()
+                .client(STUB_HTTP_CLIENT)
+                .request(STUB_HTTP_REQUEST)
+                .response(httpResponse)
+                .build();
+
+        MaqSentimentResponse actualResponse = maqOmniSerializer.deserializeFromJson(withResponse);
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(503);
+        assertThat(actualResponse.getMessage()).isEqualTo("{\"message\": \"Service Unav");
+    }
+
     @Test
     void deserializeFromJson_withResponse_statusCode401_bodyJsonObjectStatusCodeAndMessage() {
         HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
@@ -419,19 +552,11 @@ public class MaqOmniSerializerUnitTest {
                 .request(STUB_HTTP_REQUEST)
                 .response(httpResponse)
                 .build();
-        AtomicReference<JsonNode> bodyJsonNodeRef = new AtomicReference<>();
-        assertDoesNotThrow(() -> bodyJsonNodeRef.set(objectMapper.readTree(httpResponse.body())));
-        objectMapper = mock(ObjectMapper.class);
-        assertDoesNotThrow(() ->
-                when(objectMapper.readTree(anyString())).thenReturn(bodyJsonNodeRef.get()));
-        maqOmniSerializer = mock(MaqOmniSerializer.class, withSettings()
-                .useConstructor(objectMapper)
-                .defaultAnswer(CALLS_REAL_METHODS));
         JsonProcessingException stubException = mock(JsonProcessingException.class, withSettings()
                 .useConstructor("stub exception message")
                 .defaultAnswer(CALLS_REAL_METHODS));
         assertDoesNotThrow(() ->
-                when(objectMapper.readValue(anyString(), any(Class.class))).thenThrow(stubException));
+                doThrow(stubException).when(objectMapper).readValue(any(JsonParser.class), eq(MaqSentimentResponse.class)));
 
         MaqSentimentResponse actualResponse = maqOmniSerializer.deserializeFromJson(withResponse);
 
@@ -529,19 +654,11 @@ public class MaqOmniSerializerUnitTest {
                 .request(STUB_HTTP_REQUEST)
                 .response(httpResponse)
                 .build();
-        AtomicReference<JsonNode> bodyJsonNodeRef = new AtomicReference<>();
-        assertDoesNotThrow(() -> bodyJsonNodeRef.set(objectMapper.readTree(httpResponse.body())));
-        objectMapper = mock(ObjectMapper.class);
-        assertDoesNotThrow(() ->
-                when(objectMapper.readTree(anyString())).thenReturn(bodyJsonNodeRef.get()));
-        maqOmniSerializer = mock(MaqOmniSerializer.class, withSettings()
-                .useConstructor(objectMapper)
-                .defaultAnswer(CALLS_REAL_METHODS));
         JsonProcessingException stubException = mock(JsonProcessingException.class, withSettings()
                 .useConstructor("stub exception message")
                 .defaultAnswer(CALLS_REAL_METHODS));
         assertDoesNotThrow(() ->
-                when(objectMapper.readValue(anyString(), any(Class.class))).thenThrow(stubException));
+                doThrow(stubException).when(objectMapper).readValue(any(JsonParser.class), any(TypeReference.class)));
 
         MaqSentimentResponse actualResponse = maqOmniSerializer.deserializeFromJson(withResponse);
 
@@ -551,7 +668,7 @@ public class MaqOmniSerializerUnitTest {
                 + HttpResponse.class.getSimpleName()
                 + "'s Body:\r\n" +
                 "%s";
-        String httpResponseBody = String.format("{\"successes\": %s}", httpResponse.body());
+        String httpResponseBody = httpResponse.body();
         String expectedExceptionMessage = String.format(expectedExceptionMessageFormat,
                 stubException.getClass().getSimpleName(),
                 httpResponseBody);
@@ -574,4 +691,235 @@ public class MaqOmniSerializerUnitTest {
         assertThat(((ThrowableProxy) listAppender.list.get(0).getThrowableProxy()).getThrowable()).isEqualTo(stubException);
         assertThat(listAppender.list.get(0).getMarker().getName()).isEqualTo("checked exception");
     }
+
+    @Test
+    void toLeanResponse_withoutHeaders() {
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(200)
+                .body("[{\"id\": \"1\", \"sentiment\": 0.9533200264}]")
+                .build();
+        MaqSentimentResponse maqSentimentResponse = maqOmniSerializer.deserializeFromJson(
+                HttpContainer.<String>builder()
+                        .client(STUB_HTTP_CLIENT)
+                        .request(STUB_HTTP_REQUEST)
+                        .response(httpResponse)
+                        .build());
+
+        MaqSentimentLeanResponse actualResponse = maqOmniSerializer.toLeanResponse(maqSentimentResponse, false);
+
+        assertThat(actualResponse).isEqualTo(MaqSentimentLeanResponse.builder()
+                .statusCode(200)
+                .message(null)
+                .headers(null)
+                .successes(List.of(MaqSentimentResponseSuccessBodyElement.builder()
+                        .id("1")
+                        .sentiment(new BigDecimal("0.9533200264"))
+                        .build()))
+                .errors(null)
+                .build());
+    }
+
+    @Test
+    void toLeanResponse_withHeaders() {
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(401)
+                .body("{ \"statusCode\": 401, \"message\": \"invalid API Key\" }")
+                .build();
+        MaqSentimentResponse maqSentimentResponse = maqOmniSerializer.deserializeFromJson(
+                HttpContainer.<String>builder()
+                        .client(STUB_HTTP_CLIENT)
+                        .request(STUB_HTTP_REQUEST)
+                        .response(httpResponse)
+                        .build());
+
+        MaqSentimentLeanResponse actualResponse = maqOmniSerializer.toLeanResponse(maqSentimentResponse, true);
+
+        assertThat(actualResponse).isEqualTo(MaqSentimentLeanResponse.builder()
+                .statusCode(401)
+                .message("invalid API Key")
+                .headers(httpResponse.headers())
+                .build());
+    }
+
+    @Test
+    void toLeanResponse_doesNotRetainUnderlyingResponse() {
+        // not the mock from setUp(), Mockito keeps invocation arguments reachable
+        MaqOmniSerializer realMaqOmniSerializer = new MaqOmniSerializer(new ObjectMapper());
+        String body = "[" + "{\"id\": \"1\", \"sentiment\": 0.5},".repeat(10_000) + "{\"id\": \"2\", \"sentiment\": 0.5}]";
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(200)
+                .body(body)
+                .build();
+        WeakReference<HttpResponse<String>> httpResponseRef = new WeakReference<>(httpResponse);
+        MaqSentimentLeanResponse leanResponse = realMaqOmniSerializer.toLeanResponse(
+                realMaqOmniSerializer.deserializeFromJson(HttpContainer.<String>builder()
+                        .response(httpResponse)
+                        .build()),
+                false);
+        httpResponse = null;
+        body = null;
+
+        for (int i = 0; i < 50 && httpResponseRef.get() != null; i++) {
+            System.gc();
+            assertDoesNotThrow(() -> Thread.sleep(10L));
+        }
+
+        assertThat(httpResponseRef.get()).isNull();
+        assertThat(leanResponse.getSuccesses()).hasSize(10_001);
+    }
+
+    @Test
+    void deserializeColumnarFromJson_withResponse_statusCode200_bodyJsonArrayOfSentiments() {
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(200)
+                .body("[{\"id\": \"1\", \"sentiment\": 0.9533200264}, {\"id\": \"2\", \"sentiment\": 0.0114474036}]")
+                .build();
+
+        MaqSentimentColumnarResponse actualResponse = maqOmniSerializer.deserializeColumnarFromJson(
+                HttpContainer.<String>builder()
+                        .response(httpResponse)
+                        .build(),
+                false);
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(200);
+        assertThat(actualResponse.getMessage()).isNull();
+        assertThat(actualResponse.getErrors()).isNull();
+        assertThat(actualResponse.isPrecise()).isFalse();
+        assertThat(actualResponse.size()).isEqualTo(2);
+        assertThat(actualResponse.getId(0)).isEqualTo("1");
+        assertThat(actualResponse.getSentiment(0)).isEqualTo(0.9533200264);
+        assertThat(actualResponse.getId(1)).isEqualTo("2");
+        assertThat(actualResponse.getSentiment(1)).isEqualTo(0.0114474036);
+        assertThat(actualResponse.indexOf("2")).isEqualTo(OptionalInt.of(1));
+        assertThat(actualResponse.indexOf("3")).isEqualTo(OptionalInt.empty());
+        assertThat(actualResponse.findSentiment("1")).isEqualTo(OptionalDouble.of(0.9533200264));
+        assertThrows(IllegalStateException.class, () -> actualResponse.getPreciseSentiment(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> actualResponse.getSentiment(2));
+    }
+
+    @Test
+    void deserializeColumnarFromJson_withResponse_statusCode200_keepPrecision() {
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(200)
+                .body("[{\"sentiment\": 0.95332002641234567890, \"ignored\": {\"id\": \"x\"}, \"id\": \"1\"}]")
+                .build();
+
+        MaqSentimentColumnarResponse actualResponse = maqOmniSerializer.deserializeColumnarFromJson(
+                HttpContainer.<String>builder()
+                        .response(httpResponse)
+                        .build(),
+                true);
+
+        assertThat(actualResponse.isPrecise()).isTrue();
+        assertThat(actualResponse.size()).isEqualTo(1);
+        assertThat(actualResponse.getId(0)).isEqualTo("1");
+        assertThat(actualResponse.getPreciseSentiment(0)).isEqualTo(new BigDecimal("0.95332002641234567890"));
+        assertThat(actualResponse.getSentiment(0)).isEqualTo(0.95332002641234567890);
+    }
+
+    @Test
+    void deserializeColumnarFromJson_withResponse_statusCode200_sentimentAsString_converted() {
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(200)
+                .body("[{\"id\": \"1\", \"sentiment\": \"0.25\"}, {\"id\": \"2\", \"sentiment\": 0.5}]")
+                .build();
+
+        MaqSentimentColumnarResponse actualResponse = maqOmniSerializer.deserializeColumnarFromJson(
+                HttpContainer.<String>builder()
+                        .response(httpResponse)
+                        .build(),
+                true);
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(200);
+        assertThat(actualResponse.size()).isEqualTo(2);
+        assertThat(actualResponse.getSentiment(0)).isEqualTo(0.25);
+        assertThat(actualResponse.getPreciseSentiment(0)).isEqualTo(new BigDecimal("0.25"));
+        assertThat(actualResponse.getSentiment(1)).isEqualTo(0.5);
+    }
+
+    @Test
+    void deserializeColumnarFromJson_withResponse_statusCode200_sentimentNotANumber_sameAsDatabind() {
+        HttpContainer<String> httpContainer = HttpContainer.<String>builder()
+                .response(STUB_HTTP_RESPONSE.toBuilder()
+                        .statusCode(200)
+                        .body("[{\"id\": \"1\", \"sentiment\": \"high\"}]")
+                        .build())
+                .build();
+
+        MaqSentimentColumnarResponse actualResponse = maqOmniSerializer.deserializeColumnarFromJson(httpContainer, false);
+
+        assertThat(actualResponse.size()).isEqualTo(0);
+        assertThat(actualResponse.getStatusCode()).isEqualTo(
+                maqOmniSerializer.deserializeFromJson(httpContainer).getStatusCode());
+        assertThat(actualResponse.getMessage()).isEqualTo(
+                maqOmniSerializer.deserializeFromJson(httpContainer).getMessage());
+        assertThat(actualResponse.getMessage()).isNotNull();
+    }
+
+    @Test
+    void deserializeColumnarFromJson_withResponse_statusCode200_idAsObject_sameAsDatabind() {
+        HttpContainer<String> httpContainer = HttpContainer.<String>builder()
+                .response(STUB_HTTP_RESPONSE.toBuilder()
+                        .statusCode(200)
+                        .body("[{\"id\": {\"sentiment\": 0.1}, \"sentiment\": 0.5}, {\"id\": \"2\", \"sentiment\": 0.9}]")
+                        .build())
+                .build();
+
+        MaqSentimentColumnarResponse actualResponse = maqOmniSerializer.deserializeColumnarFromJson(httpContainer, false);
+
+        assertThat(actualResponse.size()).isEqualTo(0);
+        assertThat(actualResponse.getStatusCode()).isEqualTo(
+                maqOmniSerializer.deserializeFromJson(httpContainer).getStatusCode());
+        assertThat(actualResponse.getMessage()).isEqualTo(
+                maqOmniSerializer.deserializeFromJson(httpContainer).getMessage());
+        assertThat(actualResponse.getMessage()).isNotNull();
+    }
+
+    @Test
+    void deserializeColumnarFromJson_withResponse_statusCode400_bodyJsonObjectErrors() {
+        HttpResponse<String> httpResponse = STUB_HTTP_RESPONSE.toBuilder()
+                .statusCode(400)
+                .body("{\"errors\": [{\"property\": \"text\", \"recordNumber\": 1, " +
+                        "\"validator\": \"required\", \"message\": \"is required\"}]}")
+                .build();
+
+        MaqSentimentColumnarResponse actualResponse = maqOmniSerializer.deserializeColumnarFromJson(
+                HttpContainer.<String>builder()
+                        .response(httpResponse)
+                        .build(),
+                false);
+
+        assertThat(actualResponse.getStatusCode()).isEqualTo(400);
+        assertThat(actualResponse.size()).isEqualTo(0);
+        assertThat(actualResponse.getErrors()).isEqualTo(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                .property("text")
+                .recordNumber(1L)
+                .validator("required")
+                .message("is required")
+                .build()));
+    }
+
+    @Test
+    void toColumnarResponse_forEach_inOrder() {
+        MaqSentimentResponse maqSentimentResponse = MaqSentimentResponse.builder()
+                .statusCode(200)
+                .successes(List.of(
+                        MaqSentimentResponseSuccessBodyElement.builder()
+                                .id("a")
+                                .sentiment(new BigDecimal("0.25"))
+                                .build(),
+                        MaqSentimentResponseSuccessBodyElement.builder()
+                                .id("b")
+                                .sentiment(null)
+                                .build()))
+                .build();
+        StringBuilder visited = new StringBuilder();
+
+        MaqSentimentColumnarResponse actualResponse = maqOmniSerializer.toColumnarResponse(maqSentimentResponse, true);
+        actualResponse.forEach((id, sentiment) -> visited.append(id).append('=').append(sentiment).append(';'));
+
+        assertThat(visited.toString()).isEqualTo("a=0.25;b=NaN;");
+        assertThat(actualResponse.getPreciseSentiment(0)).isEqualTo(new BigDecimal("0.25"));
+        assertThat(actualResponse.getPreciseSentiment(1)).isNull();
+    }
 }
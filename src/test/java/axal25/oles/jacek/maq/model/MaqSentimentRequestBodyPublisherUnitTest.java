@@ -0,0 +1,185 @@
+package axal25.oles.jacek.maq.model;
+
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBody;
+import axal25.oles.jacek.maq.model.request.MaqSentimentRequestBodyDataElement;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class MaqSentimentRequestBodyPublisherUnitTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static List<MaqSentimentRequestBodyDataElement> elements(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> MaqSentimentRequestBodyDataElement.builder()
+                        .id(String.valueOf(i))
+                        .text("text \"" + i + "\" ∑")
+                        .build())
+                .collect(toList());
+    }
+
+    @Test
+    void subscribe_chunksConcatenated_equalSerializedRequestBody() {
+        List<MaqSentimentRequestBodyDataElement> elements = elements(1_000);
+        MaqSentimentRequestBodyPublisher publisher =
+                new MaqSentimentRequestBodyPublisher(objectMapper, elements.iterator(), 1024);
+        CollectingSubscriber subscriber = new CollectingSubscriber(1L);
+
+        publisher.subscribe(subscriber);
+
+        assertThat(subscriber.completed).isTrue();
+        assertThat(subscriber.error.get()).isNull();
+        assertThat(subscriber.chunks.size()).isGreaterThan(1);
+        assertThat(subscriber.body()).isEqualTo(assertDoesNotThrow(() -> objectMapper.writeValueAsString(
+                MaqSentimentRequestBody.builder().data(elements).build())));
+        assertThat(publisher.contentLength()).isEqualTo(-1L);
+    }
+
+    @Test
+    void subscribe_writtenRecordsListener_toldEveryElementOnce() {
+        List<Integer> writtenRecords = new ArrayList<>();
+        MaqSentimentRequestBodyPublisher publisher = new MaqSentimentRequestBodyPublisher(
+                objectMapper, elements(1_000).iterator(), 1024, writtenRecords::add);
+        CollectingSubscriber subscriber = new CollectingSubscriber(1L);
+
+        publisher.subscribe(subscriber);
+
+        assertThat(writtenRecords.size()).isGreaterThan(1);
+        assertThat(writtenRecords.stream().mapToInt(Integer::intValue).sum()).isEqualTo(1_000);
+    }
+
+    @Test
+    void subscribe_noElements_emptyDataArray() {
+        MaqSentimentRequestBodyPublisher publisher =
+                new MaqSentimentRequestBodyPublisher(objectMapper, List.<MaqSentimentRequestBodyDataElement>of().iterator(), 1024);
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+
+        publisher.subscribe(subscriber);
+
+        assertThat(subscriber.body()).isEqualTo("{\"data\":[]}");
+    }
+
+    @Test
+    void subscribe_elementsPulledOnlyOnDemand() {
+        Iterator<MaqSentimentRequestBodyDataElement> iterator = elements(1_000).iterator();
+        MaqSentimentRequestBodyPublisher publisher =
+                new MaqSentimentRequestBodyPublisher(objectMapper, iterator, 64);
+        CollectingSubscriber subscriber = new CollectingSubscriber(0L);
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1L);
+
+        assertThat(subscriber.chunks).hasSize(1);
+        assertThat(iterator.hasNext()).isTrue();
+        assertThat(subscriber.completed).isFalse();
+    }
+
+    @Test
+    void subscribe_twice_secondSubscriberGetsError() {
+        MaqSentimentRequestBodyPublisher publisher =
+                new MaqSentimentRequestBodyPublisher(objectMapper, elements(1).iterator(), 1024);
+        publisher.subscribe(new CollectingSubscriber(Long.MAX_VALUE));
+        CollectingSubscriber second = new CollectingSubscriber(Long.MAX_VALUE);
+
+        publisher.subscribe(second);
+
+        assertThat(second.error.get()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void recycle_chunksReusedByNextPublisher() {
+        ChunkBufferPool chunkBufferPool = new ChunkBufferPool(2 * 1024, 4);
+        MaqSentimentRequestBodyPublisher first = new MaqSentimentRequestBodyPublisher(
+                objectMapper, elements(100).iterator(), 1024, records -> {
+        }, chunkBufferPool);
+        CollectingSubscriber firstSubscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        first.subscribe(firstSubscriber);
+
+        first.recycle();
+
+        assertThat(chunkBufferPool.getAvailable()).isEqualTo(Math.min(4, firstSubscriber.chunks.size()));
+        List<MaqSentimentRequestBodyDataElement> elements = elements(1);
+        MaqSentimentRequestBodyPublisher second = new MaqSentimentRequestBodyPublisher(
+                objectMapper, elements.iterator(), 1024, records -> {
+        }, chunkBufferPool);
+        CollectingSubscriber secondSubscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        second.subscribe(secondSubscriber);
+        ByteBuffer reused = secondSubscriber.chunks.get(0);
+        assertThat(firstSubscriber.chunks.stream().anyMatch(chunk -> chunk == reused)).isTrue();
+        assertThat(secondSubscriber.body()).isEqualTo(assertDoesNotThrow(() -> objectMapper.writeValueAsString(
+                MaqSentimentRequestBody.builder().data(elements).build())));
+    }
+
+    @Test
+    void subscribe_withoutRecycle_chunksNotReturnedToPool() {
+        ChunkBufferPool chunkBufferPool = new ChunkBufferPool(2 * 1024, 4);
+        MaqSentimentRequestBodyPublisher publisher = new MaqSentimentRequestBodyPublisher(
+                objectMapper, elements(100).iterator(), 1024, records -> {
+        }, chunkBufferPool);
+
+        publisher.subscribe(new CollectingSubscriber(Long.MAX_VALUE));
+
+        assertThat(chunkBufferPool.getAvailable()).isEqualTo(0);
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<ByteBuffer> {
+        private final long requestOnEach;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private Flow.Subscription subscription;
+        private boolean completed;
+
+        private CollectingSubscriber(long requestOnEach) {
+            this.requestOnEach = requestOnEach;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (requestOnEach > 0L) {
+                subscription.request(requestOnEach);
+            }
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            chunks.add(item);
+            if (requestOnEach > 0L && requestOnEach != Long.MAX_VALUE) {
+                subscription.request(requestOnEach);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        private String body() {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            chunks.forEach(chunk -> {
+                byte[] bytes = new byte[chunk.remaining()];
+                chunk.duplicate().get(bytes);
+                body.writeBytes(bytes);
+            });
+            return body.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package axal25.oles.jacek.maq.model;
+
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponse;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseErrorBodyElement;
+import axal25.oles.jacek.maq.model.response.MaqSentimentResponseSuccessBodyElement;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.*;
+
+public class MaqSentimentResponseBodySubscriberUnitTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<MaqSentimentResponseSuccessBodyElement> successes = new ArrayList<>();
+
+    private HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber(int statusCode) {
+        return new MaqSentimentResponseBodySubscriber(objectMapper, statusCode, successes::add);
+    }
+
+    private static void feedInChunks(HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber,
+                                     Flow.Subscription subscription,
+                                     String body,
+                                     int chunkSize) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        subscriber.onSubscribe(subscription);
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            subscriber.onNext(List.of(ByteBuffer.wrap(
+                    Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + chunkSize)))));
+        }
+    }
+
+    @Test
+    void statusCode200_arrayOfSentiments_emittedWhileStillReceiving() {
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = subscriber(200);
+
+        feedInChunks(subscriber, mock(Flow.Subscription.class),
+                "[{\"id\": \"1\", \"sentiment\": 0.9533200264}, {\"id\": \"2\", \"sentiment\": 0.0114474036}",
+                5);
+
+        assertThat(successes).isEqualTo(List.of(
+                MaqSentimentResponseSuccessBodyElement.builder()
+                        .id("1")
+                        .sentiment(new BigDecimal("0.9533200264"))
+                        .build(),
+                MaqSentimentResponseSuccessBodyElement.builder()
+                        .id("2")
+                        .sentiment(new BigDecimal("0.0114474036"))
+                        .build()));
+        assertThat(subscriber.getBody().toCompletableFuture().isDone()).isFalse();
+
+        subscriber.onNext(List.of(ByteBuffer.wrap("]".getBytes(StandardCharsets.UTF_8))));
+        subscriber.onComplete();
+
+        assertThat(subscriber.getBody().toCompletableFuture().join()).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(200)
+                .build());
+    }
+
+    @Test
+    void statusCode400_bodyJsonObjectErrorsArray() {
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = subscriber(400);
+
+        feedInChunks(subscriber, mock(Flow.Subscription.class),
+                "{\"errors\": [{\"property\": \"text\", \"recordNumber\": 1, \"validator\": \"Empty string check\", " +
+                        "\"value\": \"null\", \"message\": \"InvalidJSONError: The ‘text’ passed in json is empty\"}]}",
+                3);
+        subscriber.onComplete();
+
+        assertThat(successes).isEmpty();
+        assertThat(subscriber.getBody().toCompletableFuture().join()).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .errors(List.of(MaqSentimentResponseErrorBodyElement.builder()
+                        .property("text")
+                        .recordNumber(1L)
+                        .validator("Empty string check")
+                        .value("null")
+                        .message("InvalidJSONError: The ‘text’ passed in json is empty")
+                        .build()))
+                .build());
+    }
+
+    @Test
+    void statusCode400_bodyStringNotJson_keptAsMessage() {
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = subscriber(400);
+
+        feedInChunks(subscriber, mock(Flow.Subscription.class),
+                "Object reference not set to an instance of an object.",
+                4);
+        subscriber.onComplete();
+
+        assertThat(subscriber.getBody().toCompletableFuture().join()).isEqualTo(MaqSentimentResponse.builder()
+                .statusCode(400)
+                .message("Object reference not set to an instance of an object.")
+                .build());
+    }
+
+    @Test
+    void statusCode200_malformedArray_cancelsSubscriptionAndReturns500() {
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = subscriber(200);
+        Flow.Subscription subscription = mock(Flow.Subscription.class);
+
+        feedInChunks(subscriber, subscription, "[{\"id\": \"1\", \"sentiment\": 0.5}, {broken", 64);
+
+        verify(subscription, times(1)).cancel();
+        assertThat(successes).hasSize(1);
+        MaqSentimentResponse maqSentimentResponse = subscriber.getBody().toCompletableFuture().join();
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(500);
+        assertThat(maqSentimentResponse.getMessage()).isEqualTo(
+                "JsonParseException during streaming deserialization of MaqSentimentResponse " +
+                        "from HttpResponse's Body with status code: 200.");
+    }
+
+    @Test
+    void statusCode200_malformedArray_notifiesFailureListenerOnce() {
+        AtomicInteger failures = new AtomicInteger();
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = new MaqSentimentResponseBodySubscriber(
+                objectMapper, 200, successes::add, failures::incrementAndGet);
+
+        feedInChunks(subscriber, mock(Flow.Subscription.class), "[{\"id\": \"1\", \"sentiment\": 0.5}, {broken", 8);
+        subscriber.onComplete();
+
+        assertThat(failures.get()).isEqualTo(1);
+    }
+
+    @Test
+    void statusCode200_successConsumerThrows_cancelsSubscriptionAndReturns500() {
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = new MaqSentimentResponseBodySubscriber(
+                objectMapper, 200, success -> {
+            throw new IllegalStateException("consumer failed");
+        });
+        Flow.Subscription subscription = mock(Flow.Subscription.class);
+
+        feedInChunks(subscriber, subscription, "[{\"id\": \"1\", \"sentiment\": 0.5}]", 64);
+
+        verify(subscription, times(1)).cancel();
+        MaqSentimentResponse maqSentimentResponse = subscriber.getBody().toCompletableFuture().join();
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(500);
+        assertThat(maqSentimentResponse.getMessage()).isEqualTo(
+                "IllegalStateException during streaming deserialization of MaqSentimentResponse " +
+                        "from HttpResponse's Body with status code: 200.");
+    }
+
+    @Test
+    void statusCode502_malformedObject_keptAsMessage() {
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = subscriber(502);
+
+        feedInChunks(subscriber, mock(Flow.Subscription.class), "{<html><body>Bad Gateway</body></html>", 8);
+        subscriber.onComplete();
+
+        MaqSentimentResponse maqSentimentResponse = subscriber.getBody().toCompletableFuture().join();
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(502);
+        assertThat(maqSentimentResponse.getMessage()).isEqualTo("{<html><body>Bad Gateway</body></html>");
+    }
+
+    @Test
+    void statusCode200_parsingExecutor_parsesOnlyWhenItRuns() {
+        List<Runnable> tasks = new ArrayList<>();
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = new MaqSentimentResponseBodySubscriber(
+                objectMapper, 200, successes::add, () -> {
+        }, tasks::add);
+
+        feedInChunks(subscriber, mock(Flow.Subscription.class), "[{\"id\": \"1\", \"sentiment\": 0.5}]", 64);
+        subscriber.onComplete();
+
+        assertThat(successes).isEmpty();
+        assertThat(tasks).hasSize(1);
+        tasks.remove(0).run();
+        assertThat(successes).isEqualTo(List.of(MaqSentimentResponseSuccessBodyElement.builder()
+                .id("1")
+                .sentiment(new BigDecimal("0.5"))
+                .build()));
+        assertThat(subscriber.getBody().toCompletableFuture().join().getStatusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void statusCode200_parsingExecutorRejects_cancelsSubscriptionAndReturns500() {
+        Executor rejectingExecutor = task -> {
+            throw new RejectedExecutionException("saturated");
+        };
+        HttpResponse.BodySubscriber<MaqSentimentResponse> subscriber = new MaqSentimentResponseBodySubscriber(
+                objectMapper, 200, successes::add, () -> {
+        }, rejectingExecutor);
+        Flow.Subscription subscription = mock(Flow.Subscription.class);
+
+        feedInChunks(subscriber, subscription, "[{\"id\": \"1\", \"sentiment\": 0.5}]", 64);
+
+        verify(subscription, times(1)).cancel();
+        assertThat(successes).isEmpty();
+        MaqSentimentResponse maqSentimentResponse = subscriber.getBody().toCompletableFuture().join();
+        assertThat(maqSentimentResponse.getStatusCode()).isEqualTo(500);
+        assertThat(maqSentimentResponse.getMessage()).isEqualTo(
+                "RejectedExecutionException during streaming deserialization of MaqSentimentResponse " +
+                        "from HttpResponse's Body with status code: 200.");
+    }
+}
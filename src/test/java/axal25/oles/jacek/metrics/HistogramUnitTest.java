@@ -0,0 +1,89 @@
+package axal25.oles.jacek.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HistogramUnitTest {
+
+    @Test
+    void getSnapshot_empty_zeros() {
+        HistogramSnapshot snapshot = new Histogram().getSnapshot();
+
+        assertThat(snapshot).isEqualTo(HistogramSnapshot.builder().build());
+    }
+
+    @Test
+    void getSnapshot_smallValues_exact() {
+        Histogram histogram = new Histogram();
+        IntStream.rangeClosed(1, 100).forEach(histogram::record);
+
+        HistogramSnapshot snapshot = histogram.getSnapshot();
+
+        assertThat(snapshot.getCount()).isEqualTo(100L);
+        assertThat(snapshot.getSum()).isEqualTo(5050L);
+        assertThat(snapshot.getP50()).isEqualTo(50L);
+        assertThat(snapshot.getP99()).isEqualTo(99L);
+        assertThat(snapshot.getP999()).isEqualTo(100L);
+        assertThat(snapshot.getMax()).isEqualTo(100L);
+    }
+
+    @Test
+    void getSnapshot_largeValues_withinRelativePrecision() {
+        Histogram histogram = new Histogram();
+        IntStream.rangeClosed(1, 1000).forEach(i -> histogram.record(i * 1_000_000L));
+
+        HistogramSnapshot snapshot = histogram.getSnapshot();
+
+        assertThat((double) snapshot.getP50()).isWithin(500_000_000.0 / 64).of(500_000_000.0);
+        assertThat((double) snapshot.getP99()).isWithin(990_000_000.0 / 64).of(990_000_000.0);
+        assertThat(snapshot.getP999()).isAtMost(snapshot.getMax());
+        assertThat(snapshot.getMax()).isEqualTo(1_000_000_000L);
+    }
+
+    @Test
+    void getIndex_bucketsCoverEveryValueOnce() {
+        for (long value : new long[]{0L, 127L, 128L, 255L, 256L, 1_000_000L, Long.MAX_VALUE}) {
+            int index = Histogram.getIndex(value);
+
+            assertThat(Histogram.getHighestEquivalentValue(index)).isAtLeast(value);
+            if (index > 0) {
+                assertThat(Histogram.getHighestEquivalentValue(index - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    void record_concurrently_countsEveryValue() {
+        Histogram histogram = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            getUnchecked(CompletableFuture.allOf(IntStream.range(0, 4)
+                    .mapToObj(i -> CompletableFuture.runAsync(
+                            () -> IntStream.range(0, 10_000).forEach(histogram::record),
+                            executor))
+                    .toArray(CompletableFuture[]::new)));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(histogram.getSnapshot().getCount()).isEqualTo(40_000L);
+        assertThat(histogram.getCount()).isEqualTo(40_000L);
+    }
+
+    @Test
+    void record_negative_throwsIllegalArgumentException() {
+        IllegalArgumentException actualException =
+                assertThrows(IllegalArgumentException.class, () -> new Histogram().record(-1L));
+
+        assertThat(actualException).hasMessageThat().isEqualTo(
+                "Value cannot be negative but was: -1.");
+    }
+}
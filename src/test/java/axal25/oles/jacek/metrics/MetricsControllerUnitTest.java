@@ -0,0 +1,145 @@
+package axal25.oles.jacek.metrics;
+
+import axal25.oles.jacek.executor.BulkheadExecutor;
+import axal25.oles.jacek.executor.SaturationPolicy;
+import axal25.oles.jacek.http.HttpClientPool;
+import axal25.oles.jacek.http.TestHttpResponse;
+import axal25.oles.jacek.maq.client.MaqCircuitBreaker;
+import axal25.oles.jacek.maq.client.MaqConcurrencyLimiter;
+import axal25.oles.jacek.maq.client.MaqOutstandingRequestLimiter;
+import axal25.oles.jacek.maq.metrics.MaqCallCounters;
+import axal25.oles.jacek.maq.metrics.MaqLatencyRecorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MetricsControllerUnitTest {
+    private final BulkheadExecutor cpuExecutor = new BulkheadExecutor("cpu-executor", 1, 10, SaturationPolicy.ABORT);
+    private final BulkheadExecutor ioExecutor = new BulkheadExecutor("io-executor", 2, 20, SaturationPolicy.ABORT);
+    private final BulkheadExecutor cacheExecutor = new BulkheadExecutor("cache-executor", 3, 30, SaturationPolicy.ABORT);
+    private final HttpClientPool httpClientPool = new HttpClientPool(
+            Runnable::run, HttpClient.Version.HTTP_2, Duration.ofSeconds(1L), 4);
+    private final MaqCallCounters maqCallCounters = new MaqCallCounters();
+
+    @AfterEach
+    void tearDown() {
+        cpuExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+        cacheExecutor.shutdownNow();
+    }
+
+    private MetricsController metricsController(Executor executor) {
+        return new MetricsController(
+                executor,
+                cpuExecutor,
+                ioExecutor,
+                cacheExecutor,
+                httpClientPool,
+                maqCallCounters,
+                new MaqLatencyRecorder(),
+                MaqConcurrencyLimiter.unlimited(),
+                MaqOutstandingRequestLimiter.unlimited(),
+                MaqCircuitBreaker.neverOpen());
+    }
+
+    private static List<String> lines(String text) {
+        return Arrays.asList(text.split("\n"));
+    }
+
+    @Test
+    void getMetrics_maqCalls_countersWithStatusCodes() {
+        maqCallCounters.recordRequest(10);
+        maqCallCounters.recordRequest(5);
+        maqCallCounters.recordOutcome(TestHttpResponse.<String>builder().statusCode(200).build(), null);
+        maqCallCounters.recordOutcome(null, new IOException("connection reset"));
+        maqCallCounters.recordDeserializationFailure();
+
+        List<String> lines = lines(metricsController(Runnable::run).getMetrics());
+
+        assertThat(lines).containsAtLeast(
+                "# TYPE maq_requests_total counter",
+                "maq_requests_total 2",
+                "maq_records_total 15",
+                "maq_responses_total{status_code=\"200\"} 1",
+                "maq_request_failures_total 1",
+                "maq_deserialization_failures_total 1");
+        assertThat(lines).contains("maq_circuit_breaker_state{state=\"CLOSED\"} 1");
+    }
+
+    @Test
+    void getMetrics_platformPoolExecutor_queueDepthAndActiveThreads() throws InterruptedException {
+        try (ExecutorService executor = Executors.newFixedThreadPool(1)) {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            executor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            executor.execute(() -> {
+            });
+            started.await();
+
+            List<String> lines = lines(metricsController(executor).getMetrics());
+            release.countDown();
+
+            assertThat(lines).containsAtLeast(
+                    "executor_queue_depth{executor=\"executor\"} 1",
+                    "executor_queue_depth{executor=\"cpu-executor\"} 0",
+                    "executor_queue_depth{executor=\"io-executor\"} 0",
+                    "executor_queue_depth{executor=\"cache-executor\"} 0",
+                    "executor_active_threads{executor=\"executor\"} 1",
+                    "executor_pool_size{executor=\"executor\"} 1",
+                    "executor_queue_capacity{executor=\"io-executor\"} 20",
+                    "executor_queue_capacity{executor=\"cache-executor\"} 30").inOrder();
+        }
+    }
+
+    @Test
+    void getMetrics_executorWithoutPool_onlyBulkheadsReported() {
+        List<String> lines = lines(metricsController(Runnable::run).getMetrics());
+
+        assertThat(lines).doesNotContain("executor_queue_depth{executor=\"executor\"} 0");
+        assertThat(lines).contains("executor_active_threads{executor=\"cpu-executor\"} 0");
+    }
+
+    @Test
+    void getMetrics_httpClientPool_clientsAndMaxClients() {
+        httpClientPool.getHttpClient();
+
+        List<String> lines = lines(metricsController(Runnable::run).getMetrics());
+
+        assertThat(lines).containsAtLeast(
+                "http_client_pool_clients 1",
+                "http_client_pool_max_clients 4",
+                "http_client_pool_leases_total 1");
+    }
+
+    @Test
+    void getMetrics_everySampleFollowsItsOwnFamilyHeader() {
+        List<String> lines = lines(metricsController(Runnable::run).getMetrics());
+
+        String family = null;
+        for (String line : lines) {
+            if (line.startsWith("# TYPE ")) {
+                family = line.split(" ")[2];
+            } else if (!line.startsWith("#")) {
+                assertThat(line).startsWith(family);
+            }
+        }
+    }
+}
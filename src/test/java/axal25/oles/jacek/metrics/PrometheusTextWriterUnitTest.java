@@ -0,0 +1,66 @@
+package axal25.oles.jacek.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PrometheusTextWriterUnitTest {
+
+    @Test
+    void counter_writesHelpTypeAndSample() {
+        String text = new PrometheusTextWriter()
+                .counter("maq_requests_total", "Requests sent to MAQ.")
+                .sample("maq_requests_total", 42L)
+                .toString();
+
+        assertThat(text).isEqualTo("""
+                # HELP maq_requests_total Requests sent to MAQ.
+                # TYPE maq_requests_total counter
+                maq_requests_total 42
+                """);
+    }
+
+    @Test
+    void sample_labelsEscapedAndFractionsKept() {
+        String text = new PrometheusTextWriter()
+                .sample("gauge", 0.25, "executor", "say \"hi\"\\\n", "kind", "io")
+                .toString();
+
+        assertThat(text).isEqualTo("gauge{executor=\"say \\\"hi\\\"\\\\\\n\",kind=\"io\"} 0.25\n");
+    }
+
+    @Test
+    void sample_oddLabelNamesAndValues_throws() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new PrometheusTextWriter().sample("gauge", 1L, "executor"));
+
+        assertThat(e).hasMessageThat().isEqualTo("Label names and values must come in pairs but were: 1.");
+    }
+
+    @Test
+    void durationSummary_writesQuantilesSumAndCountInSeconds() {
+        HistogramSnapshot snapshot = HistogramSnapshot.builder()
+                .count(4L)
+                .sum(TimeUnit.MILLISECONDS.toNanos(10L))
+                .p50(TimeUnit.MILLISECONDS.toNanos(2L))
+                .p99(TimeUnit.MILLISECONDS.toNanos(4L))
+                .p999(TimeUnit.MILLISECONDS.toNanos(4L))
+                .max(TimeUnit.MILLISECONDS.toNanos(4L))
+                .build();
+
+        String text = new PrometheusTextWriter()
+                .durationSummary("duration_seconds", snapshot, "phase", "SERIALIZATION")
+                .toString();
+
+        assertThat(text).isEqualTo("""
+                duration_seconds{phase="SERIALIZATION",quantile="0.5"} 0.002
+                duration_seconds{phase="SERIALIZATION",quantile="0.99"} 0.004
+                duration_seconds{phase="SERIALIZATION",quantile="0.999"} 0.004
+                duration_seconds_sum{phase="SERIALIZATION"} 0.01
+                duration_seconds_count{phase="SERIALIZATION"} 4
+                """);
+    }
+}